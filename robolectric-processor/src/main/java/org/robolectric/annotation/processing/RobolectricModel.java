@@ -272,9 +272,13 @@ public class RobolectricModel {
     }
 
     // Other imports that the generated class needs
+    imports.add("java.util.Collections");
+    imports.add("java.util.HashMap");
+    imports.add("java.util.Map");
     imports.add("javax.annotation.Generated");
+    imports.add("org.robolectric.internal.IndexedShadowProvider");
     imports.add("org.robolectric.internal.ShadowExtractor");
-    imports.add("org.robolectric.internal.ShadowProvider");
+    imports.add("org.robolectric.internal.bytecode.ShadowConfig");
   }
 
   public void addShadowType(TypeElement elem, TypeElement type) {
@@ -293,6 +297,14 @@ public class RobolectricModel {
     return imports;
   }
 
+  /**
+   * Returns every shadow type mapped to the type it shadows, including those that aren't in the
+   * Android SDK or aren't visible to the generated class.
+   */
+  public Map<TypeElement, TypeElement> getAllShadowTypes() {
+    return shadowTypes;
+  }
+
   public Map<TypeElement, TypeElement> getResetterShadowTypes() {
     return Maps.filterEntries(shadowTypes, new Predicate<Entry<TypeElement, TypeElement>>() {
       @Override
@@ -328,6 +340,13 @@ public class RobolectricModel {
     return packages;
   }
 
+  /**
+   * Returns the name the given type has at runtime, with '$' separating nested classes.
+   */
+  public String getBinaryName(TypeElement type) {
+    return elements.getBinaryName(type).toString();
+  }
+
   private Predicate<TypeMirror> notObject;
   public List<TypeMirror> getExplicitBounds(TypeParameterElement typeParam) {
     return newArrayList(Iterables.filter(typeParam.getBounds(), notObject));    
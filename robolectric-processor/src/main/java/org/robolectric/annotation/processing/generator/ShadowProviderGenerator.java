@@ -1,6 +1,7 @@
 package org.robolectric.annotation.processing.generator;
 
 import com.google.common.base.Joiner;
+import org.robolectric.annotation.Implements;
 import org.robolectric.annotation.processing.RobolectricModel;
 import org.robolectric.annotation.processing.RobolectricProcessor;
 
@@ -56,7 +57,23 @@ public class ShadowProviderGenerator extends Generator {
       writer.println(" */");
       writer.println("@Generated(\"" + RobolectricProcessor.class.getCanonicalName() + "\")");
       writer.println("@SuppressWarnings({\"unchecked\",\"deprecation\"})");
-      writer.println("public class " + GEN_CLASS + " implements ShadowProvider {");
+      writer.println("public class " + GEN_CLASS + " implements IndexedShadowProvider {");
+      writer.println();
+
+      final Map<TypeElement, TypeElement> allShadowTypes = model.getAllShadowTypes();
+      writer.println("  private static final Map<String, ShadowConfig> SHADOW_MAP = new HashMap<>(" + allShadowTypes.size() + ");");
+      writer.println();
+      writer.println("  static {");
+      for (Map.Entry<TypeElement, TypeElement> entry : allShadowTypes.entrySet()) {
+        final TypeElement shadowType = entry.getKey();
+        final Implements implementsAnnotation = shadowType.getAnnotation(Implements.class);
+        writer.println("    SHADOW_MAP.put(\"" + model.getBinaryName(entry.getValue()) + "\", new ShadowConfig(\""
+            + model.getBinaryName(shadowType) + "\", "
+            + implementsAnnotation.callThroughByDefault() + ", "
+            + implementsAnnotation.inheritImplementationMethods() + ", "
+            + implementsAnnotation.looseSignatures() + "));");
+      }
+      writer.println("  }");
       writer.println();
 
       for (Map.Entry<TypeElement, TypeElement> entry : model.getShadowOfMap().entrySet()) {
@@ -107,6 +124,11 @@ public class ShadowProviderGenerator extends Generator {
       writer.println("  }");
       writer.println();
 
+      writer.println("  public Map<String, ShadowConfig> getShadowMap() {");
+      writer.println("    return Collections.unmodifiableMap(SHADOW_MAP);");
+      writer.println("  }");
+      writer.println();
+
       writer.println("  public String[] getProvidedPackageNames() {");
       writer.println("    return new String[] {" + Joiner.on(",").join(model.getShadowedPackages()) + "};");
       writer.println("  }");
@@ -8,6 +8,8 @@ import static org.robolectric.annotation.processing.RobolectricProcessor.PACKAGE
 import static org.robolectric.annotation.processing.validator.Utils.ROBO_SOURCE;
 import static org.robolectric.annotation.processing.validator.Utils.SHADOW_PROVIDER_SOURCE;
 import static org.robolectric.annotation.processing.validator.Utils.SHADOW_EXTRACTOR_SOURCE;
+import static org.robolectric.annotation.processing.validator.Utils.SHADOW_CONFIG_SOURCE;
+import static org.robolectric.annotation.processing.validator.Utils.INDEXED_SHADOW_PROVIDER_SOURCE;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -38,6 +40,8 @@ public class RobolectricProcessorTest {
           ROBO_SOURCE,
           SHADOW_PROVIDER_SOURCE,
           SHADOW_EXTRACTOR_SOURCE,
+          SHADOW_CONFIG_SOURCE,
+          INDEXED_SHADOW_PROVIDER_SOURCE,
           forSourceString("HelloWorld", "final class HelloWorld {}")))
       .processedWith(new RobolectricProcessor())
       .compilesWithoutError();
@@ -54,6 +58,8 @@ public class RobolectricProcessorTest {
           ROBO_SOURCE,
           SHADOW_PROVIDER_SOURCE,
           SHADOW_EXTRACTOR_SOURCE,
+          SHADOW_CONFIG_SOURCE,
+          INDEXED_SHADOW_PROVIDER_SOURCE,
           forResource("org/robolectric/annotation/processing/shadows/ShadowDummy.java"),
           forResource("org/robolectric/annotation/processing/shadows/ShadowOuterDummy.java"),
           forResource("org/robolectric/annotation/processing/shadows/ShadowUniqueDummy.java")))
@@ -70,6 +76,8 @@ public class RobolectricProcessorTest {
           ROBO_SOURCE,
           SHADOW_PROVIDER_SOURCE,
           SHADOW_EXTRACTOR_SOURCE,
+          SHADOW_CONFIG_SOURCE,
+          INDEXED_SHADOW_PROVIDER_SOURCE,
           forResource("org/robolectric/annotation/processing/shadows/ShadowPrivate.java"),
           forResource("org/robolectric/annotation/processing/shadows/ShadowOuterDummy2.java"),
           forResource("org/robolectric/annotation/processing/shadows/ShadowDummy.java")))
@@ -86,6 +94,8 @@ public class RobolectricProcessorTest {
           ROBO_SOURCE,
           SHADOW_PROVIDER_SOURCE,
           SHADOW_EXTRACTOR_SOURCE,
+          SHADOW_CONFIG_SOURCE,
+          INDEXED_SHADOW_PROVIDER_SOURCE,
           forResource("org/robolectric/annotation/processing/shadows/ShadowAnything.java"),
           forResource("org/robolectric/annotation/processing/shadows/ShadowDummy.java")))
       .processedWith(new RobolectricProcessor(DEFAULT_OPTS))
@@ -100,6 +110,8 @@ public class RobolectricProcessorTest {
       .that(ImmutableList.of(
           SHADOW_PROVIDER_SOURCE,
           SHADOW_EXTRACTOR_SOURCE,
+          SHADOW_CONFIG_SOURCE,
+          INDEXED_SHADOW_PROVIDER_SOURCE,
           forResource("org/robolectric/annotation/processing/shadows/ShadowClassNameOnly.java"),
           forResource("org/robolectric/annotation/processing/shadows/ShadowDummy.java")))
       .processedWith(new RobolectricProcessor(DEFAULT_OPTS))
@@ -114,6 +126,8 @@ public class RobolectricProcessorTest {
         .that(ImmutableList.of(
             SHADOW_PROVIDER_SOURCE,
             SHADOW_EXTRACTOR_SOURCE,
+            SHADOW_CONFIG_SOURCE,
+            INDEXED_SHADOW_PROVIDER_SOURCE,
             forResource("org/robolectric/annotation/processing/shadows/ShadowExcludedFromAndroidSdk.java")))
         .processedWith(new RobolectricProcessor(DEFAULT_OPTS))
         .compilesWithoutError()
@@ -140,6 +154,8 @@ public class RobolectricProcessorTest {
       .that(ImmutableList.of(
           SHADOW_PROVIDER_SOURCE,
           SHADOW_EXTRACTOR_SOURCE,
+          SHADOW_CONFIG_SOURCE,
+          INDEXED_SHADOW_PROVIDER_SOURCE,
           forResource("org/robolectric/annotation/processing/shadows/ShadowClassNameOnly.java"),
           forResource("org/robolectric/annotation/processing/shadows/ShadowDummy.java")))
       .processedWith(new RobolectricProcessor(opts))
@@ -154,6 +170,8 @@ public class RobolectricProcessorTest {
         .that(ImmutableList.of(
             SHADOW_PROVIDER_SOURCE,
             SHADOW_EXTRACTOR_SOURCE,
+            SHADOW_CONFIG_SOURCE,
+            INDEXED_SHADOW_PROVIDER_SOURCE,
             forResource("org/robolectric/annotation/processing/shadows/ShadowClassNameOnly.java"),
             forResource("org/robolectric/annotation/processing/shadows/ShadowDummy.java")))
         .processedWith(new RobolectricProcessor(DEFAULT_OPTS))
@@ -169,6 +187,8 @@ public class RobolectricProcessorTest {
           ROBO_SOURCE,
           SHADOW_PROVIDER_SOURCE,
           SHADOW_EXTRACTOR_SOURCE,
+          SHADOW_CONFIG_SOURCE,
+          INDEXED_SHADOW_PROVIDER_SOURCE,
           forResource("org/robolectric/annotation/TestWithUnrecognizedAnnotation.java")))
       .processedWith(new RobolectricProcessor())
       .compilesWithoutError();
@@ -188,6 +208,8 @@ public class RobolectricProcessorTest {
       .that(ImmutableList.of(
           SHADOW_PROVIDER_SOURCE,
           SHADOW_EXTRACTOR_SOURCE,
+          SHADOW_CONFIG_SOURCE,
+          INDEXED_SHADOW_PROVIDER_SOURCE,
           forResource("org/robolectric/annotation/processing/shadows/ShadowRealObjectWithCorrectAnything.java")))
       .processedWith(new RobolectricProcessor())
       .failsToCompile();
@@ -200,6 +222,8 @@ public class RobolectricProcessorTest {
           ROBO_SOURCE,
           SHADOW_PROVIDER_SOURCE,
           SHADOW_EXTRACTOR_SOURCE,
+          SHADOW_CONFIG_SOURCE,
+          INDEXED_SHADOW_PROVIDER_SOURCE,
           forResource("org/robolectric/annotation/processing/shadows/ShadowDummy.java"),
           forResource("org/robolectric/annotation/processing/shadows/ShadowParameterizedDummy.java")))
       .processedWith(new RobolectricProcessor(DEFAULT_OPTS))
@@ -14,6 +14,8 @@ public class Utils {
   public static final JavaFileObject ROBO_SOURCE = forResource("mock-source/Robolectric.java");
   public static final JavaFileObject SHADOW_PROVIDER_SOURCE = forResource("mock-source/org/robolectric/internal/ShadowProvider.java");
   public static final JavaFileObject SHADOW_EXTRACTOR_SOURCE = forResource("mock-source/org/robolectric/internal/ShadowExtractor.java");
+  public static final JavaFileObject INDEXED_SHADOW_PROVIDER_SOURCE = forResource("mock-source/org/robolectric/internal/IndexedShadowProvider.java");
+  public static final JavaFileObject SHADOW_CONFIG_SOURCE = forResource("mock-source/org/robolectric/internal/bytecode/ShadowConfig.java");
 
   public static String toResourcePath(String clazzName) {
     return clazzName.replace('.', '/') + ".java";
@@ -0,0 +1,10 @@
+package org.robolectric.internal;
+
+import org.robolectric.internal.bytecode.ShadowConfig;
+
+import java.util.Map;
+
+public interface IndexedShadowProvider extends ShadowProvider {
+
+  Map<String, ShadowConfig> getShadowMap();
+}
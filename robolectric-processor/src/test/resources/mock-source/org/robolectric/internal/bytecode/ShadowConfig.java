@@ -0,0 +1,7 @@
+package org.robolectric.internal.bytecode;
+
+public class ShadowConfig {
+
+  public ShadowConfig(String shadowClassName, boolean callThroughByDefault, boolean inheritImplementationMethods, boolean looseSignatures) {
+  }
+}
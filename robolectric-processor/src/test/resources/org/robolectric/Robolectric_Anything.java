@@ -1,17 +1,29 @@
 package org.robolectric;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 import javax.annotation.Generated;
 
 import org.robolectric.annotation.processing.objects.AnyObject;
 import org.robolectric.annotation.processing.objects.Dummy;
 import org.robolectric.annotation.processing.shadows.ShadowAnything;
 import org.robolectric.annotation.processing.shadows.ShadowDummy;
+import org.robolectric.internal.IndexedShadowProvider;
 import org.robolectric.internal.ShadowExtractor;
-import org.robolectric.internal.ShadowProvider;
+import org.robolectric.internal.bytecode.ShadowConfig;
 
 @Generated("org.robolectric.annotation.processing.RobolectricProcessor")
 @SuppressWarnings({"unchecked","deprecation"})
-public class Shadows implements ShadowProvider {
+public class Shadows implements IndexedShadowProvider {
+
+  private static final Map<String, ShadowConfig> SHADOW_MAP = new HashMap<>(2);
+
+  static {
+    SHADOW_MAP.put("org.robolectric.annotation.processing.objects.AnyObject", new ShadowConfig("org.robolectric.annotation.processing.shadows.ShadowAnything", true, false, false));
+    SHADOW_MAP.put("org.robolectric.annotation.processing.objects.Dummy", new ShadowConfig("org.robolectric.annotation.processing.shadows.ShadowDummy", true, false, false));
+  }
 
   public static ShadowAnything shadowOf(AnyObject actual) {
     return (ShadowAnything) ShadowExtractor.extract(actual);
@@ -26,6 +38,10 @@ public class Shadows implements ShadowProvider {
     ShadowDummy.resetter_method();
   }
 
+  public Map<String, ShadowConfig> getShadowMap() {
+    return Collections.unmodifiableMap(SHADOW_MAP);
+  }
+
   public String[] getProvidedPackageNames() {
     return new String[] {"org.robolectric.annotation.processing.objects"};
   }
@@ -1,5 +1,9 @@
 package org.robolectric;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 import javax.annotation.Generated;
 
 import org.robolectric.annotation.processing.objects.Dummy;
@@ -10,12 +14,24 @@ import org.robolectric.annotation.processing.shadows.ShadowOuterDummy2.ShadowInn
 import org.robolectric.annotation.processing.shadows.ShadowOuterDummy2.ShadowInnerPrivate;
 import org.robolectric.annotation.processing.shadows.ShadowOuterDummy2.ShadowInnerProtected;
 import org.robolectric.annotation.processing.shadows.ShadowPrivate;
+import org.robolectric.internal.IndexedShadowProvider;
 import org.robolectric.internal.ShadowExtractor;
-import org.robolectric.internal.ShadowProvider;
+import org.robolectric.internal.bytecode.ShadowConfig;
 
 @Generated("org.robolectric.annotation.processing.RobolectricProcessor")
 @SuppressWarnings({"unchecked","deprecation"})
-public class Shadows implements ShadowProvider {
+public class Shadows implements IndexedShadowProvider {
+
+  private static final Map<String, ShadowConfig> SHADOW_MAP = new HashMap<>(6);
+
+  static {
+    SHADOW_MAP.put("org.robolectric.annotation.processing.objects.Dummy", new ShadowConfig("org.robolectric.annotation.processing.shadows.ShadowDummy", true, false, false));
+    SHADOW_MAP.put("org.robolectric.annotation.processing.objects.OuterDummy2", new ShadowConfig("org.robolectric.annotation.processing.shadows.ShadowOuterDummy2", true, false, false));
+    SHADOW_MAP.put("org.robolectric.annotation.processing.objects.OuterDummy2$InnerPackage", new ShadowConfig("org.robolectric.annotation.processing.shadows.ShadowOuterDummy2$ShadowInnerPackage", true, false, false));
+    SHADOW_MAP.put("org.robolectric.annotation.processing.objects.OuterDummy2$InnerPrivate", new ShadowConfig("org.robolectric.annotation.processing.shadows.ShadowOuterDummy2$ShadowInnerPrivate", true, false, false));
+    SHADOW_MAP.put("org.robolectric.annotation.processing.objects.OuterDummy2$InnerProtected", new ShadowConfig("org.robolectric.annotation.processing.shadows.ShadowOuterDummy2$ShadowInnerProtected", true, false, false));
+    SHADOW_MAP.put("org.robolectric.annotation.processing.objects.Private", new ShadowConfig("org.robolectric.annotation.processing.shadows.ShadowPrivate", true, false, false));
+  }
 
   public static ShadowDummy shadowOf(Dummy actual) {
     return (ShadowDummy) ShadowExtractor.extract(actual);
@@ -30,6 +46,10 @@ public class Shadows implements ShadowProvider {
     ShadowPrivate.resetMethod();
   }
 
+  public Map<String, ShadowConfig> getShadowMap() {
+    return Collections.unmodifiableMap(SHADOW_MAP);
+  }
+
   public String[] getProvidedPackageNames() {
     return new String[] {"org.robolectric.annotation.processing.objects"};
   }
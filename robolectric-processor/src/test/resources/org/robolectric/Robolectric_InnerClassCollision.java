@@ -1,5 +1,9 @@
 package org.robolectric;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 import javax.annotation.Generated;
 
 import org.robolectric.annotation.processing.objects.Dummy;
@@ -10,12 +14,24 @@ import org.robolectric.annotation.processing.shadows.ShadowDummy;
 import org.robolectric.annotation.processing.shadows.ShadowOuterDummy;
 import org.robolectric.annotation.processing.shadows.ShadowUniqueDummy;
 import org.robolectric.annotation.processing.shadows.ShadowUniqueDummy.ShadowUniqueInnerDummy;
+import org.robolectric.internal.IndexedShadowProvider;
 import org.robolectric.internal.ShadowExtractor;
-import org.robolectric.internal.ShadowProvider;
+import org.robolectric.internal.bytecode.ShadowConfig;
 
 @Generated("org.robolectric.annotation.processing.RobolectricProcessor")
 @SuppressWarnings({"unchecked","deprecation"})
-public class Shadows implements ShadowProvider {
+public class Shadows implements IndexedShadowProvider {
+
+  private static final Map<String, ShadowConfig> SHADOW_MAP = new HashMap<>(6);
+
+  static {
+    SHADOW_MAP.put("org.robolectric.annotation.processing.objects.Dummy", new ShadowConfig("org.robolectric.annotation.processing.shadows.ShadowDummy", true, false, false));
+    SHADOW_MAP.put("org.robolectric.annotation.processing.objects.OuterDummy", new ShadowConfig("org.robolectric.annotation.processing.shadows.ShadowOuterDummy", true, false, false));
+    SHADOW_MAP.put("org.robolectric.annotation.processing.objects.OuterDummy$InnerDummy", new ShadowConfig("org.robolectric.annotation.processing.shadows.ShadowOuterDummy$ShadowInnerDummy", true, false, false));
+    SHADOW_MAP.put("org.robolectric.annotation.processing.objects.UniqueDummy", new ShadowConfig("org.robolectric.annotation.processing.shadows.ShadowUniqueDummy", true, false, false));
+    SHADOW_MAP.put("org.robolectric.annotation.processing.objects.UniqueDummy$InnerDummy", new ShadowConfig("org.robolectric.annotation.processing.shadows.ShadowUniqueDummy$ShadowInnerDummy", true, false, false));
+    SHADOW_MAP.put("org.robolectric.annotation.processing.objects.UniqueDummy$UniqueInnerDummy", new ShadowConfig("org.robolectric.annotation.processing.shadows.ShadowUniqueDummy$ShadowUniqueInnerDummy", true, false, false));
+  }
 
   public static ShadowDummy shadowOf(Dummy actual) {
     return (ShadowDummy) ShadowExtractor.extract(actual);
@@ -45,6 +61,10 @@ public class Shadows implements ShadowProvider {
     ShadowDummy.resetter_method();
   }
 
+  public Map<String, ShadowConfig> getShadowMap() {
+    return Collections.unmodifiableMap(SHADOW_MAP);
+  }
+
   public String[] getProvidedPackageNames() {
     return new String[]{"org.robolectric.annotation.processing.objects"};
   }
@@ -1,20 +1,35 @@
 package org.robolectric;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 import javax.annotation.Generated;
 
+import org.robolectric.internal.IndexedShadowProvider;
 import org.robolectric.internal.ShadowExtractor;
-import org.robolectric.internal.ShadowProvider;
+import org.robolectric.internal.bytecode.ShadowConfig;
 
 /**
  * Shadow mapper. Automatically generated by the Robolectric Annotation Processor.
  */
 @Generated("org.robolectric.annotation.processing.RobolectricProcessor")
 @SuppressWarnings({"unchecked","deprecation"})
-public class Shadows implements ShadowProvider {
+public class Shadows implements IndexedShadowProvider {
+
+  private static final Map<String, ShadowConfig> SHADOW_MAP = new HashMap<>(1);
+
+  static {
+    SHADOW_MAP.put("org.robolectric.annotation.processing.objects.Dummy", new ShadowConfig("org.robolectric.annotation.processing.shadows.ShadowExcludedFromAndroidSdk", true, false, false));
+  }
 
   public void reset() {
   }
 
+  public Map<String, ShadowConfig> getShadowMap() {
+    return Collections.unmodifiableMap(SHADOW_MAP);
+  }
+
   public String[] getProvidedPackageNames() {
     return new String[] {};
   }
@@ -21,6 +21,10 @@ public class AttrData {
     return name;
   }
 
+  List<Pair> getPairs() {
+    return pairs;
+  }
+
   public String getValueFor(String key) {
     if (pairs == null) return null;
     for (Pair pair : pairs) {
@@ -72,5 +76,13 @@ public class AttrData {
       this.name = name;
       this.value = value;
     }
+
+    public String getName() {
+      return name;
+    }
+
+    public String getValue() {
+      return value;
+    }
   }
 }
@@ -13,6 +13,7 @@ public class Attribute {
   private static final int ANDROID_RES_NS_PREFIX_LENGTH = ANDROID_RES_NS_PREFIX.length();
   private static final Logger LOGGER = Logger.getLogger(Attribute.class.getName());
   public static final String RES_AUTO_NS_URI = "http://schemas.android.com/apk/res-auto";
+  private static final WeakInterner<Attribute> INTERNED = new WeakInterner<>();
 
   public final @NotNull ResName resName;
   public final @NotNull String value;
@@ -151,6 +152,37 @@ public class Attribute {
     return "@null".equals(value);
   }
 
+  /**
+   * @return An attribute equal to this one, with an {@link ResName#intern interned} name; the same instance is
+   *     returned for equal attributes, so the many identical attributes in styles share memory.
+   */
+  public Attribute intern() {
+    ResName internedName = resName.intern();
+    return INTERNED.intern(resName == internedName ? this : new Attribute(internedName, value, contextPackageName));
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    Attribute attribute = (Attribute) o;
+
+    if (!resName.equals(attribute.resName)) return false;
+    if (!value.equals(attribute.value)) return false;
+    if (!contextPackageName.equals(attribute.contextPackageName)) return false;
+
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = resName.hashCode();
+    result = 31 * result + value.hashCode();
+    result = 31 * result + contextPackageName.hashCode();
+    return result;
+  }
+
   @Override
   public String toString() {
     return "Attribute{" +
@@ -4,6 +4,12 @@ import com.ximpleware.VTDGen;
 import com.ximpleware.VTDNav;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
 public class DocumentLoader {
   private static final FsFile.Filter ENDS_WITH_XML = new FsFile.Filter() {
     @Override public boolean accept(@NotNull FsFile fsFile) {
@@ -11,45 +17,82 @@ public class DocumentLoader {
     }
   };
 
+  private static final ForkJoinPool POOL = new ForkJoinPool(Integer.getInteger("robolectric.resourceLoaderThreads", Runtime.getRuntime().availableProcessors()));
+
+  // VTDGen isn't thread-safe, so each thread parses with its own
+  private static final ThreadLocal<VTDGen> vtdGens = new ThreadLocal<VTDGen>() {
+    @Override protected VTDGen initialValue() {
+      return new VTDGen();
+    }
+  };
+
   private final FsFile resourceBase;
   private final String packageName;
-  private final VTDGen vtdGen;
 
   public DocumentLoader(ResourcePath resourcePath) {
     this.resourceBase = resourcePath.resourceBase;
     this.packageName = resourcePath.getPackageName();
-    vtdGen = new VTDGen();
   }
 
-  public void load(String folderBaseName, XmlLoader... xmlLoaders) throws Exception {
+  public void load(String folderBaseName, final XmlLoader... xmlLoaders) throws Exception {
     FsFile[] files = resourceBase.listFiles(new DirectoryMatchingFilter(folderBaseName));
     if (files == null) {
       throw new RuntimeException(resourceBase.join(folderBaseName) + " is not a directory");
     }
+
+    List<ForkJoinTask<?>> tasks = new ArrayList<>();
     for (FsFile dir : files) {
-      loadFile(dir, xmlLoaders);
-    }
-  }
+      if (!dir.exists()) {
+        throw new RuntimeException("no such directory " + dir);
+      }
 
-  private void loadFile(FsFile dir, XmlLoader[] xmlLoaders) throws Exception {
-    if (!dir.exists()) {
-      throw new RuntimeException("no such directory " + dir);
+      for (final FsFile file : dir.listFiles(ENDS_WITH_XML)) {
+        tasks.add(new RecursiveAction() {
+          @Override protected void compute() {
+            try {
+              loadResourceXmlFile(file, xmlLoaders);
+            } catch (RuntimeException e) {
+              throw e;
+            } catch (Exception e) {
+              throw new RuntimeException("couldn't load " + file, e);
+            }
+          }
+        });
+      }
     }
+    invokeAll(tasks);
+  }
 
-    for (FsFile file : dir.listFiles(ENDS_WITH_XML)) {
-      loadResourceXmlFile(file, xmlLoaders);
+  /**
+   * Run tasks on the resource loading pool, and wait for them all to finish.
+   *
+   * Tasks may themselves call this method; they'll fork their subtasks into the same pool.
+   */
+  static void invokeAll(final List<? extends ForkJoinTask<?>> tasks) {
+    if (ForkJoinTask.inForkJoinPool()) {
+      ForkJoinTask.invokeAll(tasks);
+    } else {
+      POOL.invoke(new RecursiveAction() {
+        @Override protected void compute() {
+          ForkJoinTask.invokeAll(tasks);
+        }
+      });
     }
   }
 
   private void loadResourceXmlFile(FsFile fsFile, XmlLoader... xmlLoaders) throws Exception {
-    VTDNav vtdNav = parse(fsFile);
+    VTDNav vtdNav = null;
     for (XmlLoader xmlLoader : xmlLoaders) {
+      if (vtdNav == null && xmlLoader.needsDocument()) {
+        vtdNav = parse(fsFile);
+      }
       xmlLoader.processResourceXml(fsFile, vtdNav, packageName);
     }
   }
 
   private VTDNav parse(FsFile xmlFile) throws Exception {
     byte[] bytes = xmlFile.getBytes();
+    VTDGen vtdGen = vtdGens.get();
     vtdGen.setDoc(bytes);
     vtdGen.parse(true);
 
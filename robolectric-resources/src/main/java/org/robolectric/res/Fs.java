@@ -1,25 +1,17 @@
 package org.robolectric.res;
 
 import org.robolectric.util.Join;
-import org.robolectric.util.Util;
 
-import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Enumeration;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.NavigableMap;
-import java.util.NavigableSet;
-import java.util.TreeMap;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 
 import static java.util.Arrays.asList;
 
@@ -54,42 +46,16 @@ abstract public class Fs {
   }
 
   static class JarFs extends Fs {
-    private static final Map<File, NavigableMap<String, JarEntry>> CACHE =
-        new LinkedHashMap<File, NavigableMap<String, JarEntry>>() {
-          @Override
-          protected boolean removeEldestEntry(Map.Entry<File, NavigableMap<String, JarEntry>> fileNavigableMapEntry) {
-            return size() > 10;
-          }
-        };
-
-    private final JarFile jarFile;
-    private final NavigableMap<String, JarEntry> jarEntryMap;
+    private final String jarFileName;
+    private final MappedJarFile jarFile;
 
     public JarFs(File file) {
       try {
-        jarFile = new JarFile(file);
+        jarFile = MappedJarFile.open(file);
       } catch (IOException e) {
         throw new RuntimeException(e);
       }
-
-      NavigableMap<String, JarEntry> cachedMap;
-      synchronized (CACHE) {
-        cachedMap = CACHE.get(file.getAbsoluteFile());
-      }
-
-      if (cachedMap == null) {
-        cachedMap = new TreeMap<>();
-        Enumeration<JarEntry> entries = jarFile.entries();
-        while (entries.hasMoreElements()) {
-          JarEntry jarEntry = entries.nextElement();
-          cachedMap.put(jarEntry.getName(), jarEntry);
-        }
-        synchronized (CACHE) {
-          CACHE.put(file.getAbsoluteFile(), cachedMap);
-        }
-      }
-
-      jarEntryMap = cachedMap;
+      jarFileName = file.getPath();
     }
 
     @Override public FsFile join(String folderBaseName) {
@@ -108,19 +74,20 @@ abstract public class Fs {
       }
 
       @Override public boolean isDirectory() {
-        return jarEntryMap.containsKey(path + "/");
+        return jarFile.getEntry(path + "/") != null;
       }
 
       @Override public boolean isFile() {
-        return jarEntryMap.containsKey(path);
+        return jarFile.getEntry(path) != null;
       }
 
       @Override public FsFile[] listFiles() {
         if (!isDirectory()) return null;
-        NavigableSet<String> strings = jarEntryMap.navigableKeySet().subSet(path + "/", false, path + "0", false);
+        String[] strings = jarFile.getNames(path + "/", path + "0");
         List<FsFile> fsFiles = new ArrayList<>();
         int startOfFilename = path.length() + 2;
         for (String string : strings) {
+          if (string.length() == path.length() + 1) continue; // the directory itself
           int nextSlash = string.indexOf('/', startOfFilename);
           if (nextSlash == string.length() - 1) {
             // directory entry
@@ -163,11 +130,26 @@ abstract public class Fs {
       }
 
       @Override public InputStream getInputStream() throws IOException {
-        return new BufferedInputStream(jarFile.getInputStream(jarEntryMap.get(path)));
+        return getEntry().getInputStream();
       }
 
       @Override public byte[] getBytes() throws IOException {
-        return Util.readBytes(jarFile.getInputStream(jarEntryMap.get(path)));
+        return getEntry().getBytes();
+      }
+
+      /**
+       * @return The file's contents; for files stored without compression, they're read straight from the jar.
+       */
+      public ByteBuffer getByteBuffer() throws IOException {
+        return getEntry().getByteBuffer();
+      }
+
+      private MappedJarFile.Entry getEntry() throws FileNotFoundException {
+        MappedJarFile.Entry entry = jarFile.getEntry(path);
+        if (entry == null) {
+          throw new FileNotFoundException(getPath());
+        }
+        return entry;
       }
 
       @Override public FsFile join(String... pathParts) {
@@ -198,7 +180,7 @@ abstract public class Fs {
       }
 
       private String getJarFileName() {
-        return jarFile.getName();
+        return jarFileName;
       }
 
       @Override
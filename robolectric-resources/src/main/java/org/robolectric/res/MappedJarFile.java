@@ -0,0 +1,378 @@
+package org.robolectric.res;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * A read-only, memory-mapped jar file.
+ *
+ * The central directory is read once into arrays sorted by entry name, and each jar is opened at most once
+ * per process while it's unchanged. Stored entries are served straight from the mapping; deflated entries
+ * are inflated when asked for, and the most recently used are kept, up to {@code robolectric.jarCacheSize}
+ * bytes altogether.
+ */
+final class MappedJarFile {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final long CACHE_SIZE = Long.getLong("robolectric.jarCacheSize", 16 * 1024 * 1024);
+
+  private static final int STORED = 0;
+  private static final int DEFLATED = 8;
+
+  private static final int LOCAL_HEADER = 0x04034b50;
+  private static final int CENTRAL_HEADER = 0x02014b50;
+  private static final int END_HEADER = 0x06054b50;
+  private static final int ZIP64_END_HEADER = 0x06064b50;
+  private static final int ZIP64_LOCATOR = 0x07064b50;
+  private static final int ZIP64_EXTRA = 0x0001;
+
+  private static final Map<File, MappedJarFile> OPEN = new LinkedHashMap<File, MappedJarFile>() {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<File, MappedJarFile> eldest) {
+      return size() > 10;
+    }
+  };
+
+  private static final Map<Entry, byte[]> INFLATED = new LinkedHashMap<Entry, byte[]>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Entry, byte[]> eldest) {
+      // evict as many as it takes to get back under the limit
+      if (inflatedSize > CACHE_SIZE) {
+        Iterator<Map.Entry<Entry, byte[]>> iterator = entrySet().iterator();
+        while (inflatedSize > CACHE_SIZE && iterator.hasNext()) {
+          inflatedSize -= iterator.next().getValue().length;
+          iterator.remove();
+        }
+      }
+      return false;
+    }
+  };
+  private static long inflatedSize;
+
+  private final long lastModified;
+  private final long length;
+  private final ByteBuffer mapped;
+  private final String[] names;
+  private final Entry[] entries;
+
+  /**
+   * @return The jar, mapped already if it hasn't changed since it was last opened.
+   */
+  static MappedJarFile open(File file) throws IOException {
+    File key = file.getAbsoluteFile();
+    synchronized (OPEN) {
+      MappedJarFile jar = OPEN.get(key);
+      if (jar != null && jar.lastModified == key.lastModified() && jar.length == key.length()) {
+        return jar;
+      }
+    }
+
+    MappedJarFile jar = new MappedJarFile(key);
+    synchronized (OPEN) {
+      OPEN.put(key, jar);
+    }
+    return jar;
+  }
+
+  private MappedJarFile(File file) throws IOException {
+    lastModified = file.lastModified();
+    length = file.length();
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException(file + " is too large to map");
+    }
+
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+      MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+      mapped = buffer;
+    }
+
+    Entry[] entries = readCentralDirectory(file);
+    // sort by name, keeping the last of any duplicates like JarFile does
+    Arrays.sort(entries, BY_NAME);
+    int count = 0;
+    for (int i = 0; i < entries.length; i++) {
+      if (i + 1 < entries.length && entries[i].name.equals(entries[i + 1].name)) continue;
+      entries[count++] = entries[i];
+    }
+    this.entries = Arrays.copyOf(entries, count);
+    this.names = new String[count];
+    for (int i = 0; i < count; i++) {
+      names[i] = this.entries[i].name;
+    }
+  }
+
+  private Entry[] readCentralDirectory(File file) throws IOException {
+    int end = findEndHeader(file);
+    long entryCount = mapped.getShort(end + 10) & 0xffff;
+    long offset = mapped.getInt(end + 16) & 0xffffffffL;
+
+    if (end >= 20 && mapped.getInt(end - 20) == ZIP64_LOCATOR) {
+      long zip64End = mapped.getLong(end - 20 + 8);
+      if (mapped.getInt(checkOffset(zip64End, file)) != ZIP64_END_HEADER) {
+        throw new ZipException("bad zip64 end of central directory in " + file);
+      }
+      entryCount = mapped.getLong((int) zip64End + 32);
+      offset = mapped.getLong((int) zip64End + 48);
+    }
+
+    if (entryCount > Integer.MAX_VALUE) {
+      throw new ZipException("too many entries in " + file);
+    }
+    Entry[] entries = new Entry[(int) entryCount];
+    int position = checkOffset(offset, file);
+    for (int i = 0; i < entries.length; i++) {
+      if (mapped.getInt(position) != CENTRAL_HEADER) {
+        throw new ZipException("bad central directory entry in " + file);
+      }
+      int method = mapped.getShort(position + 10) & 0xffff;
+      long compressedSize = mapped.getInt(position + 20) & 0xffffffffL;
+      long size = mapped.getInt(position + 24) & 0xffffffffL;
+      int nameLength = mapped.getShort(position + 28) & 0xffff;
+      int extraLength = mapped.getShort(position + 30) & 0xffff;
+      int commentLength = mapped.getShort(position + 32) & 0xffff;
+      long localHeader = mapped.getInt(position + 42) & 0xffffffffL;
+
+      byte[] nameBytes = new byte[nameLength];
+      ByteBuffer name = mapped.duplicate();
+      name.position(position + 46);
+      name.get(nameBytes);
+
+      // sizes and offsets that don't fit are in a zip64 extra field, in this order
+      int extra = position + 46 + nameLength;
+      int extraEnd = extra + extraLength;
+      while (extra + 4 <= extraEnd) {
+        int id = mapped.getShort(extra) & 0xffff;
+        int dataSize = mapped.getShort(extra + 2) & 0xffff;
+        if (id == ZIP64_EXTRA) {
+          int field = extra + 4;
+          if (size == 0xffffffffL) {
+            size = mapped.getLong(field);
+            field += 8;
+          }
+          if (compressedSize == 0xffffffffL) {
+            compressedSize = mapped.getLong(field);
+            field += 8;
+          }
+          if (localHeader == 0xffffffffL) {
+            localHeader = mapped.getLong(field);
+          }
+        }
+        extra += 4 + dataSize;
+      }
+
+      entries[i] = new Entry(this, new String(nameBytes, UTF_8), method, compressedSize, size, localHeader);
+      position += 46 + nameLength + extraLength + commentLength;
+    }
+    return entries;
+  }
+
+  private int findEndHeader(File file) throws ZipException {
+    // the end header is 22 bytes, followed by a comment of up to 64k
+    int lowest = (int) Math.max(0, length - 22 - 0xffff);
+    for (int position = (int) length - 22; position >= lowest; position--) {
+      if (mapped.getInt(position) == END_HEADER) {
+        return position;
+      }
+    }
+    throw new ZipException("no end of central directory in " + file);
+  }
+
+  private int checkOffset(long offset, File file) throws ZipException {
+    if (offset < 0 || offset >= length) {
+      throw new ZipException("bad offset " + offset + " in " + file);
+    }
+    return (int) offset;
+  }
+
+  /**
+   * @return The entry with exactly this name, or null.
+   */
+  Entry getEntry(String name) {
+    int index = Arrays.binarySearch(names, name);
+    return index >= 0 ? entries[index] : null;
+  }
+
+  /**
+   * @return Names of entries from {@code fromName} (inclusive) to {@code toName} (exclusive), in order.
+   */
+  String[] getNames(String fromName, String toName) {
+    int from = insertionPoint(fromName);
+    int to = insertionPoint(toName);
+    return from < to ? Arrays.copyOfRange(names, from, to) : new String[0];
+  }
+
+  private int insertionPoint(String name) {
+    int index = Arrays.binarySearch(names, name);
+    return index >= 0 ? index : -index - 1;
+  }
+
+  private static final Comparator<Entry> BY_NAME = new Comparator<Entry>() {
+    @Override public int compare(Entry a, Entry b) {
+      return a.name.compareTo(b.name);
+    }
+  };
+
+  static final class Entry {
+    private final MappedJarFile jar;
+    final String name;
+    private final int method;
+    private final long compressedSize;
+    private final long size;
+    private final long localHeader;
+
+    Entry(MappedJarFile jar, String name, int method, long compressedSize, long size, long localHeader) {
+      this.jar = jar;
+      this.name = name;
+      this.method = method;
+      this.compressedSize = compressedSize;
+      this.size = size;
+      this.localHeader = localHeader;
+    }
+
+    /**
+     * @return The entry's contents, which for stored entries share memory with the mapped file.
+     */
+    ByteBuffer getByteBuffer() throws IOException {
+      if (method == STORED) {
+        return data();
+      }
+      return ByteBuffer.wrap(getInflated()).asReadOnlyBuffer();
+    }
+
+    /**
+     * @return A copy of the entry's contents.
+     */
+    byte[] getBytes() throws IOException {
+      if (method == STORED) {
+        ByteBuffer data = data();
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        return bytes;
+      }
+      return getInflated().clone();
+    }
+
+    InputStream getInputStream() throws IOException {
+      return new ByteBufferInputStream(getByteBuffer());
+    }
+
+    private ByteBuffer data() throws IOException {
+      ByteBuffer mapped = jar.mapped;
+      int header = (int) localHeader;
+      if (localHeader + 30 > jar.length || mapped.getInt(header) != LOCAL_HEADER) {
+        throw new ZipException("bad local header for " + name);
+      }
+      long start = localHeader + 30 + (mapped.getShort(header + 26) & 0xffff) + (mapped.getShort(header + 28) & 0xffff);
+      if (start + compressedSize > jar.length) {
+        throw new ZipException("truncated entry " + name);
+      }
+
+      ByteBuffer data = mapped.duplicate();
+      data.position((int) start);
+      data.limit((int) (start + compressedSize));
+      return data.slice().asReadOnlyBuffer();
+    }
+
+    private byte[] getInflated() throws IOException {
+      synchronized (INFLATED) {
+        byte[] bytes = INFLATED.get(this);
+        if (bytes != null) return bytes;
+      }
+
+      byte[] bytes = inflate();
+      if (bytes.length <= CACHE_SIZE / 8) {
+        synchronized (INFLATED) {
+          if (!INFLATED.containsKey(this)) {
+            inflatedSize += bytes.length;
+            INFLATED.put(this, bytes);
+          }
+        }
+      }
+      return bytes;
+    }
+
+    private byte[] inflate() throws IOException {
+      if (method != DEFLATED) {
+        throw new ZipException("unsupported compression method " + method + " for " + name);
+      }
+      if (size > Integer.MAX_VALUE) {
+        throw new ZipException(name + " is too large");
+      }
+
+      ByteBuffer data = data();
+      byte[] compressed = new byte[data.remaining()];
+      data.get(compressed);
+
+      byte[] bytes = new byte[(int) size];
+      Inflater inflater = new Inflater(true);
+      try {
+        inflater.setInput(compressed);
+        int inflated = 0;
+        boolean padded = false;
+        while (!inflater.finished() && inflated < bytes.length) {
+          int count = inflater.inflate(bytes, inflated, bytes.length - inflated);
+          if (count == 0) {
+            if (!inflater.needsInput() || padded) break;
+            // raw inflation can need one byte past the end of the data
+            inflater.setInput(new byte[1]);
+            padded = true;
+          }
+          inflated += count;
+        }
+        if (inflated != bytes.length) {
+          throw new ZipException("expected " + bytes.length + " bytes but got " + inflated + " for " + name);
+        }
+      } catch (DataFormatException e) {
+        throw new ZipException("couldn't inflate " + name + ": " + e.getMessage());
+      } finally {
+        inflater.end();
+      }
+      return bytes;
+    }
+  }
+
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override public int read(byte[] bytes, int offset, int length) {
+      if (length == 0) return 0;
+      if (!buffer.hasRemaining()) return -1;
+      int count = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, count);
+      return count;
+    }
+
+    @Override public long skip(long n) {
+      int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+      buffer.position(buffer.position() + count);
+      return count;
+    }
+
+    @Override public int available() {
+      return buffer.remaining();
+    }
+  }
+}
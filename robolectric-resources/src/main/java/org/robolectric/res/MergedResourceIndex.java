@@ -8,6 +8,7 @@ import java.util.Set;
 public class MergedResourceIndex extends ResourceIndex {
   private final ResourceIndex[] subIndexes;
   private final Set<String> actualPackageNames = new HashSet<>();
+  private final ResourceIdTable resourceIdTable;
 
   public MergedResourceIndex(ResourceIndex... subIndexes) {
     this.subIndexes = subIndexes;
@@ -16,6 +17,7 @@ public class MergedResourceIndex extends ResourceIndex {
       merge(resourceNameToId, subIndex.resourceNameToId, "resourceNameToId");
       merge(resourceIdToResName, subIndex.resourceIdToResName, "resourceIdToResName");
     }
+    resourceIdTable = new ResourceIdTable(resourceNameToId, resourceIdToResName);
   }
 
   private static <K,V> void merge(Map<K, V> map1, Map<K, V> map2, String name) {
@@ -29,7 +31,7 @@ public class MergedResourceIndex extends ResourceIndex {
   @Override
   public Integer getResourceId(ResName resName) {
     // todo: this is pretty silly...
-    Integer id = resourceNameToId.get(resName);
+    Integer id = resourceIdTable.getResourceId(resName);
     if (id == null) {
       for (ResourceIndex subIndex : subIndexes) {
         id = subIndex.getResourceId(resName);
@@ -42,7 +44,7 @@ public class MergedResourceIndex extends ResourceIndex {
   @Override
   public ResName getResName(int resourceId) {
     // todo: this is pretty silly...
-    ResName resName = resourceIdToResName.get(resourceId);
+    ResName resName = resourceIdTable.getResName(resourceId);
     if (resName == null) {
       for (ResourceIndex subIndex : subIndexes) {
         resName = subIndex.getResName(resourceId);
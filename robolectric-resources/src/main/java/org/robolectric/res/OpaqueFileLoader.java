@@ -13,4 +13,9 @@ public class OpaqueFileLoader extends XmlLoader {
   protected void processResourceXml(FsFile xmlFile, XpathResourceXmlLoader.XmlNode xmlNode, XmlContext xmlContext) throws Exception {
     resBunch.put(attrType, xmlFile.getBaseName(), new FileTypedResource<>(xmlFile.getPath(), ResType.LAYOUT), xmlContext);
   }
+
+  @Override
+  protected boolean needsDocument() {
+    return false;
+  }
 }
@@ -11,6 +11,7 @@ import java.util.Set;
 class OverlayResourceIndex extends ResourceIndex {
   private final String packageName;
   private final Set<String> actualPackageNames = new HashSet<>();
+  private final ResourceIdTable resourceIdTable;
 
   public OverlayResourceIndex(String packageName, List<PackageResourceLoader> subResourceLoaders) {
     this(packageName, map(subResourceLoaders));
@@ -34,13 +35,14 @@ class OverlayResourceIndex extends ResourceIndex {
       for (Map.Entry<ResName, Integer> entry : subResourceIndex.resourceNameToId.entrySet()) {
         ResName resName = entry.getKey();
         int value = entry.getValue();
-        ResName localResName = resName.withPackageName(packageName);
+        ResName localResName = resName.withPackageName(packageName).intern();
         if (!resourceNameToId.containsKey(localResName)) {
           resourceNameToId.put(localResName, value);
           resourceIdToResName.put(value, localResName);
         }
       }
     }
+    resourceIdTable = new ResourceIdTable(resourceNameToId, resourceIdToResName);
 
 //        if (OverlayResourceLoader.DEBUG) resEntries.check(subResourceIndexes);
   }
@@ -50,13 +52,13 @@ class OverlayResourceIndex extends ResourceIndex {
     if (!actualPackageNames.contains(resName.packageName)) {
       return null;
     }
-    return resourceNameToId.get(resName.withPackageName(packageName));
+    return resourceIdTable.getResourceId(resName.withPackageName(packageName));
   }
 
   @Override
   public ResName getResName(int resourceId) {
-    ResName resName = resourceIdToResName.get(resourceId);
-    return resName == null ? null : resName.withPackageName(packageName);
+    // names are stored with the overlay's package already
+    return resourceIdTable.getResName(resourceId);
   }
 
   @Override public Collection<String> getPackages() {
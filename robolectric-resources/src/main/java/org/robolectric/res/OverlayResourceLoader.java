@@ -4,7 +4,10 @@ import org.jetbrains.annotations.NotNull;
 import org.robolectric.res.builder.XmlBlock;
 
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 public class OverlayResourceLoader extends XResourceLoader {
   private final String packageName;
@@ -17,17 +20,20 @@ public class OverlayResourceLoader extends XResourceLoader {
   }
 
   @Override
-  void doInitialize() {
-    for (PackageResourceLoader subResourceLoader : subResourceLoaders) {
-      subResourceLoader.initialize();
+  void loadGroup(final String group) {
+    // load packages in parallel, but merge them in order so earlier packages still win
+    List<ForkJoinTask<?>> tasks = new ArrayList<>();
+    for (final PackageResourceLoader subResourceLoader : subResourceLoaders) {
+      tasks.add(new RecursiveAction() {
+        @Override protected void compute() {
+          subResourceLoader.load(group);
+        }
+      });
+    }
+    DocumentLoader.invokeAll(tasks);
 
-      pluralsData.mergeLibraryStyle(subResourceLoader.pluralsData, packageName);
-      stringData.mergeLibraryStyle(subResourceLoader.stringData, packageName);
-      drawableData.mergeLibraryStyle(subResourceLoader.drawableData, packageName);
-      preferenceData.mergeLibraryStyle(subResourceLoader.preferenceData, packageName);
-      xmlDocuments.mergeLibraryStyle(subResourceLoader.xmlDocuments, packageName);
-      rawResources.mergeLibraryStyle(subResourceLoader.rawResources, packageName);
-      data.mergeLibraryStyle(subResourceLoader.data, packageName);
+    for (PackageResourceLoader subResourceLoader : subResourceLoaders) {
+      mergeLibraryStyle(subResourceLoader, group, packageName);
     }
   }
 
@@ -14,9 +14,10 @@ public class PackageResourceLoader extends XResourceLoader {
     this.resourcePath = resourcePath;
   }
 
-  void doInitialize() {
+  @Override
+  void loadGroup(String group) {
     try {
-      loadEverything();
+      loadGroup(group, new DocumentLoader(resourcePath));
     } catch (RuntimeException e) {
       throw e;
     } catch (Exception e) {
@@ -24,11 +25,29 @@ public class PackageResourceLoader extends XResourceLoader {
     }
   }
 
-  private void loadEverything() throws Exception {
-    Logger.debug("Loading resources for %s from %s...", resourcePath.getPackageName(), resourcePath.resourceBase);
+  private void loadGroup(String group, DocumentLoader documentLoader) throws Exception {
+    Logger.debug("Loading %s resources for %s from %s...", group, resourcePath.getPackageName(), resourcePath.resourceBase);
 
-    DocumentLoader documentLoader = new DocumentLoader(resourcePath);
+    if (VALUES.equals(group)) {
+      loadValues(documentLoader);
+      loadOtherResources(resourcePath);
+    } else if (DRAWABLES.equals(group)) {
+      new DrawableResourceLoader(drawableData).findDrawableResources(resourcePath);
+    } else if (RAW.equals(group)) {
+      new RawResourceLoader(resourcePath).loadTo(rawResources);
+    } else if ("color".equals(group)) {
+      documentLoader.load(group, new ColorResourceLoader(data), new XmlBlockLoader(xmlDocuments.get(group), group));
+    } else if ("xml".equals(group)) {
+      documentLoader.load(group, new PreferenceLoader(preferenceData), new XmlBlockLoader(xmlDocuments.get(group), group));
+    } else {
+      documentLoader.load(group, new OpaqueFileLoader(data, group), new XmlBlockLoader(xmlDocuments.get(group), group));
+    }
+  }
 
+  /**
+   * Load everything defined in the {@code values} directories into {@link #data} and {@link #pluralsData}.
+   */
+  void loadValues(DocumentLoader documentLoader) throws Exception {
     documentLoader.load("values",
         new ValueResourceLoader(data, "/resources/bool", "bool", ResType.BOOLEAN),
         new ValueResourceLoader(data, "/resources/item[@type='bool']", "bool", ResType.BOOLEAN),
@@ -50,23 +69,11 @@ public class PackageResourceLoader extends XResourceLoader {
         new AttrResourceLoader(data),
         new StyleResourceLoader(data)
     );
-
-    documentLoader.load("layout", new OpaqueFileLoader(data, "layout"), new XmlBlockLoader(xmlDocuments, "layout"));
-    documentLoader.load("menu", new OpaqueFileLoader(data, "menu"), new XmlBlockLoader(xmlDocuments, "menu"));
-    documentLoader.load("drawable", new OpaqueFileLoader(data, "drawable"), new XmlBlockLoader(xmlDocuments, "drawable"));
-    documentLoader.load("anim", new OpaqueFileLoader(data, "anim"), new XmlBlockLoader(xmlDocuments, "anim"));
-    documentLoader.load("animator", new OpaqueFileLoader(data, "animator"), new XmlBlockLoader(xmlDocuments, "animator"));
-    documentLoader.load("color", new ColorResourceLoader(data), new XmlBlockLoader(xmlDocuments, "color"));
-    documentLoader.load("xml", new PreferenceLoader(preferenceData), new XmlBlockLoader(xmlDocuments, "xml"));
-    documentLoader.load("transition", new OpaqueFileLoader(data, "transition"), new XmlBlockLoader(xmlDocuments, "transition"));
-    documentLoader.load("interpolator", new OpaqueFileLoader(data, "interpolator"), new XmlBlockLoader(xmlDocuments, "interpolator"));
-
-    new DrawableResourceLoader(drawableData).findDrawableResources(resourcePath);
-    new RawResourceLoader(resourcePath).loadTo(rawResources);
-
-    loadOtherResources(resourcePath);
   }
 
+  /**
+   * Called once values have been loaded.
+   */
   protected void loadOtherResources(ResourcePath resourcePath) {
   }
 
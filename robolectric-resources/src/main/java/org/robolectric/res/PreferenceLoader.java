@@ -41,7 +41,7 @@ public class PreferenceLoader extends XmlLoader {
         if (attrName.startsWith("xmlns:")) {
           // ignore
         } else {
-          attrList.add(new Attribute(Attribute.addType(attrName, "attr"), attr.getNodeValue(), xmlContext.packageName));
+          attrList.add(new Attribute(Attribute.addType(attrName, "attr"), attr.getNodeValue(), xmlContext.packageName).intern());
         }
       }
     }
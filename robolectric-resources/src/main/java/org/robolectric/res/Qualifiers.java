@@ -0,0 +1,57 @@
+package org.robolectric.res;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A resource configuration, such as {@code "en-port-v14"}, parsed once into the pieces {@link ResBundle#pick}
+ * needs to match values against it.
+ */
+final class Qualifiers {
+  private static final ConcurrentMap<String, Qualifiers> INTERNED = new ConcurrentHashMap<>();
+
+  final String qualifiers;
+  final String[] paddedQualifiers;
+  final int apiLevel;
+  final String paddedWithoutVersion;
+
+  private Qualifiers(String qualifiers) {
+    this.qualifiers = qualifiers;
+
+    List<String> paddedQualifiers = new ArrayList<>();
+    StringTokenizer st = new StringTokenizer(qualifiers, "-");
+    while (st.hasMoreTokens()) {
+      paddedQualifiers.add("-" + st.nextToken() + "-");
+    }
+    this.paddedQualifiers = paddedQualifiers.toArray(new String[paddedQualifiers.size()]);
+    this.apiLevel = ResBundle.getVersionQualifierApiLevel(qualifiers);
+    this.paddedWithoutVersion = ResBundle.removeVersion("-" + qualifiers + "-");
+  }
+
+  /**
+   * @param qualifiers The configuration, e.g. {@code "en-port-v14"}.
+   * @return The parsed configuration; the same instance is returned for equal strings.
+   */
+  static Qualifiers parse(String qualifiers) {
+    Qualifiers parsed = INTERNED.get(qualifiers);
+    if (parsed == null) {
+      parsed = new Qualifiers(qualifiers);
+      Qualifiers existing = INTERNED.putIfAbsent(qualifiers, parsed);
+      if (existing != null) {
+        parsed = existing;
+      }
+    }
+    return parsed;
+  }
+
+  boolean isEmpty() {
+    return qualifiers.isEmpty();
+  }
+
+  @Override public String toString() {
+    return qualifiers;
+  }
+}
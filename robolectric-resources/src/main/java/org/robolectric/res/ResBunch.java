@@ -1,13 +1,16 @@
 package org.robolectric.res;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import org.jetbrains.annotations.NotNull;
 
 public class ResBunch {
-  private final Map<String, ResBundle<TypedResource>> types = new LinkedHashMap<>();
+  // replaced rather than changed when a type is added, so loaded types can be read while others are still loading
+  private volatile Map<String, ResBundle<TypedResource>> types = new LinkedHashMap<>();
 
-  public void put(String attrType, String name, TypedResource value, XmlLoader.XmlContext xmlContext) {
+  public synchronized void put(String attrType, String name, TypedResource value, XmlLoader.XmlContext xmlContext) {
     ResBundle<TypedResource> bundle = getBundle(attrType);
     bundle.put(attrType, name, value, xmlContext);
   }
@@ -15,8 +18,9 @@ public class ResBunch {
   private ResBundle<TypedResource> getBundle(String attrType) {
     ResBundle<TypedResource> bundle = types.get(attrType);
     if (bundle == null) {
-      bundle = new ResBundle<>();
-      types.put(attrType, bundle);
+      Map<String, ResBundle<TypedResource>> newTypes = new LinkedHashMap<>(types);
+      newTypes.put(attrType, bundle = new ResBundle<>());
+      types = newTypes;
     }
     return bundle;
   }
@@ -27,8 +31,8 @@ public class ResBunch {
   }
 
   public ResBundle.Value<TypedResource> getValue(@NotNull ResName resName, String qualifiers) {
-    ResBundle<TypedResource> bundle = getBundle(resName.type);
-    return bundle.getValue(resName, qualifiers);
+    ResBundle<TypedResource> bundle = types.get(resName.type);
+    return bundle == null ? null : bundle.getValue(resName, qualifiers);
   }
 
   public int size() {
@@ -39,15 +43,47 @@ public class ResBunch {
     return size;
   }
 
+  synchronized void put(ResName resName, ResBundle.Value<TypedResource> value) {
+    getBundle(resName.type).put(resName, value);
+  }
+
+  synchronized void clear() {
+    types = new LinkedHashMap<>();
+  }
+
+  Collection<String> getTypes() {
+    return new ArrayList<>(types.keySet());
+  }
+
+  void receive(ResBundle.Visitor<TypedResource> visitor) {
+    for (ResBundle<TypedResource> bundle : types.values()) {
+      bundle.receive(visitor);
+    }
+  }
+
   public void makeImmutable() {
     for (ResBundle<TypedResource> bundle : types.values()) {
       bundle.makeImmutable();
     }
   }
 
-  public void mergeLibraryStyle(ResBunch fromResBundle, String packageName) {
+  void makeImmutable(String attrType) {
+    ResBundle<TypedResource> bundle = types.get(attrType);
+    if (bundle != null) {
+      bundle.makeImmutable();
+    }
+  }
+
+  public synchronized void mergeLibraryStyle(ResBunch fromResBundle, String packageName) {
     for (Map.Entry<String, ResBundle<TypedResource>> entry : fromResBundle.types.entrySet()) {
       getBundle(entry.getKey()).mergeLibraryStyle(entry.getValue(), packageName);
     }
   }
+
+  synchronized void mergeLibraryStyle(ResBunch fromResBundle, String attrType, String packageName) {
+    ResBundle<TypedResource> fromBundle = fromResBundle.types.get(attrType);
+    if (fromBundle != null) {
+      getBundle(attrType).mergeLibraryStyle(fromBundle, packageName);
+    }
+  }
 }
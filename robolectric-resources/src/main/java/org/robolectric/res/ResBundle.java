@@ -1,12 +1,14 @@
 package org.robolectric.res;
 
 import java.util.ArrayList;
-import java.util.BitSet;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -21,15 +23,34 @@ public class ResBundle<T> {
   private static final Pattern VERSION_QUALIFIER_PATTERN_WITH_DASHES
       = Pattern.compile(PADDED_VERSION_QUALIFIER_REGEX);
 
+  private static final Object NOTHING_PICKED = new Object();
+  // tests usually switch between a handful of configurations, e.g. with @Config(qualifiers = ...)
+  private static final int MAX_PICK_CACHES = 8;
+
   private final ResMap<T> valuesMap = new ResMap<>();
   private final ResMap<List<T>> valuesArrayMap = new ResMap<>();
   private String overrideNamespace;
+  private volatile boolean immutable;
+  private final ConcurrentMap<String, PickCache> pickCaches = new ConcurrentHashMap<>();
+  // values are appended as they're loaded, and sorted by qualifiers only when they're next read
+  private boolean sorted = true;
+
+  public synchronized void put(String attrType, String name, T value, XmlLoader.XmlContext xmlContext) {
+    ResName resName = new ResName(maybeOverride(xmlContext.packageName), attrType, name).intern();
+    valuesMap.find(resName).add(new Value<>(xmlContext.getQualifiers(), value, xmlContext.getXmlFile().getPath()));
+    sorted = false;
+  }
 
-  public void put(String attrType, String name, T value, XmlLoader.XmlContext xmlContext) {
-    ResName resName = new ResName(maybeOverride(xmlContext.packageName), attrType, name);
-    List<Value<T>> values = valuesMap.find(resName);
-    values.add(new Value<>(xmlContext.getQualifiers(), value));
-    Collections.sort(values);
+  synchronized void put(ResName resName, Value<T> value) {
+    valuesMap.find(maybeOverride(resName).intern()).add(value);
+    sorted = false;
+  }
+
+  private synchronized void ensureSorted() {
+    if (!sorted) {
+      valuesMap.sort();
+      sorted = true;
+    }
   }
 
   public T get(ResName resName, String qualifiers) {
@@ -38,8 +59,45 @@ public class ResBundle<T> {
   }
 
   public Value<T> getValue(ResName resName, String qualifiers) {
-    List<Value<T>> values = valuesMap.find(maybeOverride(resName));
-    return values != null ? pick(values, qualifiers) : null;
+    resName = maybeOverride(resName);
+    if (!immutable) {
+      ensureSorted();
+      List<Value<T>> values = valuesMap.get(resName);
+      return values != null ? pick(values, qualifiers) : null;
+    }
+
+    // once loaded, values can't change, so remember what was picked for each configuration
+    PickCache pickCache = getPickCache(qualifiers);
+
+    Object picked = pickCache.picked.get(resName);
+    if (picked == null) {
+      List<Value<T>> values = valuesMap.get(resName);
+      Value<T> value = values != null ? pick(values, pickCache.qualifiers) : null;
+      picked = value == null ? NOTHING_PICKED : value;
+      pickCache.picked.putIfAbsent(resName, picked);
+    }
+    //noinspection unchecked
+    return picked == NOTHING_PICKED ? null : (Value<T>) picked;
+  }
+
+  private PickCache getPickCache(String qualifiers) {
+    PickCache pickCache = pickCaches.get(qualifiers);
+    if (pickCache == null) {
+      pickCache = new PickCache(Qualifiers.parse(qualifiers));
+      PickCache existing = pickCaches.putIfAbsent(qualifiers, pickCache);
+      if (existing != null) {
+        return existing;
+      }
+      if (pickCaches.size() > MAX_PICK_CACHES) {
+        Iterator<String> cached = pickCaches.keySet().iterator();
+        while (pickCaches.size() > MAX_PICK_CACHES && cached.hasNext()) {
+          if (!cached.next().equals(qualifiers)) {
+            cached.remove();
+          }
+        }
+      }
+    }
+    return pickCache;
   }
 
   public static int getVersionQualifierApiLevel(String qualifiers) {
@@ -51,29 +109,37 @@ public class ResBundle<T> {
   }
 
   public static <T> Value<T> pick(List<Value<T>> values, String qualifiers) {
+    return pick(values, Qualifiers.parse(qualifiers));
+  }
+
+  static <T> Value<T> pick(List<Value<T>> values, Qualifiers qualifiers) {
     final int count = values.size();
     if (count == 0) return null;
 
-    BitSet possibles = new BitSet(count);
-    possibles.set(0, count);
-
-    StringTokenizer st = new StringTokenizer(qualifiers, "-");
-    while (st.hasMoreTokens()) {
-      String qualifier = st.nextToken();
-      String paddedQualifier = "-" + qualifier + "-";
-      BitSet matches = new BitSet(count);
+    long[] possibles = new long[(count + 63) >>> 6];
+    long[] matches = new long[possibles.length];
+    for (int i = 0; i < count; i++) {
+      possibles[i >>> 6] |= 1L << i;
+    }
 
-      for (int i = possibles.nextSetBit(0); i != -1; i = possibles.nextSetBit(i + 1)) {
+    for (String paddedQualifier : qualifiers.paddedQualifiers) {
+      int matchCount = 0;
+      for (int i = nextSetBit(possibles, 0); i != -1; i = nextSetBit(possibles, i + 1)) {
         if (values.get(i).qualifiers.contains(paddedQualifier)) {
-          matches.set(i);
+          matches[i >>> 6] |= 1L << i;
+          matchCount++;
         }
       }
 
-      if (!matches.isEmpty()) {
-        possibles.and(matches); // eliminate any that didn't match this qualifier
+      if (matchCount > 0) {
+        // eliminate any that didn't match this qualifier
+        for (int w = 0; w < possibles.length; w++) {
+          possibles[w] &= matches[w];
+          matches[w] = 0;
+        }
       }
 
-      if (matches.cardinality() == 1) break;
+      if (matchCount == 1) break;
     }
 
     /*
@@ -82,18 +148,15 @@ public class ResBundle<T> {
      * in the precedence table at:
      * https://developer.android.com/guide/topics/resources/providing-resources.html#table2
      */
-    int targetApiLevel = getVersionQualifierApiLevel(qualifiers);
-    if (qualifiers.length() > 0 && targetApiLevel != -1) {
+    int targetApiLevel = qualifiers.apiLevel;
+    if (!qualifiers.isEmpty() && targetApiLevel != -1) {
       Value<T> bestMatch = null;
       int bestMatchDistance = Integer.MAX_VALUE;
-      for (int i = possibles.nextSetBit(0); i != -1; i = possibles.nextSetBit(i + 1)) {
+      for (int i = nextSetBit(possibles, 0); i != -1; i = nextSetBit(possibles, i + 1)) {
         Value<T> value = values.get(i);
         int distance = getDistance(value, targetApiLevel);
         // Remove the version part and see if they still match
-        String paddedQualifier = "-" + qualifiers + "-";
-        String valueWithoutVersion = VERSION_QUALIFIER_PATTERN_WITH_DASHES.matcher(value.qualifiers).replaceAll("--");
-        String qualifierWithoutVersion = VERSION_QUALIFIER_PATTERN_WITH_DASHES.matcher(paddedQualifier).replaceAll("--");
-        if (qualifierWithoutVersion.contains(valueWithoutVersion) && distance >= 0 && distance < bestMatchDistance) {
+        if (qualifiers.paddedWithoutVersion.contains(value.getQualifiersWithoutVersion()) && distance >= 0 && distance < bestMatchDistance) {
           bestMatch = value;
           bestMatchDistance = distance;
         }
@@ -103,12 +166,23 @@ public class ResBundle<T> {
       }
     }
 
-    int i = possibles.nextSetBit(0);
+    int i = nextSetBit(possibles, 0);
     if (i != -1) return values.get(i);
 
     throw new IllegalStateException("couldn't handle qualifiers \"" + qualifiers + "\"");
   }
 
+  private static int nextSetBit(long[] bits, int fromIndex) {
+    int w = fromIndex >>> 6;
+    if (w >= bits.length) return -1;
+    long word = bits[w] & (-1L << fromIndex);
+    while (true) {
+      if (word != 0) return (w << 6) + Long.numberOfTrailingZeros(word);
+      if (++w == bits.length) return -1;
+      word = bits[w];
+    }
+  }
+
   /*
    * Gets the difference between the version qualifier of val and targetApiLevel.
    *
@@ -118,22 +192,19 @@ public class ResBundle<T> {
    *   or val has no version qualifier
    */
   private static int getDistance(Value val, int targetApiLevel) {
-    int distance = -1;
-    Matcher m = VERSION_QUALIFIER_PATTERN_WITH_DASHES.matcher(val.qualifiers);
-    if (m.find()) {
-      String match = m.group(1);
-      int resApiLevel = Integer.parseInt(match);
-      distance = targetApiLevel - resApiLevel;
-
-      if (m.find()) {
-        throw new IllegalStateException("A resource file was found that had two API level qualifiers: " + val);
-      }
-    } else {
-      if (val.qualifiers.equals("--")) {
-        distance = targetApiLevel;
-      }
+    int resApiLevel = val.getApiLevel();
+    if (resApiLevel == Value.MULTIPLE_API_LEVELS) {
+      throw new IllegalStateException("A resource file was found that had two API level qualifiers: " + val);
+    } else if (resApiLevel != -1) {
+      return targetApiLevel - resApiLevel;
+    } else if (val.qualifiers.equals("--")) {
+      return targetApiLevel;
     }
-    return distance;
+    return -1;
+  }
+
+  static String removeVersion(String paddedQualifiers) {
+    return VERSION_QUALIFIER_PATTERN_WITH_DASHES.matcher(paddedQualifiers).replaceAll("--");
   }
 
   public int size() {
@@ -141,8 +212,10 @@ public class ResBundle<T> {
   }
 
   public void makeImmutable() {
+    ensureSorted();
     valuesMap.makeImmutable();
     valuesArrayMap.makeImmutable();
+    immutable = true;
   }
 
   public void overrideNamespace(String overrideNamespace) {
@@ -158,22 +231,69 @@ public class ResBundle<T> {
     return overrideNamespace == null ? resName : new ResName(overrideNamespace, resName.type, resName.name);
   }
 
+  void clear() {
+    valuesMap.clear();
+    valuesArrayMap.clear();
+  }
+
+  void receive(Visitor<T> visitor) {
+    ensureSorted();
+    for (Map.Entry<ResName, List<Value<T>>> entry : valuesMap.map.entrySet()) {
+      visitor.visit(entry.getKey(), entry.getValue());
+    }
+  }
+
   public void mergeLibraryStyle(ResBundle<T> fromResBundle, String packageName) {
+    // library values are appended after ours without sorting, so ours take precedence
+    ensureSorted();
+    fromResBundle.ensureSorted();
     valuesMap.merge(packageName, fromResBundle.valuesMap);
     valuesArrayMap.merge(packageName, fromResBundle.valuesArrayMap);
   }
 
+  /**
+   * Values picked for one configuration. A few are kept, so alternating between configurations doesn't start over.
+   */
+  private static class PickCache {
+    final Qualifiers qualifiers;
+    final ConcurrentMap<ResName, Object> picked = new ConcurrentHashMap<>();
+
+    PickCache(Qualifiers qualifiers) {
+      this.qualifiers = qualifiers;
+    }
+  }
+
+  interface Visitor<T> {
+    void visit(ResName resName, List<Value<T>> values);
+  }
+
   public static class Value<T> implements Comparable<Value<T>> {
+    private static final int UNKNOWN_API_LEVEL = -2;
+    static final int MULTIPLE_API_LEVELS = -3;
+
     private final String qualifiers;
     private final T value;
+    private final String source;
+    // computed when first picked; racing threads compute the same values
+    private String qualifiersWithoutVersion;
+    private int apiLevel = UNKNOWN_API_LEVEL;
 
     Value(String qualifiers, T value) {
+      this(qualifiers, value, null);
+    }
+
+    /**
+     * @param source Where the value was defined. Values with the same qualifiers are ordered by source, so the order
+     *     doesn't depend on the order files were loaded in.
+     */
+    Value(String qualifiers, T value, String source) {
       if (value == null) {
         throw new NullPointerException();
       }
 
       this.qualifiers = qualifiers == null ? "--" : "-" + qualifiers + "-";
       this.value = value;
+      this.source = source;
     }
 
     public String getQualifiers() {
@@ -184,9 +304,40 @@ public class ResBundle<T> {
       return value;
     }
 
+    String getQualifiersWithoutVersion() {
+      String qualifiersWithoutVersion = this.qualifiersWithoutVersion;
+      if (qualifiersWithoutVersion == null) {
+        this.qualifiersWithoutVersion = qualifiersWithoutVersion = removeVersion(qualifiers);
+      }
+      return qualifiersWithoutVersion;
+    }
+
+    /**
+     * @return The API level of this value's version qualifier, -1 if it has none, or {@link #MULTIPLE_API_LEVELS}.
+     */
+    int getApiLevel() {
+      int apiLevel = this.apiLevel;
+      if (apiLevel == UNKNOWN_API_LEVEL) {
+        apiLevel = -1;
+        Matcher m = VERSION_QUALIFIER_PATTERN_WITH_DASHES.matcher(qualifiers);
+        if (m.find()) {
+          apiLevel = Integer.parseInt(m.group(1));
+          if (m.find()) {
+            apiLevel = MULTIPLE_API_LEVELS;
+          }
+        }
+        this.apiLevel = apiLevel;
+      }
+      return apiLevel;
+    }
+
     @Override
     public int compareTo(Value<T> o) {
-      return qualifiers.compareTo(o.qualifiers);
+      int result = qualifiers.compareTo(o.qualifiers);
+      if (result == 0 && source != null && o.source != null) {
+        result = source.compareTo(o.source);
+      }
+      return result;
     }
 
     @Override public String toString() {
@@ -201,7 +352,14 @@ public class ResBundle<T> {
     private final Map<ResName, List<Value<T>>> map = new HashMap<>();
     private boolean immutable;
 
+    public List<Value<T>> get(ResName resName) {
+      return map.get(resName);
+    }
+
     public List<Value<T>> find(ResName resName) {
+      if (immutable) {
+        throw new IllegalStateException("immutable!");
+      }
       List<Value<T>> values = map.get(resName);
       if (values == null) map.put(resName, values = new ArrayList<>());
       return values;
@@ -213,7 +371,7 @@ public class ResBundle<T> {
       }
 
       for (Map.Entry<ResName, List<Value<T>>> entry : sourceMap.map.entrySet()) {
-        ResName resName = entry.getKey().withPackageName(packageName);
+        ResName resName = entry.getKey().withPackageName(packageName).intern();
         find(resName).addAll(entry.getValue());
       }
     }
@@ -222,7 +380,27 @@ public class ResBundle<T> {
       return map.size();
     }
 
+    void clear() {
+      if (immutable) {
+        throw new IllegalStateException("immutable!");
+      }
+      map.clear();
+    }
+
+    private void sort() {
+      for (List<Value<T>> values : map.values()) {
+        Collections.sort(values);
+      }
+    }
+
     public void makeImmutable() {
+      // trim each list down to an array of exactly its values
+      for (Map.Entry<ResName, List<Value<T>>> entry : map.entrySet()) {
+        List<Value<T>> values = entry.getValue();
+        @SuppressWarnings("unchecked")
+        Value<T>[] array = values.toArray(new Value[values.size()]);
+        entry.setValue(Collections.unmodifiableList(Arrays.asList(array)));
+      }
       immutable = true;
     }
   }
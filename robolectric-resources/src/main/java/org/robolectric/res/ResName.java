@@ -3,38 +3,62 @@ package org.robolectric.res;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class ResName {
-  private static final Pattern FQN_PATTERN = Pattern.compile("^([^:]*):([^/]+)/(.+)$");
-  private static final int NAMESPACE = 1;
-  private static final int TYPE = 2;
-  private static final int NAME = 3;
+  private static final WeakInterner<ResName> INTERNED = new WeakInterner<>();
 
   public final @NotNull String packageName;
   public final @NotNull String type;
   public final @NotNull String name;
+  private final int hashCode;
+  // the last name asked for in another package, since overlays keep asking for the same one
+  private volatile ResName withOtherPackageName;
 
   public ResName(@NotNull String packageName, @NotNull String type, @NotNull String name) {
     this.packageName = packageName;
     this.type = type;
     this.name = name.indexOf('.') != -1 ? name.replace('.', '_').trim() : name.trim();
+    this.hashCode = computeHashCode();
   }
 
+  /**
+   * @param fullyQualifiedName A name like {@code "android:string/ok"}.
+   */
   public ResName(@NotNull String fullyQualifiedName) {
-    Matcher matcher = FQN_PATTERN.matcher(fullyQualifiedName.trim());
-    if (!matcher.find()) {
+    String trimmed = fullyQualifiedName.trim();
+    int colon = trimmed.indexOf(':');
+    int slash = colon == -1 ? -1 : trimmed.indexOf('/', colon + 1);
+    if (slash == -1 || slash == colon + 1 || slash == trimmed.length() - 1 || hasLineTerminator(trimmed, slash + 1)) {
       throw new IllegalStateException("\"" + fullyQualifiedName + "\" is not fully qualified");
     }
-    packageName = matcher.group(NAMESPACE);
-    type = matcher.group(TYPE);
-    String nameStr = matcher.group(NAME);
+    packageName = trimmed.substring(0, colon);
+    type = trimmed.substring(colon + 1, slash);
+    String nameStr = trimmed.substring(slash + 1);
     name = nameStr.indexOf('.') != -1 ? nameStr.replace('.', '_') : nameStr;
+    hashCode = computeHashCode();
 
     if (packageName.equals("xmlns")) throw new IllegalStateException("\"" + fullyQualifiedName + "\" unexpected");
   }
 
+  private static boolean hasLineTerminator(String string, int from) {
+    for (int i = from; i < string.length(); i++) {
+      switch (string.charAt(i)) {
+        case '\n': case '\r': case '\u0085': case '\u2028': case '\u2029':
+          return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return A name equal to this one; the same instance is returned for equal names, so names kept around by
+   *     resource loaders can share memory and be compared by identity. Names are only held while something else
+   *     refers to them, so call this for names that are kept, not for ones built for a single lookup.
+   */
+  public ResName intern() {
+    return INTERNED.intern(this);
+  }
+
   public static @NotNull String qualifyResourceName(@NotNull String possiblyQualifiedResourceName, String defaultPackageName, String defaultType) {
     ResName resName = qualifyResName(possiblyQualifiedResourceName, defaultPackageName, defaultType);
     return resName.getFullyQualifiedName();
@@ -92,6 +116,7 @@ public class ResName {
 
     ResName resName = (ResName) o;
 
+    if (hashCode != resName.hashCode) return false;
     if (!packageName.equals(resName.packageName)) return false;
     if (!type.equals(resName.type)) return false;
     if (!name.equals(resName.name)) return false;
@@ -101,6 +126,10 @@ public class ResName {
 
   @Override
   public int hashCode() {
+    return hashCode;
+  }
+
+  private int computeHashCode() {
     int result = packageName.hashCode();
     result = 31 * result + type.hashCode();
     result = 31 * result + name.hashCode();
@@ -122,7 +151,11 @@ public class ResName {
 
   public ResName withPackageName(String packageName) {
     if (packageName.equals(this.packageName)) return this;
-    return new ResName(packageName, type, name);
+    ResName withOtherPackageName = this.withOtherPackageName;
+    if (withOtherPackageName == null || !withOtherPackageName.packageName.equals(packageName)) {
+      this.withOtherPackageName = withOtherPackageName = new ResName(packageName, type, name);
+    }
+    return withOtherPackageName;
   }
 
   public void mustBe(String expectedType) {
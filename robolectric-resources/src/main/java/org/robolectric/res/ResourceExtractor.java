@@ -6,6 +6,8 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 
 public class ResourceExtractor extends ResourceIndex {
@@ -16,12 +18,17 @@ public class ResourceExtractor extends ResourceIndex {
   private final Class<?> processedRFile;
   private final String packageName;
   private final List<String> packageNames;
+  private final ResourceIdTable resourceIdTable;
+  // ids made up for system resources missing from R, which can't be in the table
+  private final ConcurrentMap<ResName, Integer> assignedIds = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Integer, ResName> assignedResNames = new ConcurrentHashMap<>();
   private Integer maxUsedInt = null;
 
   public ResourceExtractor() {
     processedRFile = null;
     packageName = "";
     packageNames = Arrays.asList();
+    resourceIdTable = new ResourceIdTable(resourceNameToId, resourceIdToResName);
   }
 
   /**
@@ -33,6 +40,7 @@ public class ResourceExtractor extends ResourceIndex {
     processedRFile = androidRClass;
     packageName = processedRFile.getPackage().getName();
     packageNames = Arrays.asList(packageName);
+    resourceIdTable = new ResourceIdTable(resourceNameToId, resourceIdToResName);
   }
 
   public ResourceExtractor(ResourcePath resourcePath) {
@@ -40,11 +48,12 @@ public class ResourceExtractor extends ResourceIndex {
     packageNames = Arrays.asList(packageName);
     if (resourcePath.rClass == null) {
       processedRFile = null;
-      return;
+    } else {
+      if (REMAP_RESOURCES) RESOURCE_REMAPPER.remapRClass(resourcePath.rClass);
+      processedRFile = resourcePath.rClass;
+      gatherResourceIdsAndNames(resourcePath.rClass, packageName, true);
     }
-    if (REMAP_RESOURCES) RESOURCE_REMAPPER.remapRClass(resourcePath.rClass);
-    processedRFile = resourcePath.rClass;
-    gatherResourceIdsAndNames(resourcePath.rClass, packageName, true);
+    resourceIdTable = new ResourceIdTable(resourceNameToId, resourceIdToResName);
   }
 
   private void gatherResourceIdsAndNames(Class<?> rClass, String packageName, boolean checkForCollisions) {
@@ -61,7 +70,7 @@ public class ResourceExtractor extends ResourceIndex {
 
           if (!section.equals("styleable")) {
             String fieldName = field.getName();
-            ResName resName = new ResName(packageName, section, fieldName);
+            ResName resName = new ResName(packageName, section, fieldName).intern();
 
             resourceNameToId.put(resName, id);
 
@@ -84,23 +93,40 @@ public class ResourceExtractor extends ResourceIndex {
   }
 
   @Override
-  public synchronized Integer getResourceId(ResName resName) {
-    Integer id = resourceNameToId.get(resName);
+  public Integer getResourceId(ResName resName) {
+    Integer id = resourceIdTable.getResourceId(resName);
     if (id == null && ("android".equals(resName.packageName) || "".equals(resName.packageName))) {
+      id = assignedIds.get(resName);
+      if (id == null) {
+        id = assignResourceId(resName);
+      }
+    }
+    return id;
+  }
+
+  private synchronized Integer assignResourceId(ResName resName) {
+    Integer id = resourceNameToId.get(resName);
+    if (id == null) {
       if (maxUsedInt == null) {
         maxUsedInt = resourceIdToResName.isEmpty() ? 0 : Collections.max(resourceIdToResName.keySet());
       }
       id = ++maxUsedInt;
       resourceNameToId.put(resName, id);
       resourceIdToResName.put(id, resName);
+      assignedResNames.put(id, resName);
+      assignedIds.put(resName, id);
       LOGGER.fine("no id mapping found for " + resName.getFullyQualifiedName() + "; assigning ID #0x" + Integer.toHexString(id));
     }
     return id;
   }
 
   @Override
-  public synchronized ResName getResName(int resourceId) {
-    return resourceIdToResName.get(resourceId);
+  public ResName getResName(int resourceId) {
+    ResName resName = resourceIdTable.getResName(resourceId);
+    if (resName == null && !assignedResNames.isEmpty()) {
+      resName = assignedResNames.get(resourceId);
+    }
+    return resName;
   }
 
   @Override public Collection<String> getPackages() {
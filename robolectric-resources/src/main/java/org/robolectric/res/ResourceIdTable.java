@@ -0,0 +1,86 @@
+package org.robolectric.res;
+
+import java.util.Map;
+
+/**
+ * Immutable lookup tables between resource ids and {@link ResName}s, safe to read from any thread without locking.
+ *
+ * Names are found by id in dense arrays following the {@code 0xPPTTEEEE} (package, type, entry) layout of
+ * resource ids. Ids are found by name in an open-addressed hash table, and are returned as the same
+ * {@link Integer} instances they were built from, so lookups don't box.
+ */
+final class ResourceIdTable {
+  private final ResName[][][] namesById = new ResName[256][][];
+  private final ResName[] names;
+  private final Integer[] ids;
+  private final int mask;
+
+  ResourceIdTable(Map<ResName, Integer> resourceNameToId, Map<Integer, ResName> resourceIdToResName) {
+    for (Map.Entry<Integer, ResName> entry : resourceIdToResName.entrySet()) {
+      int id = entry.getKey();
+      ResName[][] types = namesById[packageIndex(id)];
+      if (types == null) {
+        types = namesById[packageIndex(id)] = new ResName[256][];
+      }
+      ResName[] entries = types[typeIndex(id)];
+      if (entries == null || entries.length <= entryIndex(id)) {
+        ResName[] grown = new ResName[Math.max(entryIndex(id) + 1, entries == null ? 16 : entries.length * 2)];
+        if (entries != null) {
+          System.arraycopy(entries, 0, grown, 0, entries.length);
+        }
+        entries = types[typeIndex(id)] = grown;
+      }
+      entries[entryIndex(id)] = entry.getValue();
+    }
+
+    int capacity = 16;
+    while (capacity < resourceNameToId.size() * 2) {
+      capacity <<= 1;
+    }
+    names = new ResName[capacity];
+    ids = new Integer[capacity];
+    mask = capacity - 1;
+    for (Map.Entry<ResName, Integer> entry : resourceNameToId.entrySet()) {
+      int slot = slot(entry.getKey());
+      while (names[slot] != null) {
+        slot = (slot + 1) & mask;
+      }
+      names[slot] = entry.getKey();
+      ids[slot] = entry.getValue();
+    }
+  }
+
+  Integer getResourceId(ResName resName) {
+    for (int slot = slot(resName); names[slot] != null; slot = (slot + 1) & mask) {
+      if (names[slot].equals(resName)) {
+        return ids[slot];
+      }
+    }
+    return null;
+  }
+
+  ResName getResName(int resourceId) {
+    ResName[][] types = namesById[packageIndex(resourceId)];
+    if (types == null) return null;
+    ResName[] entries = types[typeIndex(resourceId)];
+    if (entries == null || entries.length <= entryIndex(resourceId)) return null;
+    return entries[entryIndex(resourceId)];
+  }
+
+  private int slot(ResName resName) {
+    int hash = resName.hashCode();
+    return (hash ^ (hash >>> 16)) & mask;
+  }
+
+  private static int packageIndex(int resourceId) {
+    return resourceId >>> 24;
+  }
+
+  private static int typeIndex(int resourceId) {
+    return (resourceId >>> 16) & 0xff;
+  }
+
+  private static int entryIndex(int resourceId) {
+    return resourceId & 0xffff;
+  }
+}
@@ -0,0 +1,320 @@
+package org.robolectric.res;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary form of the values loaded from a package's {@code values} directories, so they can be
+ * read back without parsing any XML.
+ *
+ * A table is a header, a pool of every string it uses, then the {@link TypedResource}s and plurals, each
+ * keyed by {@link ResName} and qualifiers. Strings are referenced by their index in the pool. Tables are
+ * memory-mapped when read.
+ */
+class ResourceTable {
+  private static final int MAGIC = 0x52455354; // "REST"
+  static final int FORMAT_VERSION = 1;
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final int NULL_STRING = -1;
+
+  private static final byte KIND_STRING = 0;
+  private static final byte KIND_ARRAY = 1;
+  private static final byte KIND_ATTR_DATA = 2;
+  private static final byte KIND_STYLE = 3;
+
+  private static final ResType[] RES_TYPES = ResType.values();
+
+  /**
+   * Write a table of the given values.
+   *
+   * @param data Typed values from the {@code values} directories.
+   * @param pluralsData Plurals from the {@code values} directories.
+   * @param file Where to write the table.
+   * @throws IOException If the table can't be written.
+   * @throws IllegalArgumentException If the values include something a table can't represent.
+   */
+  static void write(ResBunch data, ResBundle<PluralResourceLoader.PluralRules> pluralsData, File file) throws IOException {
+    final StringPool stringPool = new StringPool();
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(body);
+
+    final List<IOException> failures = new ArrayList<>();
+    final int[] count = new int[1];
+    ByteArrayOutputStream valuesBytes = new ByteArrayOutputStream();
+    final DataOutputStream valuesOut = new DataOutputStream(valuesBytes);
+    data.receive(new ResBundle.Visitor<TypedResource>() {
+      @Override public void visit(ResName resName, List<ResBundle.Value<TypedResource>> values) {
+        try {
+          writeResName(valuesOut, stringPool, resName);
+          valuesOut.writeInt(values.size());
+          for (ResBundle.Value<TypedResource> value : values) {
+            valuesOut.writeInt(stringPool.indexOf(unpad(value.getQualifiers())));
+            writeTypedResource(valuesOut, stringPool, value.getValue());
+          }
+          count[0]++;
+        } catch (IOException e) {
+          failures.add(e);
+        }
+      }
+    });
+    out.writeInt(count[0]);
+    valuesOut.flush();
+    valuesBytes.writeTo(out);
+
+    count[0] = 0;
+    ByteArrayOutputStream pluralsBytes = new ByteArrayOutputStream();
+    final DataOutputStream pluralsOut = new DataOutputStream(pluralsBytes);
+    pluralsData.receive(new ResBundle.Visitor<PluralResourceLoader.PluralRules>() {
+      @Override public void visit(ResName resName, List<ResBundle.Value<PluralResourceLoader.PluralRules>> values) {
+        try {
+          writeResName(pluralsOut, stringPool, resName);
+          pluralsOut.writeInt(values.size());
+          for (ResBundle.Value<PluralResourceLoader.PluralRules> value : values) {
+            pluralsOut.writeInt(stringPool.indexOf(unpad(value.getQualifiers())));
+            List<Plural> plurals = value.getValue().plurals;
+            pluralsOut.writeInt(plurals.size());
+            for (Plural plural : plurals) {
+              pluralsOut.writeInt(stringPool.indexOf(plural.quantity));
+              pluralsOut.writeInt(stringPool.indexOf(plural.string));
+            }
+          }
+          count[0]++;
+        } catch (IOException e) {
+          failures.add(e);
+        }
+      }
+    });
+    if (!failures.isEmpty()) {
+      throw failures.get(0);
+    }
+    out.writeInt(count[0]);
+    pluralsOut.flush();
+    pluralsBytes.writeTo(out);
+    out.flush();
+
+    // a temp file of our own, moved into place in one step, so concurrent writers and readers never see half a table
+    Path tempFile = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(), file.getName(), ".tmp");
+    try {
+      try (DataOutputStream fileOut = new DataOutputStream(Files.newOutputStream(tempFile))) {
+        fileOut.writeInt(MAGIC);
+        fileOut.writeInt(FORMAT_VERSION);
+        stringPool.writeTo(fileOut);
+        body.writeTo(fileOut);
+      }
+      try {
+        Files.move(tempFile, file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tempFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+      tempFile = null;
+    } finally {
+      if (tempFile != null) {
+        try {
+          Files.deleteIfExists(tempFile);
+        } catch (IOException ignored) {
+        }
+      }
+    }
+  }
+
+  /**
+   * Read a table into the given bundles.
+   *
+   * @param file The table.
+   * @param data Receives the typed values.
+   * @param pluralsData Receives the plurals.
+   * @throws IOException If the table can't be read or isn't in the current format.
+   */
+  static void read(File file, ResBunch data, ResBundle<PluralResourceLoader.PluralRules> pluralsData) throws IOException {
+    ByteBuffer buffer;
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+         FileChannel channel = randomAccessFile.getChannel()) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+      throw new IOException(file + " isn't a resource table");
+    }
+
+    String[] strings = new String[buffer.getInt()];
+    for (int i = 0; i < strings.length; i++) {
+      byte[] bytes = new byte[buffer.getInt()];
+      buffer.get(bytes);
+      strings[i] = new String(bytes, UTF_8);
+    }
+
+    for (int i = buffer.getInt(); i > 0; i--) {
+      ResName resName = readResName(buffer, strings);
+      for (int j = buffer.getInt(); j > 0; j--) {
+        String qualifiers = string(buffer, strings);
+        data.put(resName, new ResBundle.Value<>(qualifiers, readTypedResource(buffer, strings)));
+      }
+    }
+
+    for (int i = buffer.getInt(); i > 0; i--) {
+      ResName resName = readResName(buffer, strings);
+      for (int j = buffer.getInt(); j > 0; j--) {
+        String qualifiers = string(buffer, strings);
+        PluralResourceLoader.PluralRules pluralRules = new PluralResourceLoader.PluralRules();
+        for (int k = buffer.getInt(); k > 0; k--) {
+          pluralRules.add(new Plural(string(buffer, strings), string(buffer, strings)));
+        }
+        pluralsData.put(resName, new ResBundle.Value<>(qualifiers, pluralRules));
+      }
+    }
+  }
+
+  private static void writeResName(DataOutputStream out, StringPool stringPool, ResName resName) throws IOException {
+    out.writeInt(stringPool.indexOf(resName.packageName));
+    out.writeInt(stringPool.indexOf(resName.type));
+    out.writeInt(stringPool.indexOf(resName.name));
+  }
+
+  private static ResName readResName(ByteBuffer buffer, String[] strings) {
+    return new ResName(string(buffer, strings), string(buffer, strings), string(buffer, strings)).intern();
+  }
+
+  private static void writeTypedResource(DataOutputStream out, StringPool stringPool, TypedResource typedResource) throws IOException {
+    if (typedResource.isFile()) {
+      throw new IllegalArgumentException("can't store " + typedResource);
+    }
+
+    Object data = typedResource.getData();
+    if (data instanceof String) {
+      out.writeByte(KIND_STRING);
+      out.writeByte(typedResource.getResType().ordinal());
+      out.writeInt(stringPool.indexOf((String) data));
+    } else if (data instanceof TypedResource[]) {
+      TypedResource[] items = (TypedResource[]) data;
+      out.writeByte(KIND_ARRAY);
+      out.writeByte(typedResource.getResType().ordinal());
+      out.writeInt(items.length);
+      for (TypedResource item : items) {
+        if (!(item.getData() instanceof String)) {
+          throw new IllegalArgumentException("can't store " + item);
+        }
+        out.writeByte(item.getResType().ordinal());
+        out.writeInt(stringPool.indexOf(item.asString()));
+      }
+    } else if (data instanceof AttrData) {
+      AttrData attrData = (AttrData) data;
+      out.writeByte(KIND_ATTR_DATA);
+      out.writeByte(typedResource.getResType().ordinal());
+      out.writeInt(stringPool.indexOf(attrData.getName()));
+      out.writeInt(stringPool.indexOf(attrData.getFormat()));
+      List<AttrData.Pair> pairs = attrData.getPairs();
+      out.writeInt(pairs == null ? -1 : pairs.size());
+      if (pairs != null) {
+        for (AttrData.Pair pair : pairs) {
+          out.writeInt(stringPool.indexOf(pair.getName()));
+          out.writeInt(stringPool.indexOf(pair.getValue()));
+        }
+      }
+    } else if (data instanceof StyleData) {
+      StyleData styleData = (StyleData) data;
+      out.writeByte(KIND_STYLE);
+      out.writeByte(typedResource.getResType().ordinal());
+      out.writeInt(stringPool.indexOf(styleData.getPackageName()));
+      out.writeInt(stringPool.indexOf(styleData.getName()));
+      out.writeInt(stringPool.indexOf(styleData.getParent()));
+      out.writeInt(styleData.getAttributes().size());
+      for (Attribute attribute : styleData.getAttributes()) {
+        writeResName(out, stringPool, attribute.resName);
+        out.writeInt(stringPool.indexOf(attribute.value));
+        out.writeInt(stringPool.indexOf(attribute.contextPackageName));
+      }
+    } else {
+      throw new IllegalArgumentException("can't store " + typedResource);
+    }
+  }
+
+  private static TypedResource readTypedResource(ByteBuffer buffer, String[] strings) throws IOException {
+    byte kind = buffer.get();
+    ResType resType = RES_TYPES[buffer.get()];
+    switch (kind) {
+      case KIND_STRING:
+        return new TypedResource<>(string(buffer, strings), resType);
+
+      case KIND_ARRAY:
+        TypedResource[] items = new TypedResource[buffer.getInt()];
+        for (int i = 0; i < items.length; i++) {
+          ResType itemResType = RES_TYPES[buffer.get()];
+          items[i] = new TypedResource<>(string(buffer, strings), itemResType);
+        }
+        return new TypedResource<>(items, resType);
+
+      case KIND_ATTR_DATA:
+        String name = string(buffer, strings);
+        String format = string(buffer, strings);
+        int pairCount = buffer.getInt();
+        List<AttrData.Pair> pairs = null;
+        if (pairCount >= 0) {
+          pairs = new ArrayList<>(pairCount);
+          for (int i = 0; i < pairCount; i++) {
+            pairs.add(new AttrData.Pair(string(buffer, strings), string(buffer, strings)));
+          }
+        }
+        return new TypedResource<>(new AttrData(name, format, pairs), resType);
+
+      case KIND_STYLE:
+        StyleData styleData = new StyleData(string(buffer, strings), string(buffer, strings), string(buffer, strings));
+        for (int i = buffer.getInt(); i > 0; i--) {
+          ResName attrName = readResName(buffer, strings);
+          styleData.add(attrName, new Attribute(attrName, string(buffer, strings), string(buffer, strings)).intern());
+        }
+        return new TypedResource<>(styleData, resType);
+
+      default:
+        throw new IOException("unknown value kind " + kind);
+    }
+  }
+
+  private static String string(ByteBuffer buffer, String[] strings) {
+    int index = buffer.getInt();
+    return index == NULL_STRING ? null : strings[index];
+  }
+
+  // Value qualifiers are stored padded with dashes, e.g. "-land-v14-"
+  private static String unpad(String paddedQualifiers) {
+    return paddedQualifiers.substring(1, paddedQualifiers.length() - 1);
+  }
+
+  private static class StringPool {
+    private final Map<String, Integer> indexes = new LinkedHashMap<>();
+
+    int indexOf(String string) {
+      if (string == null) {
+        return NULL_STRING;
+      }
+      Integer index = indexes.get(string);
+      if (index == null) {
+        index = indexes.size();
+        indexes.put(string, index);
+      }
+      return index;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+      out.writeInt(indexes.size());
+      for (String string : indexes.keySet()) {
+        byte[] bytes = string.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package org.robolectric.res;
+
+import org.jetbrains.annotations.NotNull;
+import org.robolectric.util.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A {@link PackageResourceLoader} which reads values from a precompiled {@link ResourceTable} instead of
+ * parsing the {@code values} directories.
+ *
+ * Tables live in a directory shared between runs, named by a digest of the package name and the contents
+ * of every {@code values} file; when there's no table for the current contents, the XML is parsed as usual
+ * and a new table is written.
+ */
+public class ResourceTableLoader extends PackageResourceLoader {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final FsFile.Filter VALUES_DIRS = new FsFile.Filter() {
+    @Override public boolean accept(@NotNull FsFile fsFile) {
+      return fsFile.getName().startsWith("values") && fsFile.isDirectory();
+    }
+  };
+  private static final FsFile.Filter XML_FILES = new FsFile.Filter() {
+    @Override public boolean accept(@NotNull FsFile fsFile) {
+      return fsFile.getName().endsWith(".xml");
+    }
+  };
+  private static final Comparator<FsFile> BY_PATH = new Comparator<FsFile>() {
+    @Override public int compare(FsFile a, FsFile b) {
+      return a.getPath().compareTo(b.getPath());
+    }
+  };
+
+  private final ResourcePath resourcePath;
+  private final File tableDir;
+
+  public ResourceTableLoader(ResourcePath resourcePath, File tableDir) {
+    this(resourcePath, new ResourceExtractor(resourcePath), tableDir);
+  }
+
+  public ResourceTableLoader(ResourcePath resourcePath, ResourceIndex resourceIndex, File tableDir) {
+    super(resourcePath, resourceIndex);
+    this.resourcePath = resourcePath;
+    this.tableDir = tableDir;
+  }
+
+  @Override
+  void loadValues(DocumentLoader documentLoader) throws Exception {
+    File tableFile = new File(tableDir, valuesDigest() + ".table");
+    if (tableFile.isFile()) {
+      try {
+        ResourceTable.read(tableFile, data, pluralsData);
+        Logger.debug("Loaded values for %s from %s", resourcePath.getPackageName(), tableFile);
+        return;
+      } catch (IOException | RuntimeException e) {
+        Logger.error("Couldn't read resource table %s, parsing values instead: %s", tableFile, e);
+        clearValues();
+      }
+    }
+
+    super.loadValues(documentLoader);
+
+    if (!tableDir.isDirectory() && !tableDir.mkdirs()) {
+      Logger.error("Couldn't create resource table directory %s", tableDir);
+      return;
+    }
+    try {
+      ResourceTable.write(data, pluralsData, tableFile);
+    } catch (IOException | IllegalArgumentException e) {
+      Logger.error("Couldn't write resource table %s: %s", tableFile, e);
+    }
+  }
+
+  private void clearValues() {
+    data.clear();
+    pluralsData.clear();
+  }
+
+  private String valuesDigest() throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+
+    digest.update(Integer.toString(ResourceTable.FORMAT_VERSION).getBytes(UTF_8));
+    digest.update(resourcePath.getPackageName().getBytes(UTF_8));
+    FsFile[] valuesDirs = resourcePath.resourceBase.listFiles(VALUES_DIRS);
+    if (valuesDirs != null) {
+      Arrays.sort(valuesDirs, BY_PATH);
+      for (FsFile valuesDir : valuesDirs) {
+        FsFile[] xmlFiles = valuesDir.listFiles(XML_FILES);
+        Arrays.sort(xmlFiles, BY_PATH);
+        for (FsFile xmlFile : xmlFiles) {
+          digest.update((valuesDir.getName() + "/" + xmlFile.getName()).getBytes(UTF_8));
+          digest.update(xmlFile.getBytes());
+        }
+      }
+    }
+
+    StringBuilder hex = new StringBuilder();
+    for (byte b : digest.digest()) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+
+  @Override
+  public String toString() {
+    return "ResourceTableLoader{" +
+        "resourcePath=" + resourcePath +
+        ", tableDir=" + tableDir +
+        '}';
+  }
+}
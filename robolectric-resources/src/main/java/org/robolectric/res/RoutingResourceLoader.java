@@ -102,7 +102,7 @@ public class RoutingResourceLoader implements ResourceLoader {
       super(null);
     }
 
-    @Override void doInitialize() {
+    @Override void loadGroup(String group) {
     }
 
     @Override
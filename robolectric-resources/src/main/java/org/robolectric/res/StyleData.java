@@ -2,6 +2,7 @@ package org.robolectric.res;
 
 import org.robolectric.util.Strings;
 
+import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -30,6 +31,10 @@ public class StyleData implements Style {
     items.put(attrName, attribute);
   }
 
+  Collection<Attribute> getAttributes() {
+    return items.values();
+  }
+
   @Override public Attribute getAttrValue(ResName resName) {
     resName.mustBe("attr");
     Attribute attribute = items.get(resName);
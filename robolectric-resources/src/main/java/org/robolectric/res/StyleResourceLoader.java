@@ -28,8 +28,8 @@ public class StyleResourceLoader extends XpathResourceXmlLoader {
       String attrName = item.getAttrValue("name");
       String value = item.getTextContent();
 
-      ResName attrResName = ResName.qualifyResName(attrName, xmlContext.packageName, "attr");
-      styleData.add(attrResName, new Attribute(attrResName, value, xmlContext.packageName));
+      ResName attrResName = ResName.qualifyResName(attrName, xmlContext.packageName, "attr").intern();
+      styleData.add(attrResName, new Attribute(attrResName, value, xmlContext.packageName).intern());
     }
 
     data.put("style", styleNameWithUnderscores, new TypedResource<>(styleData, ResType.STYLE), xmlContext);
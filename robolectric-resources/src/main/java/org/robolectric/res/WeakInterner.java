@@ -0,0 +1,23 @@
+package org.robolectric.res;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Hands out one shared instance for each group of equal values, without keeping values alive once nothing else
+ * refers to them; so interning names for one resource loader doesn't hold on to them after the loader is gone.
+ */
+class WeakInterner<T> {
+  private final Map<T, WeakReference<T>> interned = new WeakHashMap<>();
+
+  synchronized T intern(T value) {
+    WeakReference<T> ref = interned.get(value);
+    T existing = ref == null ? null : ref.get();
+    if (existing != null) {
+      return existing;
+    }
+    interned.put(value, new WeakReference<>(value));
+    return value;
+  }
+}
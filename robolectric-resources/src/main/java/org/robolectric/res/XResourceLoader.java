@@ -5,42 +5,132 @@ import org.robolectric.res.builder.XmlBlock;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 
 // TODO: Give me a better name
 abstract class XResourceLoader implements ResourceLoader {
+  /**
+   * Whether each group of resources is loaded when it's first asked for, rather than everything being loaded
+   * before the first lookup. Set {@code robolectric.lazyResources} to {@code false} to load everything up front.
+   */
+  static final boolean LAZY = Boolean.parseBoolean(System.getProperty("robolectric.lazyResources", "true"));
+
+  /** Everything in the {@code values} directories. */
+  static final String VALUES = "values";
+  /** Drawable files, as {@link DrawableNode}s. */
+  static final String DRAWABLES = "drawables";
+  /** Files in the {@code raw} directories. */
+  static final String RAW = "raw";
+  /**
+   * Directories of XML files, each loaded on its own. Each name is also the type of the resources its files
+   * define, which may be added to by resources of the same type in the {@code values} directories.
+   */
+  static final Set<String> XML_DIRECTORIES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+      "layout", "menu", "drawable", "anim", "animator", "color", "xml", "transition", "interpolator")));
+
   final ResBunch data = new ResBunch();
   final ResBundle<PluralResourceLoader.PluralRules> pluralsData = new ResBundle<>();
   final ResBundle<String> stringData = new ResBundle<>();
   final ResBundle<DrawableNode> drawableData = new ResBundle<>();
   final ResBundle<PreferenceNode> preferenceData = new ResBundle<>();
-  final ResBundle<XmlBlock> xmlDocuments = new ResBundle<>();
+  /** Parsed XML files, by directory. */
+  final Map<String, ResBundle<XmlBlock>> xmlDocuments = new LinkedHashMap<>();
   final ResBundle<FsFile> rawResources = new ResBundle<>();
   private final ResourceIndex resourceIndex;
-  boolean isInitialized = false;
+  private final Map<String, Group> groups = new LinkedHashMap<>();
+  volatile boolean isInitialized = false;
 
   protected XResourceLoader(ResourceIndex resourceIndex) {
     this.resourceIndex = resourceIndex;
+
+    groups.put(VALUES, new Group(VALUES));
+    for (String directory : XML_DIRECTORIES) {
+      groups.put(directory, new Group(directory));
+      xmlDocuments.put(directory, new ResBundle<XmlBlock>());
+    }
+    groups.put(DRAWABLES, new Group(DRAWABLES));
+    groups.put(RAW, new Group(RAW));
   }
 
-  abstract void doInitialize();
+  /**
+   * Load one group of resources: {@link #VALUES}, {@link #DRAWABLES}, {@link #RAW}, or one of the
+   * {@link #XML_DIRECTORIES}. Called at most once for each group; groups of XML files are only loaded
+   * once values have been.
+   */
+  abstract void loadGroup(String group);
 
+  /**
+   * Load every group of resources.
+   */
   void initialize() {
     if (isInitialized) return;
-    doInitialize();
+    for (Group group : groups.values()) {
+      group.ensureLoaded();
+    }
     isInitialized = true;
+  }
 
-    makeImmutable();
+  /**
+   * Make sure a group of resources is loaded, or with lazy loading turned off, that everything is.
+   */
+  void load(String group) {
+    if (LAZY) {
+      groups.get(group).ensureLoaded();
+    } else {
+      initialize();
+    }
   }
 
-  protected void makeImmutable() {
-    data.makeImmutable();
+  private void makeImmutable(String group) {
+    if (VALUES.equals(group)) {
+      for (String attrType : data.getTypes()) {
+        if (!XML_DIRECTORIES.contains(attrType)) {
+          data.makeImmutable(attrType);
+        }
+      }
+      pluralsData.makeImmutable();
+      stringData.makeImmutable();
+    } else if (DRAWABLES.equals(group)) {
+      drawableData.makeImmutable();
+    } else if (RAW.equals(group)) {
+      rawResources.makeImmutable();
+    } else {
+      data.makeImmutable(group);
+      xmlDocuments.get(group).makeImmutable();
+      if ("xml".equals(group)) {
+        preferenceData.makeImmutable();
+      }
+    }
+  }
 
-    pluralsData.makeImmutable();
-    stringData.makeImmutable();
-    drawableData.makeImmutable();
-    preferenceData.makeImmutable();
-    xmlDocuments.makeImmutable();
-    rawResources.makeImmutable();
+  /**
+   * Append a library's resources in one group to ours.
+   */
+  void mergeLibraryStyle(XResourceLoader from, String group, String packageName) {
+    if (VALUES.equals(group)) {
+      for (String attrType : from.data.getTypes()) {
+        if (!XML_DIRECTORIES.contains(attrType)) {
+          data.mergeLibraryStyle(from.data, attrType, packageName);
+        }
+      }
+      pluralsData.mergeLibraryStyle(from.pluralsData, packageName);
+      stringData.mergeLibraryStyle(from.stringData, packageName);
+    } else if (DRAWABLES.equals(group)) {
+      drawableData.mergeLibraryStyle(from.drawableData, packageName);
+    } else if (RAW.equals(group)) {
+      rawResources.mergeLibraryStyle(from.rawResources, packageName);
+    } else {
+      data.mergeLibraryStyle(from.data, group, packageName);
+      xmlDocuments.get(group).mergeLibraryStyle(from.xmlDocuments.get(group), packageName);
+      if ("xml".equals(group)) {
+        preferenceData.mergeLibraryStyle(from.preferenceData, packageName);
+      }
+    }
   }
 
   @Override
@@ -49,14 +139,17 @@ abstract class XResourceLoader implements ResourceLoader {
   }
 
   public TypedResource getValue(@NotNull ResName resName, String qualifiers) {
-    initialize();
+    load(VALUES);
+    if (XML_DIRECTORIES.contains(resName.type)) {
+      load(resName.type);
+    }
     ResBundle.Value<TypedResource> value = data.getValue(resName, qualifiers);
     return value == null ? null : value.getValue();
   }
 
   @Override
   public Plural getPlural(ResName resName, int quantity, String qualifiers) {
-    initialize();
+    load(VALUES);
     PluralResourceLoader.PluralRules pluralRules = pluralsData.get(resName, qualifiers);
     if (pluralRules == null) return null;
 
@@ -65,18 +158,22 @@ abstract class XResourceLoader implements ResourceLoader {
 
   @Override
   public XmlBlock getXml(ResName resName, String qualifiers) {
-    initialize();
-    return xmlDocuments.get(resName, qualifiers);
+    ResBundle<XmlBlock> documents = xmlDocuments.get(resName.type);
+    if (documents == null) return null;
+
+    load(resName.type);
+    return documents.get(resName, qualifiers);
   }
 
   @Override
   public DrawableNode getDrawableNode(ResName resName, String qualifiers) {
+    load(DRAWABLES);
     return drawableData.get(resName, qualifiers);
   }
 
   @Override
   public InputStream getRawValue(ResName resName) {
-    initialize();
+    load(RAW);
 
     FsFile file = rawResources.get(resName, "");
     try {
@@ -88,7 +185,7 @@ abstract class XResourceLoader implements ResourceLoader {
 
   @Override
   public PreferenceNode getPreferenceNode(ResName resName, String qualifiers) {
-    initialize();
+    load("xml");
 
     return preferenceData.get(resName, qualifiers);
   }
@@ -97,4 +194,39 @@ abstract class XResourceLoader implements ResourceLoader {
   public ResourceIndex getResourceIndex() {
     return resourceIndex;
   }
+
+  /**
+   * A group of resources, loaded once by whichever thread first needs it while any others wait.
+   */
+  private class Group {
+    private final String name;
+    private volatile boolean loaded;
+    private boolean loading;
+
+    Group(String name) {
+      this.name = name;
+    }
+
+    void ensureLoaded() {
+      if (loaded) return;
+      synchronized (this) {
+        if (loaded) return;
+        if (loading) {
+          throw new IllegalStateException("already loading " + name + " for " + XResourceLoader.this);
+        }
+
+        loading = true;
+        try {
+          if (XML_DIRECTORIES.contains(name)) {
+            groups.get(VALUES).ensureLoaded();
+          }
+          loadGroup(name);
+          makeImmutable(name);
+          loaded = true;
+        } finally {
+          loading = false;
+        }
+      }
+    }
+  }
 }
@@ -2,7 +2,6 @@ package org.robolectric.res;
 
 import android.content.res.XmlResourceParser;
 import org.robolectric.res.builder.XmlBlock;
-import org.w3c.dom.Document;
 
 /**
  * Loader for xml property files.
@@ -22,7 +21,12 @@ public class XmlBlockLoader extends XmlLoader {
 
   @Override
   protected void processResourceXml(FsFile xmlFile, XpathResourceXmlLoader.XmlNode xmlNode, XmlContext xmlContext) throws Exception {
-    XmlBlock block = XmlBlock.create(parse(xmlFile), xmlFile.getPath(), xmlContext.packageName);
+    XmlBlock block = XmlBlock.create(xmlFile, xmlContext.packageName);
     resBundle.put(attrType, xmlFile.getBaseName(), block, xmlContext);
   }
+
+  @Override
+  protected boolean needsDocument() {
+    return false;
+  }
 }
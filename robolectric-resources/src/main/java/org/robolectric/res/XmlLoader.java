@@ -21,13 +21,25 @@ public abstract class XmlLoader {
     documentBuilderFactory.setIgnoringElementContentWhitespace(true);
   }
 
-  private DocumentBuilder documentBuilder;
+  // DocumentBuilders aren't thread-safe, and files may be loaded on several threads at once
+  private static final ThreadLocal<DocumentBuilder> documentBuilders = new ThreadLocal<>();
 
-  synchronized public Document parse(FsFile xmlFile) {
+  public Document parse(FsFile xmlFile) {
+    return parseDocument(xmlFile);
+  }
+
+  /**
+   * Parse an XML file into a DOM, for callers which don't load resources with an {@code XmlLoader}.
+   */
+  public static Document parseDocument(FsFile xmlFile) {
     InputStream inputStream = null;
     try {
+      DocumentBuilder documentBuilder = documentBuilders.get();
       if (documentBuilder == null) {
-        documentBuilder = documentBuilderFactory.newDocumentBuilder();
+        synchronized (documentBuilderFactory) {
+          documentBuilder = documentBuilderFactory.newDocumentBuilder();
+        }
+        documentBuilders.set(documentBuilder);
       }
       inputStream = xmlFile.getInputStream();
       return documentBuilder.parse(inputStream);
@@ -48,6 +60,14 @@ public abstract class XmlLoader {
 
   protected abstract void processResourceXml(FsFile xmlFile, XpathResourceXmlLoader.XmlNode xmlNode, XmlContext xmlContext) throws Exception;
 
+  /**
+   * @return False if {@link #processResourceXml} doesn't look at the {@code xmlNode} it's given, so that files
+   *     which no loader needs to look inside aren't parsed at load time.
+   */
+  protected boolean needsDocument() {
+    return true;
+  }
+
   public static class XmlContext {
     public static final Pattern DIR_QUALIFIER_PATTERN = Pattern.compile("^[^-]+(?:-(.*))?$");
 
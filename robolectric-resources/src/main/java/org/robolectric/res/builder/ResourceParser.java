@@ -14,8 +14,6 @@ import org.robolectric.res.ResName;
 import org.robolectric.res.ResourceIndex;
 import org.robolectric.res.XmlBlockLoader;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.xmlpull.v1.XmlPullParserException;
 
@@ -36,7 +34,7 @@ public class ResourceParser {
   };
 
   public static XmlResourceParser from(XmlBlock block, String applicationPackageName, ResourceIndex resourceIndex) {
-    return new XmlResourceParserImpl(block.getDocument(), block.getFilename(), block.getPackageName(),
+    return new XmlResourceParserImpl(block.getNodes(), block.getFilename(), block.getPackageName(),
         applicationPackageName, resourceIndex);
   }
 
@@ -72,8 +70,8 @@ public class ResourceParser {
    * Concrete implementation of the {@link XmlResourceParser}.
    *
    * <p>Clients expects a pull parser while the resource loader
-   * initialise this object with a {@link Document}.
-   * This implementation navigates the dom and emulates a pull
+   * initialise this object with the {@link XmlNodes} of a document.
+   * This implementation navigates the nodes and emulates a pull
    * parser by raising all the opportune events.
    *
    * <p>Note that the original android implementation is based on
@@ -85,14 +83,15 @@ public class ResourceParser {
 
     private static final ResName FAKE_RES_NAME = new ResName("_robolectric_", "attr", "_fake_");
 
-    private final Document document;
+    private final XmlNodes nodes;
     private final String fileName;
     private final String packageName;
     private final String applicationPackageName;
     private final ResourceIndex resourceIndex;
     private final String applicationNamespace;
+    private final int[] attributeNameResources;
 
-    private Node currentNode;
+    private int currentNode = XmlNodes.NONE;
 
     private boolean mStarted = false;
     private boolean mDecNextDepth = false;
@@ -101,12 +100,18 @@ public class ResourceParser {
 
     public XmlResourceParserImpl(Document document, String fileName, String packageName,
         String applicationPackageName, ResourceIndex resourceIndex) {
-      this.document = document;
+      this(XmlNodes.from(document), fileName, packageName, applicationPackageName, resourceIndex);
+    }
+
+    public XmlResourceParserImpl(XmlNodes nodes, String fileName, String packageName,
+        String applicationPackageName, ResourceIndex resourceIndex) {
+      this.nodes = nodes;
       this.fileName = fileName;
       this.packageName = packageName;
       this.applicationPackageName = applicationPackageName;
       this.resourceIndex = resourceIndex;
       applicationNamespace = Attribute.ANDROID_RES_NS_PREFIX + applicationPackageName;
+      attributeNameResources = nodes.getAttributeNameResources(resourceIndex, applicationPackageName);
     }
 
     @Override
@@ -205,10 +210,10 @@ public class ResourceParser {
 
     @Override
     public String getText() {
-      if (currentNode == null) {
+      if (currentNode == XmlNodes.NONE) {
         return "";
       }
-      return currentNode.getTextContent();
+      return nodes.getTextContent(currentNode);
     }
 
     @Override
@@ -227,10 +232,7 @@ public class ResourceParser {
     /*package*/
     public boolean isWhitespace(String text)
         throws XmlPullParserException {
-      if (text == null) {
-        return false;
-      }
-      return text.split("\\s").length == 0;
+      return XmlNodes.isWhitespace(text);
     }
 
     @Override
@@ -261,7 +263,7 @@ public class ResourceParser {
 
     @Override
     public String getNamespace() {
-      String namespace = currentNode != null ? currentNode.getNamespaceURI() : null;
+      String namespace = currentNode != XmlNodes.NONE ? nodes.getNamespaceUri(currentNode) : null;
       if (namespace == null) {
         return "";
       }
@@ -271,46 +273,35 @@ public class ResourceParser {
 
     @Override
     public String getName() {
-      if (currentNode == null) {
+      if (currentNode == XmlNodes.NONE) {
         return "";
       }
-      return currentNode.getNodeName();
+      return nodes.getNodeName(currentNode);
     }
 
-    Node getAttributeAt(int index) {
-      if (currentNode == null) {
-        throw new IndexOutOfBoundsException(String.valueOf(index));
-      }
-      NamedNodeMap map = currentNode.getAttributes();
-      if (index >= map.getLength()) {
+    int getAttributeAt(int index) {
+      if (currentNode == XmlNodes.NONE) {
         throw new IndexOutOfBoundsException(String.valueOf(index));
       }
-      return map.item(index);
+      return nodes.getAttribute(currentNode, index);
     }
 
     String getAttribute(String namespace, String name) {
-      if (currentNode == null) {
+      if (currentNode == XmlNodes.NONE) {
         return null;
       }
 
-      Element element = (Element) currentNode;
-      if (element.hasAttributeNS(namespace, name)) {
-        return element.getAttributeNS(namespace, name);
-      } else if (applicationNamespace.equals(namespace)
-          && element.hasAttributeNS(Attribute.RES_AUTO_NS_URI, name)) {
-        return element.getAttributeNS(Attribute.RES_AUTO_NS_URI, name);
+      int attr = nodes.findAttribute(currentNode, namespace, name);
+      if (attr == XmlNodes.NONE && applicationNamespace.equals(namespace)) {
+        attr = nodes.findAttribute(currentNode, Attribute.RES_AUTO_NS_URI, name);
       }
-
-      return null;
+      return attr == XmlNodes.NONE ? null : nodes.getAttributeValue(attr);
     }
 
     @Override
     public String getAttributeNamespace(int index) {
-      Node attr = getAttributeAt(index);
-      if (attr == null) {
-        return null;
-      }
-      return maybeReplaceNamespace(attr.getNamespaceURI());
+      int attr = getAttributeAt(index);
+      return maybeReplaceNamespace(nodes.getAttributeNamespace(attr));
     }
 
     private String maybeReplaceNamespace(String namespace) {
@@ -324,11 +315,11 @@ public class ResourceParser {
     @Override
     public String getAttributeName(int index) {
       try {
-        Node attr = getAttributeAt(index);
-        String namespace = maybeReplaceNamespace(attr.getNamespaceURI());
+        int attr = getAttributeAt(index);
+        String namespace = maybeReplaceNamespace(nodes.getAttributeNamespace(attr));
         return (Attribute.ANDROID_RES_NS_PREFIX + packageName).equals(namespace) ?
-          attr.getLocalName() :
-          attr.getNodeName();
+          nodes.getAttributeLocalName(attr) :
+          nodes.getAttributeNodeName(attr);
       } catch (IndexOutOfBoundsException ex) {
         return null;
       }
@@ -348,15 +339,15 @@ public class ResourceParser {
 
     @Override
     public int getAttributeCount() {
-      if (currentNode == null) {
+      if (currentNode == XmlNodes.NONE) {
         return -1;
       }
-      return currentNode.getAttributes().getLength();
+      return nodes.getAttributeCount(currentNode);
     }
 
     @Override
     public String getAttributeValue(int index) {
-      return qualify(getAttributeAt(index).getNodeValue());
+      return qualify(nodes.getAttributeValue(getAttributeAt(index)));
     }
 
     private String qualify(String value) {
@@ -467,14 +458,14 @@ public class ResourceParser {
               "PROCESSING_INSTRUCTION");
         }
         case (START_DOCUMENT): {
-          currentNode = document.getDocumentElement();
+          currentNode = 0;
           return START_TAG;
         }
         case (START_TAG): {
-          if (currentNode.hasChildNodes()) {
+          int firstChild = nodes.getFirstChild(currentNode);
+          if (firstChild != XmlNodes.NONE) {
             // The node has children, navigate down
-            return processNextNodeType(
-                currentNode.getFirstChild());
+            return processNextNodeType(firstChild);
           } else {
             // The node has no children
             return END_TAG;
@@ -493,9 +484,9 @@ public class ResourceParser {
 
     }
 
-    /*protected*/ int processNextNodeType(Node node)
+    /*protected*/ int processNextNodeType(int node)
         throws XmlPullParserException {
-      switch (node.getNodeType()) {
+      switch (nodes.getNodeType(node)) {
         case (Node.ATTRIBUTE_NODE): {
           throw new IllegalArgumentException("ATTRIBUTE_NODE");
         }
@@ -531,7 +522,7 @@ public class ResourceParser {
           throw new IllegalArgumentException("DOCUMENT_TYPE_NODE");
         }
         case (Node.TEXT_NODE): {
-          if (isWhitespace(node.getNodeValue())) {
+          if (nodes.isWhitespace(node)) {
             // Skip whitespaces
             return navigateToNextNode(node);
           } else {
@@ -542,7 +533,7 @@ public class ResourceParser {
         default: {
           throw new RuntimeException(
               "Robolectric -> Unknown node type: " +
-                  node.getNodeType() + ".");
+                  nodes.getNodeType(node) + ".");
         }
       }
     }
@@ -563,19 +554,19 @@ public class ResourceParser {
      * @throws XmlPullParserException if the parser fails to
      *                                parse the next node.
      */
-    int navigateToNextNode(Node node)
+    int navigateToNextNode(int node)
         throws XmlPullParserException {
-      Node nextNode = node.getNextSibling();
-      if (nextNode != null) {
+      int nextNode = nodes.getNextSibling(node);
+      if (nextNode != XmlNodes.NONE) {
         // Move to the next siblings
         return processNextNodeType(nextNode);
       } else {
         // Goes back to the parent
-        if (document.getDocumentElement().equals(node)) {
-          currentNode = null;
+        if (node == 0) {
+          currentNode = XmlNodes.NONE;
           return END_DOCUMENT;
         }
-        currentNode = node.getParentNode();
+        currentNode = nodes.getParent(node);
         return END_TAG;
       }
     }
@@ -632,7 +623,13 @@ public class ResourceParser {
 
     @Override
     public int getAttributeNameResource(int index) {
-      return getResourceId(getAttributeName(index), packageName, "attr");
+      int attr = getAttributeAt(index);
+      int resourceId = attributeNameResources[attr];
+      if (XmlNodes.isUnresolved(resourceId)) {
+        resourceId = getResourceId(getAttributeName(index), packageName, "attr");
+        attributeNameResources[attr] = resourceId;
+      }
+      return resourceId;
     }
 
     @Override
@@ -1,22 +1,41 @@
 package org.robolectric.res.builder;
 
+import org.robolectric.res.FsFile;
+import org.robolectric.res.XmlLoader;
 import org.w3c.dom.Document;
 
 /**
  * An XML block is a parsed representation of a resource XML file. Similar in nature
  * to Android's XmlBlock class.
+ *
+ * <p>Blocks created for a file don't parse it until its contents are first needed.
  */
 public class XmlBlock {
-  private final Document document;
+  private final FsFile xmlFile;
   private final String filename;
   private final String packageName;
+  private volatile XmlNodes nodes;
 
   public static XmlBlock create(Document document, String file, String packageName) {
-    return new XmlBlock(document, file, packageName);
+    return new XmlBlock(XmlNodes.from(document), null, file, packageName);
   }
 
-  public Document getDocument() {
-    return document;
+  public static XmlBlock create(FsFile xmlFile, String packageName) {
+    return new XmlBlock(null, xmlFile, xmlFile.getPath(), packageName);
+  }
+
+  public XmlNodes getNodes() {
+    XmlNodes nodes = this.nodes;
+    if (nodes == null) {
+      synchronized (this) {
+        nodes = this.nodes;
+        if (nodes == null) {
+          nodes = XmlNodes.from(XmlLoader.parseDocument(xmlFile));
+          this.nodes = nodes;
+        }
+      }
+    }
+    return nodes;
   }
 
   public String getFilename() {
@@ -27,8 +46,9 @@ public class XmlBlock {
     return packageName;
   }
 
-  private XmlBlock(Document document, String filename, String packageName) {
-    this.document = document;
+  private XmlBlock(XmlNodes nodes, FsFile xmlFile, String filename, String packageName) {
+    this.nodes = nodes;
+    this.xmlFile = xmlFile;
     this.filename = filename;
     this.packageName = packageName;
   }
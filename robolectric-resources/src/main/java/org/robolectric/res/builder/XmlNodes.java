@@ -0,0 +1,283 @@
+package org.robolectric.res.builder;
+
+import org.robolectric.res.ResourceIndex;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A compact copy of a parsed XML resource file, which {@link ResourceParser.XmlResourceParserImpl}
+ * walks instead of a DOM.
+ *
+ * <p>Nodes are numbered in document order starting with the document element at 0, and kept in
+ * parallel arrays; each element's attributes are stored next to each other in another set of arrays.
+ * Node and attribute names are interned, and whether each text node is whitespace is worked out up front.
+ * The copied file never changes; the only state that does is the cache of attribute name resource ids, which
+ * is kept per {@link ResourceIndex}.
+ *
+ * <p>Instances are shared between sandboxes, so everything the parser needs is public.
+ */
+public final class XmlNodes {
+  public static final int NONE = -1;
+  private static final int UNRESOLVED = -1;
+
+  private final short[] nodeTypes;
+  private final int[] parents;
+  private final int[] firstChildren;
+  private final int[] nextSiblings;
+  private final String[] nodeNames;
+  private final String[] namespaces;
+  private final String[] values;
+  private final boolean[] whitespace;
+  private final int[] firstAttributes;
+  private final int[] attributeCounts;
+
+  private final String[] attributeNamespaces;
+  private final String[] attributeLocalNames;
+  private final String[] attributeNodeNames;
+  private final String[] attributeValues;
+
+  // weak, so a resource index isn't kept alive by the files parsed against it
+  private final Map<ResourceIndex, Map<String, int[]>> attributeNameResources = new WeakHashMap<>();
+
+  private int nodeCount;
+  private int attributeCount;
+
+  public static XmlNodes from(Document document) {
+    Element root = document.getDocumentElement();
+    int[] counts = new int[2];
+    count(root, counts);
+    XmlNodes xmlNodes = new XmlNodes(counts[0], counts[1]);
+    xmlNodes.add(root, NONE);
+    return xmlNodes;
+  }
+
+  private XmlNodes(int nodes, int attributes) {
+    nodeTypes = new short[nodes];
+    parents = new int[nodes];
+    firstChildren = new int[nodes];
+    nextSiblings = new int[nodes];
+    nodeNames = new String[nodes];
+    namespaces = new String[nodes];
+    values = new String[nodes];
+    whitespace = new boolean[nodes];
+    firstAttributes = new int[nodes];
+    attributeCounts = new int[nodes];
+
+    attributeNamespaces = new String[attributes];
+    attributeLocalNames = new String[attributes];
+    attributeNodeNames = new String[attributes];
+    attributeValues = new String[attributes];
+  }
+
+  private static void count(Node node, int[] counts) {
+    counts[0]++;
+    if (node.getNodeType() == Node.ELEMENT_NODE) {
+      counts[1] += node.getAttributes().getLength();
+      for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+        count(child, counts);
+      }
+    }
+  }
+
+  private int add(Node node, int parent) {
+    int index = nodeCount++;
+    nodeTypes[index] = node.getNodeType();
+    parents[index] = parent;
+    firstChildren[index] = NONE;
+    nextSiblings[index] = NONE;
+    nodeNames[index] = intern(node.getNodeName());
+    namespaces[index] = intern(node.getNamespaceURI());
+    attributeCounts[index] = -1;
+
+    if (node.getNodeType() == Node.ELEMENT_NODE) {
+      NamedNodeMap attributes = node.getAttributes();
+      firstAttributes[index] = attributeCount;
+      attributeCounts[index] = attributes.getLength();
+      for (int i = 0; i < attributes.getLength(); i++) {
+        Node attribute = attributes.item(i);
+        attributeNamespaces[attributeCount] = intern(attribute.getNamespaceURI());
+        attributeLocalNames[attributeCount] = intern(attribute.getLocalName());
+        attributeNodeNames[attributeCount] = intern(attribute.getNodeName());
+        attributeValues[attributeCount] = attribute.getNodeValue();
+        attributeCount++;
+      }
+
+      int previous = NONE;
+      for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+        int childIndex = add(child, index);
+        if (previous == NONE) {
+          firstChildren[index] = childIndex;
+        } else {
+          nextSiblings[previous] = childIndex;
+        }
+        previous = childIndex;
+      }
+    } else {
+      values[index] = node.getNodeValue();
+      whitespace[index] = node.getNodeType() == Node.TEXT_NODE && isWhitespace(values[index]);
+    }
+    return index;
+  }
+
+  private static String intern(String string) {
+    return string == null ? null : string.intern();
+  }
+
+  public static boolean isWhitespace(String text) {
+    if (text == null) {
+      return false;
+    }
+    return text.split("\\s").length == 0;
+  }
+
+  /**
+   * @return One of the {@link Node} type constants.
+   */
+  public short getNodeType(int node) {
+    return nodeTypes[node];
+  }
+
+  public int getParent(int node) {
+    return parents[node];
+  }
+
+  public int getFirstChild(int node) {
+    return firstChildren[node];
+  }
+
+  public int getNextSibling(int node) {
+    return nextSiblings[node];
+  }
+
+  /**
+   * @return The node's name as the DOM would give it, e.g. {@code "LinearLayout"} or {@code "#text"}.
+   */
+  public String getNodeName(int node) {
+    return nodeNames[node];
+  }
+
+  public String getNamespaceUri(int node) {
+    return namespaces[node];
+  }
+
+  /**
+   * @return Whether the node is a text node containing only whitespace.
+   */
+  public boolean isWhitespace(int node) {
+    return whitespace[node];
+  }
+
+  /**
+   * @return The node's text, including that of its descendants, as {@link Node#getTextContent()} would give it.
+   */
+  public String getTextContent(int node) {
+    if (nodeTypes[node] != Node.ELEMENT_NODE) {
+      return values[node];
+    }
+    StringBuilder text = new StringBuilder();
+    appendTextContent(node, text);
+    return text.toString();
+  }
+
+  private void appendTextContent(int node, StringBuilder text) {
+    for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+      switch (nodeTypes[child]) {
+        case Node.ELEMENT_NODE:
+          appendTextContent(child, text);
+          break;
+        case Node.TEXT_NODE:
+        case Node.CDATA_SECTION_NODE:
+          text.append(values[child]);
+          break;
+        default:
+          break;
+      }
+    }
+  }
+
+  /**
+   * @return The number of attributes on an element, or -1 for other nodes.
+   */
+  public int getAttributeCount(int node) {
+    return attributeCounts[node];
+  }
+
+  /**
+   * @return The index of an element's attribute, for use with the attribute getters.
+   * @throws IndexOutOfBoundsException If the element doesn't have that many attributes.
+   */
+  public int getAttribute(int node, int index) {
+    if (index < 0 || index >= attributeCounts[node]) {
+      throw new IndexOutOfBoundsException(String.valueOf(index));
+    }
+    return firstAttributes[node] + index;
+  }
+
+  /**
+   * Find an attribute as {@link Element#getAttributeNodeNS} would.
+   *
+   * @return The index of the attribute, or {@link #NONE}.
+   */
+  public int findAttribute(int node, String namespace, String localName) {
+    for (int i = 0; i < attributeCounts[node]; i++) {
+      int attribute = firstAttributes[node] + i;
+      String attributeNamespace = attributeNamespaces[attribute];
+      if ((namespace == null ? attributeNamespace == null : namespace.equals(attributeNamespace))
+          && localName.equals(attributeLocalNames[attribute])) {
+        return attribute;
+      }
+    }
+    return NONE;
+  }
+
+  public String getAttributeNamespace(int attribute) {
+    return attributeNamespaces[attribute];
+  }
+
+  public String getAttributeLocalName(int attribute) {
+    return attributeLocalNames[attribute];
+  }
+
+  public String getAttributeNodeName(int attribute) {
+    return attributeNodeNames[attribute];
+  }
+
+  public String getAttributeValue(int attribute) {
+    return attributeValues[attribute];
+  }
+
+  /**
+   * Resource ids of attribute names, resolved as parsers ask for them and shared by every parser of this
+   * file which uses the same resource index.
+   *
+   * @return An array indexed by attribute, holding {@link #isUnresolved unresolved} entries for names
+   *     not yet looked up.
+   */
+  public int[] getAttributeNameResources(ResourceIndex resourceIndex, String applicationPackageName) {
+    synchronized (attributeNameResources) {
+      Map<String, int[]> resourceIdsByPackage = attributeNameResources.get(resourceIndex);
+      if (resourceIdsByPackage == null) {
+        resourceIdsByPackage = new HashMap<>();
+        attributeNameResources.put(resourceIndex, resourceIdsByPackage);
+      }
+      int[] resourceIds = resourceIdsByPackage.get(applicationPackageName);
+      if (resourceIds == null) {
+        resourceIds = new int[attributeValues.length];
+        Arrays.fill(resourceIds, UNRESOLVED);
+        resourceIdsByPackage.put(applicationPackageName, resourceIds);
+      }
+      return resourceIds;
+    }
+  }
+
+  public static boolean isUnresolved(int resourceId) {
+    return resourceId == UNRESOLVED;
+  }
+}
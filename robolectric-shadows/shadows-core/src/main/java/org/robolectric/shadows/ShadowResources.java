@@ -27,23 +27,31 @@ import org.robolectric.res.Attribute;
 import org.robolectric.res.Plural;
 import org.robolectric.res.ResName;
 import org.robolectric.res.ResType;
-import org.robolectric.res.ResourceIndex;
 import org.robolectric.res.ResourceLoader;
 import org.robolectric.res.StringResources;
 import org.robolectric.res.Style;
 import org.robolectric.res.TypedResource;
 import org.robolectric.res.builder.ResourceParser;
 import org.robolectric.util.ReflectionHelpers;
+import org.robolectric.util.Strings;
 import org.robolectric.res.builder.XmlBlock;
 import org.robolectric.util.ReflectionHelpers.ClassParameter;
 
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static org.robolectric.internal.Shadow.directlyOn;
 import static org.robolectric.Shadows.shadowOf;
@@ -61,6 +69,12 @@ public class ShadowResources {
   @RealObject Resources realResources;
   private ResourceLoader resourceLoader;
 
+  private static final int MAX_CACHED_TYPED_ARRAYS = 4096;
+  // Keyed by array identity; styleable arrays are constants, so the same array is passed every time.
+  // Weak on the loader too, so loaders the test runner has let go of can be collected.
+  private static final Map<ResourceLoader, Map<int[], ResName[]>> attrNamesCache = new WeakHashMap<>();
+  private static final ConcurrentMap<TypedArrayKey, TypedArrayData> typedArrayDataCache = new ConcurrentHashMap<>();
+
   @Resetter
   public static void reset() {
     for (Field field : Resources.class.getDeclaredFields()) {
@@ -104,6 +118,50 @@ public class ShadowResources {
   }
 
   private TypedArray attrsToTypedArray(AttributeSet set, int[] attrs, int defStyleAttr, int themeResourceId, int defStyleRes) {
+    ResourceLoader resourceLoader = getResourceLoader();
+    ShadowAssetManager shadowAssetManager = shadowOf(realResources.getAssets());
+
+    if (set == null) {
+      set = new RoboAttributeSet(new ArrayList<Attribute>(), ShadowApplication.getInstance().getResourceLoader());
+    }
+    if (attrs == null) attrs = new int[0];
+
+    Style theme = null;
+    Style overlayedTheme = null;
+    if (themeResourceId != 0) {
+      // Load the style for the theme we represent. E.g. "@style/Theme.Robolectric"
+      ResName themeStyleName = getResName(themeResourceId);
+      theme = ShadowAssetManager.resolveStyle(resourceLoader, null, themeStyleName, shadowAssetManager.getQualifiers());
+      if (theme != null) {
+        overlayedTheme = ShadowAssetManager.overlayTheme(resourceLoader, theme, shadowAssetManager.getOverlayThemeStyles(themeResourceId));
+      }
+    }
+
+    // A defStyleRes naming an attr is looked up in the AttributeSet too, which the cache key doesn't cover
+    boolean cacheable = defStyleRes == 0 || !getResName(defStyleRes).type.equals("attr");
+    ResName[] attrNames = attrNames(attrs);
+    TypedArrayKey key = null;
+    TypedArrayData typedArrayData = null;
+    if (cacheable) {
+      key = new TypedArrayKey(resourceLoader, shadowAssetManager.getQualifiers(), set, attrs, attrNames,
+          defStyleAttr, defStyleRes, overlayedTheme);
+      typedArrayData = typedArrayDataCache.get(key);
+    }
+
+    if (typedArrayData == null) {
+      List<Attribute> attributes = resolveAttributes(set, attrNames, defStyleAttr, defStyleRes, theme, overlayedTheme);
+      typedArrayData = createTypedArrayData(attributes, attrs, attrNames);
+      if (cacheable) {
+        cacheTypedArrayData(key, typedArrayData);
+      }
+    }
+
+    TypedArray typedArray = typedArrayData.createTypedArray(realResources, attrs);
+    shadowOf(typedArray).positionDescription = set.getPositionDescription();
+    return typedArray;
+  }
+
+  private List<Attribute> resolveAttributes(AttributeSet set, ResName[] attrNames, int defStyleAttr, int defStyleRes, Style theme, Style overlayedTheme) {
     /*
      * When determining the final value of a particular attribute, there are four inputs that come into play:
      *
@@ -115,29 +173,20 @@ public class ShadowResources {
     ResourceLoader resourceLoader = getResourceLoader();
     ShadowAssetManager shadowAssetManager = shadowOf(realResources.getAssets());
 
-    if (set == null) {
-      set = new RoboAttributeSet(new ArrayList<Attribute>(), ShadowApplication.getInstance().getResourceLoader());
-    }
     Style defStyleFromAttr = null;
     Style defStyleFromRes = null;
     Style styleAttrStyle = null;
-    Style theme = null;
-
-    List<ShadowAssetManager.OverlayedStyle> overlayedStyles = shadowAssetManager.getOverlayThemeStyles(themeResourceId);
-    if (themeResourceId != 0) {
-      // Load the style for the theme we represent. E.g. "@style/Theme.Robolectric"
-      ResName themeStyleName = getResName(themeResourceId);
-      theme = ShadowAssetManager.resolveStyle(resourceLoader, null, themeStyleName, shadowAssetManager.getQualifiers());
 
+    if (theme != null) {
       if (defStyleAttr != 0) {
         // Load the theme attribute for the default style attributes. E.g., attr/buttonStyle
         ResName defStyleName = getResName(defStyleAttr);
 
         // Load the style for the default style attribute. E.g. "@style/Widget.Robolectric.Button";
-        Attribute defStyleAttribute = getOverlayedThemeValue(defStyleName, theme, overlayedStyles);
+        Attribute defStyleAttribute = overlayedTheme.getAttrValue(defStyleName);
         if (defStyleAttribute != null) {
           while (defStyleAttribute.isStyleReference()) {
-            Attribute other = getOverlayedThemeValue(defStyleAttribute.getStyleReference(), theme, overlayedStyles);
+            Attribute other = overlayedTheme.getAttrValue(defStyleAttribute.getStyleReference());
             if (other == null) {
               throw new RuntimeException("couldn't dereference " + defStyleAttribute);
             }
@@ -156,7 +205,7 @@ public class ShadowResources {
     if (styleAttrResId != 0) {
       ResName styleAttributeResName = getResName(styleAttrResId);
       while (styleAttributeResName.type.equals("attr")) {
-        Attribute attrValue = getOverlayedThemeValue(styleAttributeResName, theme, overlayedStyles);
+        Attribute attrValue = overlayedTheme.getAttrValue(styleAttributeResName);
         if (attrValue.isResourceReference()) {
           styleAttributeResName = attrValue.getResourceReference();
         } else if (attrValue.isStyleReference()) {
@@ -169,10 +218,10 @@ public class ShadowResources {
     if (defStyleRes != 0) {
       ResName resName = getResName(defStyleRes);
       if (resName.type.equals("attr")) {
-        Attribute attributeValue = findAttributeValue(getResName(defStyleRes), set, styleAttrStyle, defStyleFromAttr, defStyleFromAttr, theme, overlayedStyles);
+        Attribute attributeValue = findAttributeValue(getResName(defStyleRes), set, styleAttrStyle, defStyleFromAttr, defStyleFromAttr, overlayedTheme);
         if (attributeValue != null) {
           if (attributeValue.isStyleReference()) {
-            resName = getOverlayedThemeValue(attributeValue.getStyleReference(), theme, overlayedStyles).getResourceReference();
+            resName = overlayedTheme.getAttrValue(attributeValue.getStyleReference()).getResourceReference();
           } else if (attributeValue.isResourceReference()) {
             resName = attributeValue.getResourceReference();
           }
@@ -182,12 +231,10 @@ public class ShadowResources {
     }
 
     List<Attribute> attributes = new ArrayList<>();
-    if (attrs == null) attrs = new int[0];
-    for (int attr : attrs) {
-      ResName attrName = tryResName(attr); // todo probably getResName instead here?
+    for (ResName attrName : attrNames) {
       if (attrName == null) continue;
 
-      Attribute attribute = findAttributeValue(attrName, set, styleAttrStyle, defStyleFromAttr, defStyleFromRes, theme, overlayedStyles);
+      Attribute attribute = findAttributeValue(attrName, set, styleAttrStyle, defStyleFromAttr, defStyleFromRes, overlayedTheme);
       while (attribute != null && attribute.isStyleReference()) {
         ResName otherAttrName = attribute.getStyleReference();
 
@@ -195,7 +242,7 @@ public class ShadowResources {
         // TODO: We need to address the real problem instead, but are putting it off for a day or two -AV, ED 2014-12-03
         if (theme == null) break;
 
-        attribute = getOverlayedThemeValue(otherAttrName, theme, overlayedStyles);
+        attribute = overlayedTheme.getAttrValue(otherAttrName);
         if (attribute != null) {
           attribute = new Attribute(attrName, attribute.value, attribute.contextPackageName);
         }
@@ -205,15 +252,15 @@ public class ShadowResources {
         Attribute.put(attributes, attribute);
       }
     }
-
-    TypedArray typedArray = createTypedArray(attributes, attrs);
-    shadowOf(typedArray).positionDescription = set.getPositionDescription();
-    return typedArray;
+    return attributes;
   }
 
   public TypedArray createTypedArray(List<Attribute> set, int[] attrs) {
+    return createTypedArrayData(set, attrs, findAttrNames(attrs)).createTypedArray(realResources, attrs);
+  }
+
+  private TypedArrayData createTypedArrayData(List<Attribute> set, int[] attrs, ResName[] attrNames) {
     ResourceLoader resourceLoader = getResourceLoader();
-    ResourceIndex resourceIndex = resourceLoader.getResourceIndex();
     String qualifiers = shadowOf(realResources.getAssets()).getQualifiers();
 
     CharSequence[] stringData = new CharSequence[attrs.length];
@@ -224,8 +271,7 @@ public class ShadowResources {
     for (int i = 0; i < attrs.length; i++) {
       int offset = i * ShadowAssetManager.STYLE_NUM_ENTRIES;
 
-      int attr = attrs[i];
-      ResName attrName = resourceIndex.getResName(attr);
+      ResName attrName = attrNames[i];
       if (attrName != null) {
         Attribute attribute = Attribute.find(set, attrName);
         TypedValue typedValue = new TypedValue();
@@ -249,10 +295,48 @@ public class ShadowResources {
 
     indices[0] = nextIndex;
 
-    return ShadowTypedArray.create(realResources, attrs, data, indices, nextIndex, stringData);
+    return new TypedArrayData(data, indices, nextIndex, stringData);
+  }
+
+  private ResName[] attrNames(int[] attrs) {
+    Map<int[], ResName[]> attrNamesByArray;
+    synchronized (attrNamesCache) {
+      attrNamesByArray = attrNamesCache.get(getResourceLoader());
+      if (attrNamesByArray == null) {
+        // weak, so arrays built for a single call don't pile up
+        attrNamesByArray = Collections.synchronizedMap(new WeakHashMap<int[], ResName[]>());
+        attrNamesCache.put(getResourceLoader(), attrNamesByArray);
+      }
+    }
+
+    ResName[] attrNames = attrNamesByArray.get(attrs);
+    if (attrNames == null) {
+      attrNames = findAttrNames(attrs);
+      attrNamesByArray.put(attrs, attrNames);
+    }
+    return attrNames;
   }
 
-  private Attribute findAttributeValue(ResName attrName, AttributeSet attributeSet, Style styleAttrStyle, Style defStyleFromAttr, Style defStyleFromRes, Style theme, List<ShadowAssetManager.OverlayedStyle> overlayedStyles) {
+  private ResName[] findAttrNames(int[] attrs) {
+    ResName[] attrNames = new ResName[attrs.length];
+    for (int i = 0; i < attrs.length; i++) {
+      attrNames[i] = tryResName(attrs[i]); // todo probably getResName instead here?
+    }
+    return attrNames;
+  }
+
+  private static void cacheTypedArrayData(TypedArrayKey key, TypedArrayData typedArrayData) {
+    typedArrayDataCache.put(key, typedArrayData);
+    if (typedArrayDataCache.size() > MAX_CACHED_TYPED_ARRAYS) {
+      Iterator<TypedArrayKey> keys = typedArrayDataCache.keySet().iterator();
+      while (typedArrayDataCache.size() > MAX_CACHED_TYPED_ARRAYS && keys.hasNext()) {
+        keys.next();
+        keys.remove();
+      }
+    }
+  }
+
+  private Attribute findAttributeValue(ResName attrName, AttributeSet attributeSet, Style styleAttrStyle, Style defStyleFromAttr, Style defStyleFromRes, Style overlayedTheme) {
     String attrValue = attributeSet.getAttributeValue(attrName.getNamespaceUri(), attrName.name);
     if (attrValue != null) {
       return new Attribute(attrName, attrValue, "fixme!!!");
@@ -281,8 +365,8 @@ public class ShadowResources {
     }
 
     // else if attr in theme, use its value
-    if (theme != null) {
-      return getOverlayedThemeValue(attrName, theme, overlayedStyles);
+    if (overlayedTheme != null) {
+      return overlayedTheme.getAttrValue(attrName);
     }
 
     return null;
@@ -543,6 +627,92 @@ public class ShadowResources {
     return drawable;
   }
 
+  /**
+   * Everything {@link #attrsToTypedArray} reads when resolving attributes, apart from the resources themselves.
+   */
+  private static class TypedArrayKey {
+    // Weak, so typedArrayDataCache doesn't keep old loaders alive; a key with a live loader never matches a collected one.
+    private final WeakReference<ResourceLoader> resourceLoader;
+    private final String qualifiers;
+    private final int[] attrs;
+    private final String[] setValues;
+    private final int styleAttribute;
+    private final int defStyleAttr;
+    private final int defStyleRes;
+    private final Style theme;
+    private final int hashCode;
+
+    TypedArrayKey(ResourceLoader resourceLoader, String qualifiers, AttributeSet set, int[] attrs, ResName[] attrNames,
+        int defStyleAttr, int defStyleRes, Style theme) {
+      this.resourceLoader = new WeakReference<>(resourceLoader);
+      this.qualifiers = Strings.nullToEmpty(qualifiers);
+      this.attrs = attrs;
+      this.setValues = new String[attrNames.length];
+      for (int i = 0; i < attrNames.length; i++) {
+        ResName attrName = attrNames[i];
+        if (attrName != null) {
+          setValues[i] = set.getAttributeValue(attrName.getNamespaceUri(), attrName.name);
+        }
+      }
+      this.styleAttribute = set.getStyleAttribute();
+      this.defStyleAttr = defStyleAttr;
+      this.defStyleRes = defStyleRes;
+      this.theme = theme;
+
+      int hashCode = System.identityHashCode(resourceLoader);
+      hashCode = 31 * hashCode + this.qualifiers.hashCode();
+      hashCode = 31 * hashCode + System.identityHashCode(attrs);
+      hashCode = 31 * hashCode + Arrays.hashCode(setValues);
+      hashCode = 31 * hashCode + styleAttribute;
+      hashCode = 31 * hashCode + defStyleAttr;
+      hashCode = 31 * hashCode + defStyleRes;
+      hashCode = 31 * hashCode + (theme != null ? theme.hashCode() : 0);
+      this.hashCode = hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof TypedArrayKey)) {
+        return false;
+      }
+      TypedArrayKey other = (TypedArrayKey) obj;
+      return resourceLoader.get() == other.resourceLoader.get()
+          && attrs == other.attrs
+          && styleAttribute == other.styleAttribute
+          && defStyleAttr == other.defStyleAttr
+          && defStyleRes == other.defStyleRes
+          && qualifiers.equals(other.qualifiers)
+          && Arrays.equals(setValues, other.setValues)
+          && (theme == null ? other.theme == null : theme.equals(other.theme));
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  /**
+   * The converted contents of a {@link TypedArray}, which is copied into each new array so callers can't change it.
+   */
+  private static class TypedArrayData {
+    private final int[] data;
+    private final int[] indices;
+    private final int length;
+    private final CharSequence[] stringData;
+
+    TypedArrayData(int[] data, int[] indices, int length, CharSequence[] stringData) {
+      this.data = data;
+      this.indices = indices;
+      this.length = length;
+      this.stringData = stringData;
+    }
+
+    TypedArray createTypedArray(Resources realResources, int[] attrs) {
+      return ShadowTypedArray.create(realResources, attrs, data.clone(), indices.clone(), length, stringData.clone());
+    }
+  }
+
   @Implements(Resources.NotFoundException.class)
   public static class ShadowNotFoundException {
     @RealObject Resources.NotFoundException realObject;
@@ -0,0 +1,20 @@
+package org.robolectric.internal;
+
+import org.robolectric.internal.bytecode.ShadowConfig;
+
+import java.util.Map;
+
+/**
+ * Implemented by shadow providers which can also list the classes they shadow, so shadows can be found without
+ * loading classes to look for them. Providers that don't implement it are still used; their shadows are just
+ * found by naming convention.
+ */
+public interface IndexedShadowProvider extends ShadowProvider {
+
+  /**
+   * Map of the classes shadowed by this package to their shadows.
+   *
+   * @return  Map of fully-qualified binary class names to their shadow configuration.
+   */
+  Map<String, ShadowConfig> getShadowMap();
+}
@@ -6,7 +6,7 @@ public class ShadowConfig {
   public final boolean inheritImplementationMethods;
   public final boolean looseSignatures;
 
-  ShadowConfig(String shadowClassName, boolean callThroughByDefault, boolean inheritImplementationMethods, boolean looseSignatures) {
+  public ShadowConfig(String shadowClassName, boolean callThroughByDefault, boolean inheritImplementationMethods, boolean looseSignatures) {
     this.callThroughByDefault = callThroughByDefault;
     this.shadowClassName = shadowClassName;
     this.inheritImplementationMethods = inheritImplementationMethods;
@@ -17,16 +17,19 @@ import org.junit.runners.model.InitializationError;
 import org.junit.runners.model.Statement;
 import org.junit.runners.model.TestClass;
 import org.robolectric.annotation.*;
+import org.robolectric.internal.AppResourceLoaderRegistry;
 import org.robolectric.internal.InstrumentingClassLoaderFactory;
 import org.robolectric.internal.bytecode.*;
 import org.robolectric.internal.dependency.CachedDependencyResolver;
 import org.robolectric.internal.dependency.DependencyResolver;
 import org.robolectric.internal.dependency.LocalDependencyResolver;
 import org.robolectric.internal.dependency.MavenDependencyResolver;
+import org.robolectric.internal.ParallelScheduler;
 import org.robolectric.internal.ParallelUniverse;
 import org.robolectric.internal.ParallelUniverseInterface;
 import org.robolectric.internal.SdkConfig;
 import org.robolectric.internal.SdkEnvironment;
+import org.robolectric.internal.ShadowProvider;
 import org.robolectric.manifest.AndroidManifest;
 import org.robolectric.res.Fs;
 import org.robolectric.res.FsFile;
@@ -34,10 +37,10 @@ import org.robolectric.res.OverlayResourceLoader;
 import org.robolectric.res.PackageResourceLoader;
 import org.robolectric.res.ResourceLoader;
 import org.robolectric.res.ResourcePath;
+import org.robolectric.res.ResourceTableLoader;
 import org.robolectric.res.RoutingResourceLoader;
 import org.robolectric.util.Logger;
 import org.robolectric.util.ReflectionHelpers;
-import org.robolectric.util.Pair;
 
 import java.io.File;
 import java.io.IOException;
@@ -53,19 +56,26 @@ import java.util.*;
  */
 public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
   private static final String CONFIG_PROPERTIES = "robolectric.properties";
+  private static final String PARALLEL_THREADS = "robolectric.parallelThreads";
   private static final Config DEFAULT_CONFIG = new Config.Implementation(defaultsFor(Config.class));
-  private static final Map<Pair<AndroidManifest, SdkConfig>, ResourceLoader> resourceLoadersByManifestAndConfig = new HashMap<>();
   private static final Map<ManifestIdentifier, AndroidManifest> appManifestsByFile = new HashMap<>();
   private static ShadowMap mainShadowMap;
   private InstrumentingClassLoaderFactory instrumentingClassLoaderFactory;
-  private TestLifecycle<Application> testLifecycle;
+  private final ThreadLocal<TestLifecycle<Application>> testLifecycle = new ThreadLocal<>();
+  private final int parallelThreads = Integer.getInteger(PARALLEL_THREADS, 1);
+  private final Class<?> appResourceLoaderFactoryType = findAppResourceLoaderFactoryType(getClass());
   private DependencyResolver dependencyResolver;
+  // merged configs of the test class and the class declaring each test method, before any method's @Config
+  private final Map<Class<?>, Config> classConfigs = new HashMap<>();
+  private Config globalConfig;
+  private boolean globalConfigLoaded;
+  private final ConfigStats configStats = new ConfigStats();
 
   static {
     new SecureRandom(); // this starts up the Poller SunPKCS11-Darwin thread early, outside of any Robolectric classloader
   }
 
-  private final HashSet<Class<?>> loadedTestClasses = new HashSet<>();
+  private final Set<Class<?>> loadedTestClasses = Collections.synchronizedSet(new HashSet<Class<?>>());
 
   /**
    * Creates a runner to run {@code testClass}. Looks in your working directory for your AndroidManifest.xml file
@@ -76,19 +86,22 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
    */
   public RobolectricTestRunner(final Class<?> testClass) throws InitializationError {
     super(testClass);
+    if (parallelThreads > 1) {
+      setScheduler(new ParallelScheduler(parallelThreads));
+    }
   }
 
   @SuppressWarnings("unchecked")
   private void assureTestLifecycle(SdkEnvironment sdkEnvironment) {
     try {
       ClassLoader robolectricClassLoader = sdkEnvironment.getRobolectricClassLoader();
-      testLifecycle = (TestLifecycle) robolectricClassLoader.loadClass(getTestLifecycleClass().getName()).newInstance();
+      testLifecycle.set((TestLifecycle) robolectricClassLoader.loadClass(getTestLifecycleClass().getName()).newInstance());
     } catch (InstantiationException | IllegalAccessException | ClassNotFoundException e) {
       throw new RuntimeException(e);
     }
   }
 
-  protected DependencyResolver getJarResolver() {
+  protected synchronized DependencyResolver getJarResolver() {
     if (dependencyResolver == null) {
       if (Boolean.getBoolean("robolectric.offline")) {
         String dependencyDir = System.getProperty("robolectric.dependency.dir", ".");
@@ -126,7 +139,22 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
   }
 
   public InstrumentationConfiguration createClassLoaderConfig() {
-    return InstrumentationConfiguration.newBuilder().build();
+    InstrumentationConfiguration.Builder builder = InstrumentationConfiguration.newBuilder();
+    // with minimal instrumentation, only calls to shadowed classes go through the class handler
+    if (builder.usesMinimalInstrumentation()) {
+      for (String className : getConfiguredShadowedClassNames()) {
+        builder.addShadowedClass(className);
+      }
+    }
+    return builder.build();
+  }
+
+  private Set<String> getConfiguredShadowedClassNames() {
+    ShadowMap.Builder builder = new ShadowMap.Builder();
+    for (FrameworkMethod method : getChildren()) {
+      builder.addShadowClasses(getConfig(method.getMethod()).shadows());
+    }
+    return builder.build().getShadowedClassNames();
   }
 
   protected Class<? extends TestLifecycle> getTestLifecycleClass() {
@@ -136,7 +164,7 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
   public static void injectClassHandler(ClassLoader robolectricClassLoader, ClassHandler classHandler) {
     String className = RobolectricInternals.class.getName();
     Class<?> robolectricInternalsClass = ReflectionHelpers.loadClass(robolectricClassLoader, className);
-    ReflectionHelpers.setStaticField(robolectricInternalsClass, "classHandler", classHandler);
+    ReflectionHelpers.callStaticMethod(robolectricInternalsClass, "setClassHandler", ReflectionHelpers.ClassParameter.from(ClassHandler.class, classHandler));
   }
 
   @Override
@@ -147,7 +175,11 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
       public void evaluate() throws Throwable {
         try {
           statement.evaluate();
-          for (Class<?> testClass : loadedTestClasses) {
+          List<Class<?>> testClasses;
+          synchronized (loadedTestClasses) {
+            testClasses = new ArrayList<>(loadedTestClasses);
+          }
+          for (Class<?> testClass : testClasses) {
             invokeAfterClass(testClass);
           }
         } finally {
@@ -178,10 +210,7 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
       eachNotifier.fireTestStarted();
       try {
         AndroidManifest appManifest = getAppManifest(config);
-        if (instrumentingClassLoaderFactory == null) {
-          instrumentingClassLoaderFactory = new InstrumentingClassLoaderFactory(createClassLoaderConfig(), getJarResolver());
-        }
-        SdkEnvironment sdkEnvironment = instrumentingClassLoaderFactory.getSdkEnvironment(new SdkConfig(pickSdkVersion(config, appManifest)));
+        SdkEnvironment sdkEnvironment = getInstrumentingClassLoaderFactory().getSdkEnvironment(new SdkConfig(pickSdkVersion(config, appManifest)));
         methodBlock(method, config, appManifest, sdkEnvironment).evaluate();
       } catch (AssumptionViolatedException e) {
         eachNotifier.addFailedAssumption(e);
@@ -193,6 +222,14 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
     }
   }
 
+  private synchronized InstrumentingClassLoaderFactory getInstrumentingClassLoaderFactory() {
+    if (instrumentingClassLoaderFactory == null) {
+      // with more than one thread, each thread gets its own sandbox so tests can't see each other's static state
+      instrumentingClassLoaderFactory = new InstrumentingClassLoaderFactory(createClassLoaderConfig(), getJarResolver(), parallelThreads > 1);
+    }
+    return instrumentingClassLoaderFactory;
+  }
+
   protected boolean shouldIgnore(FrameworkMethod method, Config config) {
     return method.getAnnotation(Ignore.class) != null;
   }
@@ -232,7 +269,7 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
 
           ResourceLoader systemResourceLoader = sdkEnvironment.getSystemResourceLoader(getJarResolver());
           setUpApplicationState(bootstrappedMethod, parallelUniverseInterface, systemResourceLoader, appManifest, config);
-          testLifecycle.beforeTest(bootstrappedMethod);
+          testLifecycle.get().beforeTest(bootstrappedMethod);
         } catch (Exception e) {
           e.printStackTrace();
           throw new RuntimeException(e);
@@ -251,6 +288,9 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
               internalAfterTest(bootstrappedMethod);
             } finally {
               parallelUniverseInterface.resetStaticState(config); // afterward too, so stuff doesn't hold on to classes?
+              if (parallelThreads > 1) {
+                testLifecycle.remove(); // pool threads outlive the runner
+              }
               // todo: is this really needed?
               Thread.currentThread().setContextClassLoader(RobolectricTestRunner.class.getClassLoader());
             }
@@ -261,8 +301,7 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
   }
 
   private void invokeBeforeClass(final Class clazz) throws Throwable {
-    if (!loadedTestClasses.contains(clazz)) {
-      loadedTestClasses.add(clazz);
+    if (loadedTestClasses.add(clazz)) {
 
       final TestClass testClass = new TestClass(clazz);
       final List<FrameworkMethod> befores = testClass.getAnnotatedMethods(BeforeClass.class);
@@ -344,15 +383,62 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
     return Fs.currentDirectory();
   }
 
+  /**
+   * Merges the {@link Config} for a test method from the defaults, {@code robolectric.properties}, and the
+   * annotations on the class declaring the method, the test class and its superclasses, and the method itself.
+   *
+   * Everything but the method's own annotation is merged once per declaring class and reused for its other methods.
+   *
+   * @param method The test method.
+   * @return The merged configuration.
+   */
   public Config getConfig(Method method) {
+    Config config = getClassConfig(method.getDeclaringClass());
+
+    Config methodConfig = method.getAnnotation(Config.class);
+    if (methodConfig != null) {
+      config = new Config.Implementation(config, methodConfig);
+    }
+
+    return config;
+  }
+
+  /**
+   * @return How often merged class configs were reused.
+   */
+  public ConfigStats getConfigStats() {
+    synchronized (classConfigs) {
+      return configStats.copy();
+    }
+  }
+
+  private Config getClassConfig(Class<?> methodClass) {
+    synchronized (classConfigs) {
+      Config config = classConfigs.get(methodClass);
+      if (config != null) {
+        configStats.hits++;
+        return config;
+      }
+
+      configStats.misses++;
+      config = buildClassConfig(methodClass);
+      classConfigs.put(methodClass, config);
+      return config;
+    }
+  }
+
+  private Config buildClassConfig(Class<?> methodClass) {
     Config config = DEFAULT_CONFIG;
 
-    Config globalConfig = Config.Implementation.fromProperties(getConfigProperties());
+    if (!globalConfigLoaded) {
+      globalConfig = Config.Implementation.fromProperties(getConfigProperties());
+      globalConfigLoaded = true;
+    }
     if (globalConfig != null) {
       config = new Config.Implementation(config, globalConfig);
     }
 
-    Config methodClassConfig = method.getDeclaringClass().getAnnotation(Config.class);
+    Config methodClassConfig = methodClass.getAnnotation(Config.class);
     if (methodClassConfig != null) {
       config = new Config.Implementation(config, methodClassConfig);
     }
@@ -372,11 +458,6 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
       }
     }
 
-    Config methodConfig = method.getAnnotation(Config.class);
-    if (methodConfig != null) {
-      config = new Config.Implementation(config, methodConfig);
-    }
-
     return config;
   }
 
@@ -399,6 +480,7 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
       Class<?>[] shadows = config.shadows();
       if (shadows.length > 0) {
         shadowMap = shadowMap.newBuilder().addShadowClasses(shadows).build();
+        checkShadowsAreCalled(sdkEnvironment, new ShadowMap.Builder().addShadowClasses(shadows).build());
       }
     }
 
@@ -406,19 +488,34 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
     injectClassHandler(sdkEnvironment.getRobolectricClassLoader(), classHandler);
   }
 
+  private void checkShadowsAreCalled(SdkEnvironment sdkEnvironment, ShadowMap configuredShadows) {
+    ClassLoader robolectricClassLoader = sdkEnvironment.getRobolectricClassLoader();
+    if (!(robolectricClassLoader instanceof InstrumentingClassLoader)) {
+      return;
+    }
+    for (String className : configuredShadows.getShadowedClassNames()) {
+      if (!((InstrumentingClassLoader) robolectricClassLoader).mayBeShadowed(className)) {
+        throw new IllegalStateException("The shadow configured for " + className + " won't be called with minimal "
+            + "instrumentation. Add it with InstrumentationConfiguration.Builder.addShadowedClass() in "
+            + "createClassLoaderConfig().");
+      }
+    }
+  }
+
   private ClassHandler getClassHandler(SdkEnvironment sdkEnvironment, ShadowMap shadowMap) {
     ClassHandler classHandler;
     synchronized (sdkEnvironment) {
       classHandler = sdkEnvironment.classHandlersByShadowMap.get(shadowMap);
       if (classHandler == null) {
         classHandler = createClassHandler(shadowMap, sdkEnvironment.getSdkConfig());
+        sdkEnvironment.classHandlersByShadowMap.put(shadowMap, classHandler);
       }
     }
     return classHandler;
   }
 
   protected void setUpApplicationState(Method method, ParallelUniverseInterface parallelUniverseInterface, ResourceLoader systemResourceLoader, AndroidManifest appManifest, Config config) {
-    parallelUniverseInterface.setUpApplicationState(method, testLifecycle, systemResourceLoader, appManifest, config);
+    parallelUniverseInterface.setUpApplicationState(method, testLifecycle.get(), systemResourceLoader, appManifest, config);
   }
 
   protected int pickSdkVersion(Config config, AndroidManifest manifest) {
@@ -447,16 +544,16 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
   }
 
   public void internalAfterTest(final Method method) {
-    testLifecycle.afterTest(method);
+    testLifecycle.get().afterTest(method);
   }
 
   private void afterClass() {
-    testLifecycle = null;
+    testLifecycle.remove();
   }
 
   @TestOnly
   boolean allStateIsCleared() {
-    return testLifecycle == null;
+    return testLifecycle.get() == null;
   }
 
   @Override
@@ -464,14 +561,29 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
     throw new UnsupportedOperationException("this should always be invoked on the HelperTestRunner!");
   }
 
-  public final ResourceLoader getAppResourceLoader(SdkConfig sdkConfig, ResourceLoader systemResourceLoader, final AndroidManifest appManifest) {
-    Pair<AndroidManifest, SdkConfig> androidManifestSdkConfigPair = new Pair<>(appManifest, sdkConfig);
-    ResourceLoader resourceLoader = resourceLoadersByManifestAndConfig.get(androidManifestSdkConfigPair);
-    if (resourceLoader == null) {
-      resourceLoader = createAppResourceLoader(systemResourceLoader, appManifest);
-      resourceLoadersByManifestAndConfig.put(androidManifestSdkConfigPair, resourceLoader);
+  public final ResourceLoader getAppResourceLoader(SdkConfig sdkConfig, final ResourceLoader systemResourceLoader, final AndroidManifest appManifest) {
+    return AppResourceLoaderRegistry.getInstance().getResourceLoader(appManifest, sdkConfig, appResourceLoaderFactoryType,
+        new AppResourceLoaderRegistry.Factory() {
+          @Override public ResourceLoader create() {
+            return createAppResourceLoader(systemResourceLoader, appManifest);
+          }
+        });
+  }
+
+  /**
+   * Runners which create resource loaders differently mustn't share them with other runners.
+   *
+   * @return The most derived class which overrides how resource loaders are created.
+   */
+  private static Class<?> findAppResourceLoaderFactoryType(Class<?> runnerClass) {
+    for (Class<?> type = runnerClass; type != RobolectricTestRunner.class; type = type.getSuperclass()) {
+      for (Method method : type.getDeclaredMethods()) {
+        if (method.getName().equals("createAppResourceLoader") || method.getName().equals("createResourceLoader")) {
+          return type;
+        }
+      }
     }
-    return resourceLoader;
+    return RobolectricTestRunner.class;
   }
 
   protected ResourceLoader createAppResourceLoader(ResourceLoader systemResourceLoader, AndroidManifest appManifest) {
@@ -488,13 +600,19 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
   }
 
   public PackageResourceLoader createResourceLoader(ResourcePath resourcePath) {
+    File resourceTableDir = SdkEnvironment.getResourceTableDir();
+    if (resourceTableDir != null) {
+      return new ResourceTableLoader(resourcePath, resourceTableDir);
+    }
     return new PackageResourceLoader(resourcePath);
   }
 
   protected ShadowMap createShadowMap() {
     synchronized (RobolectricTestRunner.class) {
       if (mainShadowMap != null) return mainShadowMap;
-      mainShadowMap = new ShadowMap.Builder().build();
+      mainShadowMap = new ShadowMap.Builder()
+          .addShadowProviders(ServiceLoader.load(ShadowProvider.class))
+          .build();
       return mainShadowMap;
     }
   }
@@ -506,7 +624,7 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
 
     @Override protected Object createTest() throws Exception {
       Object test = super.createTest();
-      testLifecycle.prepareTest(test);
+      testLifecycle.get().prepareTest(test);
       return test;
     }
 
@@ -519,6 +637,35 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
     }
   }
 
+  /**
+   * How often the merged configuration of a test class was reused for its test methods.
+   */
+  public static class ConfigStats {
+    private int hits;
+    private int misses;
+
+    /** @return How many times a merged class config was reused. */
+    public int getHits() {
+      return hits;
+    }
+
+    /** @return How many class configs were merged. */
+    public int getMisses() {
+      return misses;
+    }
+
+    private ConfigStats copy() {
+      ConfigStats copy = new ConfigStats();
+      copy.hits = hits;
+      copy.misses = misses;
+      return copy;
+    }
+
+    @Override public String toString() {
+      return "hits=" + hits + ", misses=" + misses;
+    }
+  }
+
   private static class ManifestIdentifier {
     private final FsFile manifestFile;
     private final FsFile resDir;
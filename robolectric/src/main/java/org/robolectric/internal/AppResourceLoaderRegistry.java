@@ -0,0 +1,309 @@
+package org.robolectric.internal;
+
+import org.robolectric.manifest.AndroidManifest;
+import org.robolectric.res.FsFile;
+import org.robolectric.res.ResourceLoader;
+import org.robolectric.res.ResourcePath;
+import org.robolectric.util.Logger;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.nio.charset.Charset;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Application resource loaders, shared by every test runner in the process so tests that use the same resources
+ * reuse the same loaded loader.
+ *
+ * Loaders are keyed by a digest of the application's resources: the package names and R classes, and the name,
+ * size and modification time of every file in the resource and asset directories of the app and its libraries.
+ * The most recently used are kept, up to {@code robolectric.appResourceLoaderCacheSize} of them, and only softly
+ * referenced, so they can be collected when memory runs low. Loaders are created outside the registry's lock, so
+ * runners only wait for each other when they need a loader for the same resources.
+ */
+public class AppResourceLoaderRegistry {
+  private static final String CACHE_SIZE = "robolectric.appResourceLoaderCacheSize";
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final Comparator<FsFile> BY_NAME = new Comparator<FsFile>() {
+    @Override public int compare(FsFile a, FsFile b) {
+      return a.getName().compareTo(b.getName());
+    }
+  };
+
+  private static final AppResourceLoaderRegistry INSTANCE = new AppResourceLoaderRegistry(Integer.getInteger(CACHE_SIZE, 8));
+
+  private final int maxSize;
+  private final Map<Key, SoftReference<ResourceLoader>> loaders;
+  // loaders being created, so other runners wanting the same one wait for it rather than create another
+  private final Map<Key, FutureTask<ResourceLoader>> pendingLoaders = new HashMap<>();
+  // each resource directory is only looked through once
+  private final Map<ResourcePath, String> digests = new HashMap<>();
+  private final Stats stats = new Stats();
+
+  public static AppResourceLoaderRegistry getInstance() {
+    return INSTANCE;
+  }
+
+  AppResourceLoaderRegistry(final int maxSize) {
+    this.maxSize = maxSize;
+    this.loaders = new LinkedHashMap<Key, SoftReference<ResourceLoader>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, SoftReference<ResourceLoader>> eldest) {
+        if (size() > AppResourceLoaderRegistry.this.maxSize) {
+          stats.evictions++;
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  public interface Factory {
+    ResourceLoader create();
+  }
+
+  /**
+   * @param appManifest The application, whose resources are used to find a loader.
+   * @param sdkConfig The SDK the loader is for.
+   * @param factoryType The class which creates the loader, since subclasses may create them differently.
+   * @param factory Creates a loader when there isn't one for these resources.
+   * @return The loader for these resources.
+   */
+  public ResourceLoader getResourceLoader(AndroidManifest appManifest, SdkConfig sdkConfig, Class<?> factoryType, final Factory factory) {
+    Key key = new Key(getDigest(appManifest), sdkConfig, factoryType);
+    FutureTask<ResourceLoader> creation;
+    boolean creating = false;
+    synchronized (loaders) {
+      SoftReference<ResourceLoader> reference = loaders.get(key);
+      ResourceLoader resourceLoader = reference == null ? null : reference.get();
+      if (resourceLoader != null) {
+        stats.hits++;
+        return resourceLoader;
+      }
+
+      creation = pendingLoaders.get(key);
+      if (creation != null) {
+        stats.hits++;
+      } else {
+        if (reference != null) {
+          stats.collected++;
+        }
+        stats.misses++;
+        creation = new FutureTask<>(new Callable<ResourceLoader>() {
+          @Override
+          public ResourceLoader call() throws Exception {
+            return factory.create();
+          }
+        });
+        pendingLoaders.put(key, creation);
+        creating = true;
+      }
+    }
+
+    if (!creating) {
+      return await(creation);
+    }
+
+    creation.run();
+    ResourceLoader resourceLoader = null;
+    try {
+      resourceLoader = await(creation);
+    } finally {
+      synchronized (loaders) {
+        pendingLoaders.remove(key);
+        if (resourceLoader != null) {
+          loaders.put(key, new SoftReference<>(resourceLoader));
+          Logger.debug("Created resource loader for %s (%s)", appManifest.getPackageName(), stats);
+        }
+      }
+    }
+    return resourceLoader;
+  }
+
+  public Stats getStats() {
+    synchronized (loaders) {
+      return stats.copy();
+    }
+  }
+
+  private static ResourceLoader await(FutureTask<ResourceLoader> creation) {
+    try {
+      return creation.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new RuntimeException(cause);
+    }
+  }
+
+  private String getDigest(AndroidManifest appManifest) {
+    MessageDigest digest = newDigest();
+    update(digest, appManifest.getPackageName());
+    for (ResourcePath resourcePath : appManifest.getIncludedResourcePaths()) {
+      update(digest, getDigest(resourcePath));
+    }
+    return toHex(digest);
+  }
+
+  private String getDigest(ResourcePath resourcePath) {
+    synchronized (digests) {
+      String digest = digests.get(resourcePath);
+      if (digest == null) {
+        digest = computeDigest(resourcePath);
+        digests.put(resourcePath, digest);
+      }
+      return digest;
+    }
+  }
+
+  private static String computeDigest(ResourcePath resourcePath) {
+    MessageDigest digest = newDigest();
+    update(digest, resourcePath.getPackageName());
+    update(digest, describe(resourcePath.rClass));
+    update(digest, resourcePath.resourceBase, "");
+    update(digest, resourcePath.assetsDir, "");
+    return toHex(digest);
+  }
+
+  /**
+   * R classes with the same name may come from different class loaders, and hold different ids.
+   */
+  private static String describe(Class<?> rClass) {
+    if (rClass == null) {
+      return null;
+    }
+    CodeSource codeSource = rClass.getProtectionDomain().getCodeSource();
+    return rClass.getName() + "@" + Integer.toHexString(System.identityHashCode(rClass))
+        + (codeSource == null ? "" : " from " + codeSource.getLocation());
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static String toHex(MessageDigest digest) {
+    StringBuilder hex = new StringBuilder();
+    for (byte b : digest.digest()) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+
+  private static void update(MessageDigest digest, FsFile fsFile, String relativePath) {
+    if (fsFile == null) {
+      update(digest, null);
+      return;
+    }
+    if (fsFile.getPath().startsWith("jar:")) {
+      // jars aren't modified while they're in use
+      update(digest, fsFile.getPath());
+      return;
+    }
+
+    File file = new File(fsFile.getPath());
+    update(digest, relativePath + ":" + file.length() + ":" + file.lastModified());
+    FsFile[] children = fsFile.isDirectory() ? fsFile.listFiles() : null;
+    if (children != null) {
+      Arrays.sort(children, BY_NAME);
+      for (FsFile child : children) {
+        update(digest, child, relativePath + "/" + child.getName());
+      }
+    }
+  }
+
+  private static void update(MessageDigest digest, String string) {
+    digest.update(String.valueOf(string).getBytes(UTF_8));
+    digest.update((byte) 0);
+  }
+
+  /**
+   * How often loaders were reused.
+   */
+  public static class Stats {
+    private int hits;
+    private int misses;
+    private int evictions;
+    private int collected;
+
+    /** @return How many times an existing loader was returned. */
+    public int getHits() {
+      return hits;
+    }
+
+    /** @return How many loaders were created. */
+    public int getMisses() {
+      return misses;
+    }
+
+    /** @return How many loaders were dropped to make room for others. */
+    public int getEvictions() {
+      return evictions;
+    }
+
+    /** @return How many loaders had to be created again because they'd been garbage collected. */
+    public int getCollected() {
+      return collected;
+    }
+
+    private Stats copy() {
+      Stats copy = new Stats();
+      copy.hits = hits;
+      copy.misses = misses;
+      copy.evictions = evictions;
+      copy.collected = collected;
+      return copy;
+    }
+
+    @Override public String toString() {
+      return "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ", collected=" + collected;
+    }
+  }
+
+  private static class Key {
+    private final String digest;
+    private final SdkConfig sdkConfig;
+    private final Class<?> factoryType;
+
+    Key(String digest, SdkConfig sdkConfig, Class<?> factoryType) {
+      this.digest = digest;
+      this.sdkConfig = sdkConfig;
+      this.factoryType = factoryType;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      Key key = (Key) o;
+
+      return digest.equals(key.digest) && sdkConfig.equals(key.sdkConfig) && factoryType.equals(key.factoryType);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = digest.hashCode();
+      result = 31 * result + sdkConfig.hashCode();
+      result = 31 * result + factoryType.hashCode();
+      return result;
+    }
+  }
+}
@@ -1,15 +1,22 @@
 package org.robolectric.internal;
 
 import org.robolectric.internal.bytecode.InstrumentationConfiguration;
+import org.robolectric.internal.bytecode.InstrumentedClassCache;
+import org.robolectric.internal.bytecode.InstrumentedJar;
 import org.robolectric.internal.bytecode.InstrumentingClassLoader;
 import org.robolectric.internal.dependency.DependencyResolver;
+import org.robolectric.util.Logger;
 import org.robolectric.util.Pair;
 
+import java.io.File;
 import java.net.URL;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class InstrumentingClassLoaderFactory {
+  private static final String INSTRUMENTED_CLASS_CACHE_DIR = "robolectric.instrumentedClassCacheDir";
+  private static final String INSTRUMENTED_JAR_DIR = "robolectric.instrumentedJarDir";
 
   // Typical test suites will use a single test runner, therefore have a maximum of one SdkEnvironment per API level.
   private static final int CACHE_SIZE = SdkConfig.getSupportedApis().size();
@@ -22,25 +29,126 @@ public class InstrumentingClassLoaderFactory {
     }
   };
 
+  // When each thread has its own sandbox, SdkEnvironments are unique per thread too.
+  private static final ThreadLocal<Map<Pair<InstrumentationConfiguration, SdkConfig>, SdkEnvironment>> sdkToEnvironmentForThread = new ThreadLocal<Map<Pair<InstrumentationConfiguration, SdkConfig>, SdkEnvironment>>() {
+    @Override
+    protected Map<Pair<InstrumentationConfiguration, SdkConfig>, SdkEnvironment> initialValue() {
+      return new HashMap<>();
+    }
+  };
+
+  // Per-thread sandboxes share instrumented bytecode, for as long as any thread still has a sandbox.
+  private static final Map<InstrumentationConfiguration, InstrumentedClassCache> sharedInstrumentedClassCaches = new HashMap<>();
+  private static int threadsWithSdkEnvironments;
+
   private final InstrumentationConfiguration instrumentationConfig;
   private final DependencyResolver dependencyResolver;
+  private final boolean sandboxPerThread;
 
   public InstrumentingClassLoaderFactory(InstrumentationConfiguration instrumentationConfig, DependencyResolver dependencyResolver) {
+    this(instrumentationConfig, dependencyResolver, false);
+  }
+
+  /**
+   * @param instrumentationConfig Rules for the class loaders to instrument with.
+   * @param dependencyResolver Resolves the SDK jars.
+   * @param sandboxPerThread True to give each thread its own SdkEnvironment, so tests can run concurrently.
+   */
+  public InstrumentingClassLoaderFactory(InstrumentationConfiguration instrumentationConfig, DependencyResolver dependencyResolver, boolean sandboxPerThread) {
     this.instrumentationConfig = instrumentationConfig;
     this.dependencyResolver = dependencyResolver;
+    this.sandboxPerThread = sandboxPerThread;
   }
 
-  public synchronized SdkEnvironment getSdkEnvironment(SdkConfig sdkConfig) {
-
+  public SdkEnvironment getSdkEnvironment(SdkConfig sdkConfig) {
     Pair<InstrumentationConfiguration, SdkConfig> key = Pair.create(instrumentationConfig, sdkConfig);
 
-    SdkEnvironment sdkEnvironment = sdkToEnvironment.get(key);
-    if (sdkEnvironment == null) {
-      URL[] urls = dependencyResolver.getLocalArtifactUrls(sdkConfig.getSdkClasspathDependencies());
-      ClassLoader robolectricClassLoader = new InstrumentingClassLoader(instrumentationConfig, urls);
-      sdkEnvironment = new SdkEnvironment(sdkConfig, robolectricClassLoader);
-      sdkToEnvironment.put(key, sdkEnvironment);
+    if (sandboxPerThread) {
+      Map<Pair<InstrumentationConfiguration, SdkConfig>, SdkEnvironment> threadSdkToEnvironment = sdkToEnvironmentForThread.get();
+      SdkEnvironment sdkEnvironment = threadSdkToEnvironment.get(key);
+      if (sdkEnvironment == null) {
+        if (threadSdkToEnvironment.isEmpty()) {
+          synchronized (sharedInstrumentedClassCaches) {
+            threadsWithSdkEnvironments++;
+          }
+        }
+        sdkEnvironment = createSdkEnvironment(sdkConfig, getSharedInstrumentedClassCache());
+        threadSdkToEnvironment.put(key, sdkEnvironment);
+      }
+      return sdkEnvironment;
+    }
+
+    synchronized (sdkToEnvironment) {
+      SdkEnvironment sdkEnvironment = sdkToEnvironment.get(key);
+      if (sdkEnvironment == null) {
+        sdkEnvironment = createSdkEnvironment(sdkConfig, createInstrumentedClassCache(false));
+        sdkToEnvironment.put(key, sdkEnvironment);
+      }
+      return sdkEnvironment;
+    }
+  }
+
+  /**
+   * Forget the SdkEnvironments created for the current thread. Called by threads which run tests with a sandbox per
+   * thread before they exit; once no thread has a sandbox, the instrumented bytecode they shared is dropped too.
+   */
+  public static void releaseThreadSdkEnvironments() {
+    boolean hadSdkEnvironments = !sdkToEnvironmentForThread.get().isEmpty();
+    sdkToEnvironmentForThread.remove();
+    if (hadSdkEnvironments) {
+      synchronized (sharedInstrumentedClassCaches) {
+        if (--threadsWithSdkEnvironments == 0) {
+          sharedInstrumentedClassCaches.clear();
+        }
+      }
+    }
+  }
+
+  private SdkEnvironment createSdkEnvironment(SdkConfig sdkConfig, InstrumentedClassCache instrumentedClassCache) {
+    URL[] urls = dependencyResolver.getLocalArtifactUrls(sdkConfig.getSdkClasspathDependencies());
+    ClassLoader robolectricClassLoader = new InstrumentingClassLoader(instrumentationConfig, instrumentedClassCache, openInstrumentedJar(sdkConfig), urls);
+    return new SdkEnvironment(sdkConfig, robolectricClassLoader);
+  }
+
+  private InstrumentedClassCache getSharedInstrumentedClassCache() {
+    synchronized (sharedInstrumentedClassCaches) {
+      InstrumentedClassCache instrumentedClassCache = sharedInstrumentedClassCaches.get(instrumentationConfig);
+      if (instrumentedClassCache == null) {
+        instrumentedClassCache = createInstrumentedClassCache(true);
+        sharedInstrumentedClassCaches.put(instrumentationConfig, instrumentedClassCache);
+      }
+      return instrumentedClassCache;
+    }
+  }
+
+  /**
+   * Instrumented classes are cached on disk if the {@code robolectric.instrumentedClassCacheDir} system property is set.
+   *
+   * @param keepInMemory True if the cache will be shared by several class loaders, and should keep entries in memory.
+   * @return The cache, or null if instrumented classes shouldn't be cached.
+   */
+  protected InstrumentedClassCache createInstrumentedClassCache(boolean keepInMemory) {
+    String cacheDir = System.getProperty(INSTRUMENTED_CLASS_CACHE_DIR);
+    if (cacheDir == null && !keepInMemory) {
+      return null;
+    }
+    if (cacheDir != null) {
+      Logger.info("Instrumented class cache location: %s", new File(cacheDir).getAbsolutePath());
+    }
+    return new InstrumentedClassCache(cacheDir == null ? null : new File(cacheDir), instrumentationConfig, SdkConfig.getRobolectricVersion(), keepInMemory);
+  }
+
+  /**
+   * Ahead-of-time instrumented SDK classes are used if the {@code robolectric.instrumentedJarDir} system property
+   * is set and that directory contains an up-to-date jar built by {@link InstrumentedJar#main(String[])}.
+   */
+  protected InstrumentedJar openInstrumentedJar(SdkConfig sdkConfig) {
+    String jarDir = System.getProperty(INSTRUMENTED_JAR_DIR);
+    if (jarDir == null) {
+      return null;
     }
-    return sdkEnvironment;
+    File jarFile = new File(jarDir, InstrumentedJar.fileName(sdkConfig));
+    Logger.info("Instrumented jar location: %s", jarFile.getAbsolutePath());
+    return InstrumentedJar.open(jarFile, instrumentationConfig, SdkConfig.getRobolectricVersion());
   }
 }
@@ -0,0 +1,99 @@
+package org.robolectric.internal;
+
+import org.junit.runners.model.RunnerScheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the children of a runner on a fixed pool of threads.
+ *
+ * The pool is shared by every runner which asks for the same number of threads, so that the per-thread
+ * {@link SdkEnvironment}s created by {@link InstrumentingClassLoaderFactory} are reused from one test class to the next.
+ * Threads which sit idle for a while exit and release their sandboxes; the pool starts new ones when it's used again.
+ */
+public class ParallelScheduler implements RunnerScheduler {
+  private static final long IDLE_THREAD_TIMEOUT_SECONDS = 30;
+  private static final List<ExecutorService> executors = new ArrayList<>();
+
+  private final ExecutorService executor;
+  private final List<Future<?>> futures = new ArrayList<>();
+
+  public ParallelScheduler(int threadCount) {
+    this.executor = getExecutor(threadCount);
+  }
+
+  @Override
+  public void schedule(Runnable childStatement) {
+    synchronized (futures) {
+      futures.add(executor.submit(childStatement));
+    }
+  }
+
+  @Override
+  public void finished() {
+    List<Future<?>> scheduled;
+    synchronized (futures) {
+      scheduled = new ArrayList<>(futures);
+      futures.clear();
+    }
+
+    for (Future<?> future : scheduled) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        // failures are reported to the RunNotifier by the child statement itself
+        throw new RuntimeException(e.getCause());
+      }
+    }
+  }
+
+  private static ExecutorService getExecutor(int threadCount) {
+    synchronized (executors) {
+      while (executors.size() < threadCount) {
+        executors.add(null);
+      }
+      ExecutorService executor = executors.get(threadCount - 1);
+      if (executor == null) {
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(threadCount, threadCount,
+            IDLE_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory());
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        executor = threadPoolExecutor;
+        executors.set(threadCount - 1, executor);
+      }
+      return executor;
+    }
+  }
+
+  private static class DaemonThreadFactory implements ThreadFactory {
+    private final AtomicInteger threadNumber = new AtomicInteger();
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+      Runnable releasingRunnable = new Runnable() {
+        @Override
+        public void run() {
+          try {
+            runnable.run();
+          } finally {
+            InstrumentingClassLoaderFactory.releaseThreadSdkEnvironments();
+          }
+        }
+      };
+      Thread thread = new Thread(releasingRunnable, "robolectric-test-" + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
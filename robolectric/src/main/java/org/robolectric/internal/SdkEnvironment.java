@@ -1,21 +1,25 @@
 package org.robolectric.internal;
 
 import org.robolectric.internal.dependency.DependencyResolver;
+import org.robolectric.internal.bytecode.ClassHandler;
 import org.robolectric.internal.bytecode.ShadowMap;
-import org.robolectric.internal.bytecode.ShadowWrangler;
 import org.robolectric.res.Fs;
 import org.robolectric.res.PackageResourceLoader;
 import org.robolectric.res.ResourceExtractor;
 import org.robolectric.res.ResourceLoader;
 import org.robolectric.res.ResourcePath;
+import org.robolectric.res.ResourceTableLoader;
 
+import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
 
 public class SdkEnvironment {
+  private static final String RESOURCE_TABLE_DIR = "robolectric.resourceTableDir";
+
   private final SdkConfig sdkConfig;
   private final ClassLoader robolectricClassLoader;
-  public final Map<ShadowMap, ShadowWrangler> classHandlersByShadowMap = new HashMap<>();
+  public final Map<ShadowMap, ClassHandler> classHandlersByShadowMap = new HashMap<>();
   private ResourceLoader systemResourceLoader;
 
   public SdkEnvironment(SdkConfig sdkConfig, ClassLoader robolectricClassLoader) {
@@ -32,9 +36,24 @@ public class SdkEnvironment {
       throw new RuntimeException(e);
     }
     ResourcePath resourcePath = new ResourcePath(resourceExtractor.getProcessedRFile(), resourceExtractor.getPackageName(), systemResFs.join("res"), systemResFs.join("assets"));
+    File resourceTableDir = getResourceTableDir();
+    if (resourceTableDir != null) {
+      return new ResourceTableLoader(resourcePath, resourceExtractor, resourceTableDir);
+    }
     return new PackageResourceLoader(resourcePath, resourceExtractor);
   }
 
+  /**
+   * Precompiled resource tables are kept in the directory named by the {@code robolectric.resourceTableDir}
+   * system property, if it's set.
+   *
+   * @return The resource table directory, or null if resources should always be parsed.
+   */
+  public static File getResourceTableDir() {
+    String resourceTableDir = System.getProperty(RESOURCE_TABLE_DIR);
+    return resourceTableDir == null ? null : new File(resourceTableDir);
+  }
+
   public synchronized ResourceLoader getSystemResourceLoader(DependencyResolver dependencyResolver) {
     if (systemResourceLoader == null) {
       systemResourceLoader = createSystemResourceLoader(dependencyResolver);
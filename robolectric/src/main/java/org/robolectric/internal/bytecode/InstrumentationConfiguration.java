@@ -2,6 +2,7 @@ package org.robolectric.internal.bytecode;
 
 import android.R;
 import org.robolectric.internal.ShadowedObject;
+import org.robolectric.internal.IndexedShadowProvider;
 import org.robolectric.internal.ShadowProvider;
 import org.robolectric.manifest.AndroidManifest;
 import org.robolectric.internal.dependency.DependencyJar;
@@ -22,6 +23,7 @@ import org.robolectric.internal.ParallelUniverseInterface;
 import org.robolectric.res.ResourceLoader;
 import org.robolectric.res.ResourcePath;
 import org.robolectric.res.builder.XmlBlock;
+import org.robolectric.res.builder.XmlNodes;
 import org.robolectric.util.TempDirectory;
 import org.robolectric.util.Transcript;
 
@@ -50,6 +52,9 @@ public class InstrumentationConfiguration {
     private final Collection<String> classesToNotAquire = new HashSet<>();
     private final Collection<String> packagesToNotAquire = new HashSet<>();
     private final Collection<String> instrumentedClasses = new HashSet<>();
+    private final Collection<String> shadowedClasses = new HashSet<>();
+    private boolean useInvokeDynamic = Boolean.getBoolean("robolectric.invokedynamic");
+    private boolean useMinimalInstrumentation = Boolean.getBoolean("robolectric.minimalInstrumentation");
 
     public Builder doNotAquireClass(String className) {
       this.classesToNotAquire.add(className);
@@ -81,6 +86,58 @@ public class InstrumentationConfiguration {
       return this;
     }
 
+    /**
+     * Link instrumented methods to their {@link ClassHandler.Plan} with {@code invokedynamic}, rather than
+     * looking the plan up on every call. Defaults to the value of the {@code robolectric.invokedynamic}
+     * system property.
+     *
+     * @param useInvokeDynamic True to emit {@code invokedynamic} call sites.
+     * @return This builder.
+     */
+    public Builder useInvokeDynamic(boolean useInvokeDynamic) {
+      this.useInvokeDynamic = useInvokeDynamic;
+      return this;
+    }
+
+    /**
+     * Only route calls through the {@link ClassHandler} for classes which may have a shadow. Methods of other
+     * instrumented classes call their original code directly, since a {@link ClassHandler.Plan} for them would
+     * only ever call real code. Defaults to the value of the {@code robolectric.minimalInstrumentation} system
+     * property.
+     *
+     * A class may have a shadow if it was added with {@link #addShadowedClass(String)}, if an
+     * {@link IndexedShadowProvider} lists it, or if there is a shadow named by convention for it, e.g.
+     * {@code org.robolectric.shadows.ShadowView} for {@code android.view.View}. {@link RobolectricTestRunner} adds
+     * the classes shadowed by the {@code @Config(shadows=...)} of a test class's methods, and fails tests whose
+     * configured shadows wouldn't be called.
+     *
+     * @param useMinimalInstrumentation True to skip the class handler for classes without shadows.
+     * @return This builder.
+     */
+    public Builder useMinimalInstrumentation(boolean useMinimalInstrumentation) {
+      this.useMinimalInstrumentation = useMinimalInstrumentation;
+      return this;
+    }
+
+    /**
+     * @return True if the configuration built will use {@link #useMinimalInstrumentation(boolean) minimal instrumentation}.
+     */
+    public boolean usesMinimalInstrumentation() {
+      return useMinimalInstrumentation;
+    }
+
+    /**
+     * Declare that a class may have a shadow, so its methods are routed through the {@link ClassHandler}
+     * even with {@link #useMinimalInstrumentation(boolean) minimal instrumentation}.
+     *
+     * @param className The fully-qualified name of the shadowed class.
+     * @return This builder.
+     */
+    public Builder addShadowedClass(String className) {
+      shadowedClasses.add(className);
+      return this;
+    }
+
     public InstrumentationConfiguration build() {
       interceptedMethods.addAll(Arrays.asList(
           new MethodRef(LinkedHashMap.class, "eldest"),
@@ -111,6 +168,7 @@ public class InstrumentationConfiguration {
           ResourcePath.class,
           ResourceLoader.class,
           XmlBlock.class,
+          XmlNodes.class,
           ClassHandler.class,
           ClassHandler.Plan.class,
           RealObject.class,
@@ -147,9 +205,14 @@ public class InstrumentationConfiguration {
       instrumentedPackages.addAll(Arrays.asList("dalvik.", "libcore.", "android.", "com.android.internal.", "org.apache.http."));
       for (ShadowProvider provider : ServiceLoader.load(ShadowProvider.class)) {
         instrumentedPackages.addAll(Arrays.asList(provider.getProvidedPackageNames()));
+        if (useMinimalInstrumentation && provider instanceof IndexedShadowProvider) {
+          shadowedClasses.addAll(((IndexedShadowProvider) provider).getShadowMap().keySet());
+        }
       }
 
-      return new InstrumentationConfiguration(classNameTranslations, interceptedMethods, instrumentedPackages, instrumentedClasses, classesToNotAquire, packagesToNotAquire);
+      // shadowed classes only matter with minimal instrumentation, so they don't tell other configurations apart
+      return new InstrumentationConfiguration(classNameTranslations, interceptedMethods, instrumentedPackages, instrumentedClasses, classesToNotAquire, packagesToNotAquire,
+          useMinimalInstrumentation ? shadowedClasses : Collections.<String>emptySet(), useInvokeDynamic, useMinimalInstrumentation);
     }
   }
 
@@ -163,14 +226,24 @@ public class InstrumentationConfiguration {
   private final HashSet<MethodRef> interceptedMethods = new HashSet<>();
   private final Set<String> classesToNotAquire = new HashSet<>();
   private final Set<String> packagesToNotAquire = new HashSet<>();
+  private final Set<String> shadowedClasses = new HashSet<>();
+  private final boolean useInvokeDynamic;
+  private final boolean useMinimalInstrumentation;
+  private final Prefixes instrumentedPackagePrefixes;
+  private final Prefixes packagePrefixesToNotAquire;
 
-  private InstrumentationConfiguration(Map<String, String> classNameTranslations, Collection<MethodRef> interceptedMethods, Collection<String> instrumentedPackages, Collection<String> instrumentedClasses, Collection<String> classesToNotAquire, Collection<String> packagesToNotAquire) {
+  private InstrumentationConfiguration(Map<String, String> classNameTranslations, Collection<MethodRef> interceptedMethods, Collection<String> instrumentedPackages, Collection<String> instrumentedClasses, Collection<String> classesToNotAquire, Collection<String> packagesToNotAquire, Collection<String> shadowedClasses, boolean useInvokeDynamic, boolean useMinimalInstrumentation) {
     this.classNameTranslations.putAll(classNameTranslations);
     this.interceptedMethods.addAll(interceptedMethods);
     this.instrumentedPackages.addAll(instrumentedPackages);
     this.instrumentedClasses.addAll(instrumentedClasses);
     this.classesToNotAquire.addAll(classesToNotAquire);
     this.packagesToNotAquire.addAll(packagesToNotAquire);
+    this.shadowedClasses.addAll(shadowedClasses);
+    this.useInvokeDynamic = useInvokeDynamic;
+    this.useMinimalInstrumentation = useMinimalInstrumentation;
+    this.instrumentedPackagePrefixes = new Prefixes(instrumentedPackages);
+    this.packagePrefixesToNotAquire = new Prefixes(packagesToNotAquire);
   }
 
   /**
@@ -197,23 +270,39 @@ public class InstrumentationConfiguration {
   public boolean shouldAcquire(String name) {
     // the org.robolectric.res and org.robolectric.manifest packages live in the base classloader, but not its tests; yuck.
     int lastDot = name.lastIndexOf('.');
-    String pkgName = name.substring(0, lastDot == -1 ? 0 : lastDot);
-    if (pkgName.equals("org.robolectric.res") || (pkgName.equals("org.robolectric.manifest"))) {
+    if (isPackage(name, lastDot, "org.robolectric.res") || isPackage(name, lastDot, "org.robolectric.manifest")) {
       return name.contains("Test");
     }
 
-    if (name.matches("com\\.android\\.internal\\.R(\\$.*)?")) return true;
+    if (name.equals("com.android.internal.R") || name.startsWith("com.android.internal.R$")) return true;
 
     // Android SDK code almost universally refers to com.android.internal.R, except
     // when refering to android.R.stylable, as in HorizontalScrollView. arghgh.
     // See https://github.com/robolectric/robolectric/issues/521
     if (name.equals("android.R$styleable")) return true;
 
-    for (String packageName : packagesToNotAquire) {
-      if (name.startsWith(packageName)) return false;
-    }
+    if (packagePrefixesToNotAquire.matches(name)) return false;
+
+    return !(isRClass(name) || classesToNotAquire.contains(name));
+  }
 
-    return !(name.matches(".*\\.R(|\\$[a-z]+)$") || classesToNotAquire.contains(name));
+  private static boolean isPackage(String name, int lastDot, String packageName) {
+    return lastDot == packageName.length() && name.startsWith(packageName);
+  }
+
+  /**
+   * Whether a class is {@code R} or one of its resource type classes, such as {@code R$string}.
+   */
+  private static boolean isRClass(String name) {
+    if (name.endsWith(".R")) return true;
+
+    int dollar = name.lastIndexOf('$');
+    if (dollar < 2 || dollar == name.length() - 1 || !name.startsWith(".R", dollar - 2)) return false;
+    for (int i = dollar + 1; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (c < 'a' || c > 'z') return false;
+    }
+    return true;
   }
 
   public Set<MethodRef> methodsToIntercept() {
@@ -229,6 +318,35 @@ public class InstrumentationConfiguration {
     return Collections.unmodifiableMap(classNameTranslations);
   }
 
+  /**
+   * Determine if instrumented methods should find their {@link ClassHandler.Plan} through {@code invokedynamic}.
+   *
+   * @return True if {@link InvokeDynamicSupport} call sites should be emitted.
+   */
+  public boolean useInvokeDynamic() {
+    return useInvokeDynamic;
+  }
+
+  /**
+   * Determine if only classes which may have shadows should have their methods routed through the
+   * {@link ClassHandler}.
+   *
+   * @return True if other instrumented classes should call their original code directly.
+   */
+  public boolean useMinimalInstrumentation() {
+    return useMinimalInstrumentation;
+  }
+
+  /**
+   * Determine if a class was declared to have a shadow, other than one named by convention.
+   *
+   * @param className The fully-qualified class name.
+   * @return True if the class may have a shadow.
+   */
+  public boolean isShadowedClass(String className) {
+    return shadowedClasses.contains(className);
+  }
+
   public boolean containsStubs(ClassInfo classInfo) {
     return classInfo.getName().startsWith("com.google.android.maps.");
   }
@@ -242,13 +360,38 @@ public class InstrumentationConfiguration {
   }
 
   private boolean isInInstrumentedPackage(ClassInfo classInfo) {
-    final String className = classInfo.getName();
-    for (String instrumentedPackage : instrumentedPackages) {
-      if (className.startsWith(instrumentedPackage)) {
-        return true;
-      }
+    return instrumentedPackagePrefixes.matches(classInfo.getName());
+  }
+
+  /**
+   * Stable description of every rule in this configuration, suitable for keying persistent caches.
+   *
+   * @return A string which is equal for equivalent configurations, across JVMs.
+   */
+  String cacheKey() {
+    List<String> methodRefs = new ArrayList<>();
+    for (MethodRef methodRef : interceptedMethods) {
+      methodRefs.add(methodRef.className + "#" + methodRef.methodName);
+    }
+    List<String> translations = new ArrayList<>();
+    for (Map.Entry<String, String> entry : classNameTranslations.entrySet()) {
+      translations.add(entry.getKey() + "=" + entry.getValue());
     }
-    return false;
+    return "instrumentedPackages:" + sorted(instrumentedPackages)
+        + "\ninstrumentedClasses:" + sorted(instrumentedClasses)
+        + "\nclassNameTranslations:" + sorted(translations)
+        + "\ninterceptedMethods:" + sorted(methodRefs)
+        + "\nclassesToNotAquire:" + sorted(classesToNotAquire)
+        + "\npackagesToNotAquire:" + sorted(packagesToNotAquire)
+        + "\nshadowedClasses:" + sorted(shadowedClasses)
+        + "\nuseInvokeDynamic:" + useInvokeDynamic
+        + "\nuseMinimalInstrumentation:" + useMinimalInstrumentation;
+  }
+
+  private static List<String> sorted(Collection<String> strings) {
+    List<String> list = new ArrayList<>(strings);
+    Collections.sort(list);
+    return list;
   }
 
   @Override
@@ -262,6 +405,9 @@ public class InstrumentationConfiguration {
     if (!classesToNotAquire.equals(that.classesToNotAquire)) return false;
     if (!instrumentedPackages.equals(that.instrumentedPackages)) return false;
     if (!interceptedMethods.equals(that.interceptedMethods)) return false;
+    if (!shadowedClasses.equals(that.shadowedClasses)) return false;
+    if (useInvokeDynamic != that.useInvokeDynamic) return false;
+    if (useMinimalInstrumentation != that.useMinimalInstrumentation) return false;
 
     return true;
   }
@@ -272,9 +418,39 @@ public class InstrumentationConfiguration {
     result = 31 * result + classNameTranslations.hashCode();
     result = 31 * result + interceptedMethods.hashCode();
     result = 31 * result + classesToNotAquire.hashCode();
+    result = 31 * result + shadowedClasses.hashCode();
+    result = 31 * result + (useInvokeDynamic ? 1 : 0);
+    result = 31 * result + (useMinimalInstrumentation ? 1 : 0);
     return result;
   }
 
+  /**
+   * A set of package name prefixes, sorted with any prefix that is covered by a shorter one dropped, so that
+   * the only one which can match a name is the greatest that sorts before it.
+   */
+  static class Prefixes {
+    private final String[] prefixes;
+
+    Prefixes(Collection<String> prefixes) {
+      List<String> sorted = sorted(prefixes);
+      List<String> kept = new ArrayList<>();
+      for (String prefix : sorted) {
+        if (kept.isEmpty() || !prefix.startsWith(kept.get(kept.size() - 1))) {
+          kept.add(prefix);
+        }
+      }
+      this.prefixes = kept.toArray(new String[kept.size()]);
+    }
+
+    boolean matches(String name) {
+      int index = Arrays.binarySearch(prefixes, name);
+      if (index >= 0) return true;
+
+      int before = -index - 2;
+      return before >= 0 && name.startsWith(prefixes[before]);
+    }
+  }
+
   /**
    * Reference to a specific method on a class.
    */
@@ -0,0 +1,195 @@
+package org.robolectric.internal.bytecode;
+
+import org.robolectric.util.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content-addressed on-disk cache of bytecode produced by {@link InstrumentingClassLoader}.
+ *
+ * Entries are keyed by a digest of the original class bytes, the {@link InstrumentationConfiguration}
+ * and the Robolectric version, so a cached entry can never be reused for different input. Entries are
+ * written to a temporary file and atomically renamed into place, which makes it safe for several
+ * forked JVMs to share the same cache directory. Entries may also be kept in memory, so that several
+ * {@link InstrumentingClassLoader}s in the same JVM only instrument each class once; the memory cache
+ * is bounded, and drops arbitrary entries once it holds too many bytes.
+ */
+public class InstrumentedClassCache {
+  static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+  // comfortably more than one SDK's instrumented classes
+  private static final long MAX_MEMORY_CACHE_BYTES = 128L * 1024 * 1024;
+
+  private final File cacheDir;
+  private final byte[] keyPrefix;
+  private final ConcurrentMap<String, byte[]> memoryCache;
+  private final long maxMemoryCacheBytes;
+  private final AtomicLong memoryCacheBytes = new AtomicLong();
+
+  public InstrumentedClassCache(File cacheDir, InstrumentationConfiguration config, String robolectricVersion) {
+    this(cacheDir, config, robolectricVersion, false);
+  }
+
+  /**
+   * @param cacheDir Directory to store entries in, or null to keep them only in memory.
+   * @param config The configuration classes are instrumented with.
+   * @param robolectricVersion The current Robolectric version.
+   * @param keepInMemory True to also keep recently stored entries in memory.
+   */
+  public InstrumentedClassCache(File cacheDir, InstrumentationConfiguration config, String robolectricVersion, boolean keepInMemory) {
+    this(cacheDir, config, robolectricVersion, keepInMemory ? MAX_MEMORY_CACHE_BYTES : 0);
+  }
+
+  InstrumentedClassCache(File cacheDir, InstrumentationConfiguration config, String robolectricVersion, long maxMemoryCacheBytes) {
+    this.cacheDir = cacheDir;
+    this.keyPrefix = (robolectricVersion + "\n" + config.cacheKey() + "\n").getBytes(UTF_8);
+    this.memoryCache = maxMemoryCacheBytes > 0 ? new ConcurrentHashMap<String, byte[]>() : null;
+    this.maxMemoryCacheBytes = maxMemoryCacheBytes;
+  }
+
+  /**
+   * Look up previously instrumented bytecode.
+   *
+   * @param origClassBytes The uninstrumented bytecode of the class.
+   * @return The instrumented bytecode, or null if the cache has no entry for this class.
+   */
+  public byte[] get(byte[] origClassBytes) {
+    return get(origClassBytes, "");
+  }
+
+  /**
+   * Look up bytecode which was instrumented differently depending on something other than the configuration.
+   *
+   * @param origClassBytes The uninstrumented bytecode of the class.
+   * @param variant Describes how the class was instrumented, or the empty string for the usual instrumentation.
+   * @return The instrumented bytecode, or null if the cache has no entry for this class and variant.
+   */
+  byte[] get(byte[] origClassBytes, String variant) {
+    String key = digest(origClassBytes, variant);
+    byte[] bytes = memoryCache == null ? null : memoryCache.get(key);
+    if (bytes != null || cacheDir == null) {
+      return bytes;
+    }
+
+    File file = fileFor(key);
+    if (!file.isFile()) {
+      return null;
+    }
+
+    try {
+      bytes = Files.readAllBytes(file.toPath());
+    } catch (IOException e) {
+      Logger.debug("Couldn't read cached class %s: %s", file, e);
+      return null;
+    }
+    if (memoryCache != null) {
+      putInMemory(key, bytes);
+    }
+    return bytes;
+  }
+
+  /**
+   * Store instrumented bytecode. Failures are logged and otherwise ignored, since the cache is only an optimization.
+   *
+   * @param origClassBytes The uninstrumented bytecode of the class.
+   * @param instrumentedClassBytes The instrumented bytecode of the class.
+   */
+  public void put(byte[] origClassBytes, byte[] instrumentedClassBytes) {
+    put(origClassBytes, "", instrumentedClassBytes);
+  }
+
+  void put(byte[] origClassBytes, String variant, byte[] instrumentedClassBytes) {
+    String key = digest(origClassBytes, variant);
+    if (memoryCache != null) {
+      putInMemory(key, instrumentedClassBytes);
+    }
+    if (cacheDir == null) {
+      return;
+    }
+
+    File file = fileFor(key);
+    if (file.isFile()) {
+      return;
+    }
+
+    Path tempFile = null;
+    try {
+      File dir = file.getParentFile();
+      if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+        return;
+      }
+
+      tempFile = Files.createTempFile(dir.toPath(), file.getName(), ".tmp");
+      Files.write(tempFile, instrumentedClassBytes);
+      try {
+        Files.move(tempFile, file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tempFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+      tempFile = null;
+    } catch (IOException e) {
+      Logger.debug("Couldn't write cached class %s: %s", file, e);
+    } finally {
+      if (tempFile != null) {
+        try {
+          Files.deleteIfExists(tempFile);
+        } catch (IOException ignored) {
+        }
+      }
+    }
+  }
+
+  private void putInMemory(String key, byte[] bytes) {
+    byte[] previous = memoryCache.put(key, bytes);
+    memoryCacheBytes.addAndGet(bytes.length - (previous == null ? 0 : previous.length));
+
+    Iterator<Map.Entry<String, byte[]>> iterator = memoryCache.entrySet().iterator();
+    while (memoryCacheBytes.get() > maxMemoryCacheBytes && iterator.hasNext()) {
+      Map.Entry<String, byte[]> entry = iterator.next();
+      if (!entry.getKey().equals(key) && memoryCache.remove(entry.getKey(), entry.getValue())) {
+        memoryCacheBytes.addAndGet(-entry.getValue().length);
+      }
+    }
+  }
+
+  private File fileFor(String key) {
+    return new File(new File(cacheDir, key.substring(0, 2)), key.substring(2) + ".class");
+  }
+
+  private String digest(byte[] origClassBytes, String variant) {
+    return sha1(keyPrefix, variant.getBytes(UTF_8), origClassBytes);
+  }
+
+  static String sha1(byte[]... inputs) {
+    MessageDigest messageDigest;
+    try {
+      messageDigest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+    for (byte[] input : inputs) {
+      messageDigest.update(input);
+    }
+
+    byte[] bytes = messageDigest.digest();
+    char[] chars = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+      chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+    }
+    return new String(chars);
+  }
+}
@@ -0,0 +1,222 @@
+package org.robolectric.internal.bytecode;
+
+import org.robolectric.internal.SdkConfig;
+import org.robolectric.internal.dependency.DependencyResolver;
+import org.robolectric.internal.dependency.LocalDependencyResolver;
+import org.robolectric.internal.dependency.MavenDependencyResolver;
+import org.robolectric.util.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.robolectric.util.Util.readBytes;
+
+/**
+ * A jar of classes which were instrumented ahead of time, so that {@link InstrumentingClassLoader} can define them
+ * without running ASM.
+ *
+ * The jar's manifest records the Robolectric version and a digest of the {@link InstrumentationConfiguration} used
+ * to build it; a jar which doesn't match the current version and configuration is ignored.
+ *
+ * Instrumented jars for the SDKs can be built with:
+ * <pre>
+ *   java -cp ... org.robolectric.internal.bytecode.InstrumentedJar &lt;output dir&gt; [api level...]
+ * </pre>
+ */
+public class InstrumentedJar {
+  private static final Attributes.Name ROBOLECTRIC_VERSION = new Attributes.Name("Robolectric-Version");
+  private static final Attributes.Name INSTRUMENTATION_CONFIGURATION = new Attributes.Name("Robolectric-Instrumentation-Configuration");
+
+  private final JarFile jarFile;
+
+  private InstrumentedJar(JarFile jarFile) {
+    this.jarFile = jarFile;
+  }
+
+  /**
+   * Open an instrumented jar.
+   *
+   * @param file The instrumented jar.
+   * @param config The configuration the jar must have been built with.
+   * @param robolectricVersion The Robolectric version the jar must have been built with.
+   * @return The instrumented jar, or null if it doesn't exist or was built with a different version or configuration.
+   */
+  public static InstrumentedJar open(File file, InstrumentationConfiguration config, String robolectricVersion) {
+    if (!file.isFile()) {
+      return null;
+    }
+
+    try {
+      JarFile jarFile = new JarFile(file);
+      Manifest manifest = jarFile.getManifest();
+      Attributes attributes = manifest == null ? null : manifest.getMainAttributes();
+      if (attributes == null
+          || !robolectricVersion.equals(attributes.getValue(ROBOLECTRIC_VERSION))
+          || !configurationDigest(config).equals(attributes.getValue(INSTRUMENTATION_CONFIGURATION))) {
+        Logger.info("Ignoring out-of-date instrumented jar %s", file);
+        jarFile.close();
+        return null;
+      }
+      return new InstrumentedJar(jarFile);
+    } catch (IOException e) {
+      Logger.error("Couldn't open instrumented jar %s: %s", file, e);
+      return null;
+    }
+  }
+
+  /**
+   * Instrument every class on the given classpath which an {@link InstrumentingClassLoader} would acquire.
+   *
+   * @param config The configuration to instrument with.
+   * @param robolectricVersion The current Robolectric version.
+   * @param urls The jars to instrument.
+   * @param outputFile Where to write the instrumented jar.
+   * @throws IOException If the jars can't be read or the output can't be written.
+   */
+  public static void build(InstrumentationConfiguration config, String robolectricVersion, URL[] urls, File outputFile) throws IOException {
+    InstrumentingClassLoader classLoader = new InstrumentingClassLoader(config, urls);
+
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest.getMainAttributes().put(ROBOLECTRIC_VERSION, robolectricVersion);
+    manifest.getMainAttributes().put(INSTRUMENTATION_CONFIGURATION, configurationDigest(config));
+
+    // a unique temp file in the same directory, so concurrent builds don't clobber each other and readers
+    // only ever see a complete jar
+    Path tempFile = Files.createTempFile(outputFile.getAbsoluteFile().getParentFile().toPath(), outputFile.getName(), ".tmp");
+    try {
+      Set<String> writtenEntries = new HashSet<>();
+      try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(tempFile), manifest)) {
+        for (URL url : urls) {
+          try (JarFile jarFile = new JarFile(toFile(url))) {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+              String entryName = entries.nextElement().getName();
+              if (!entryName.endsWith(".class") || !writtenEntries.add(entryName)) {
+                continue;
+              }
+
+              String className = entryName.substring(0, entryName.length() - ".class".length()).replace('/', '.');
+              if (!config.shouldAcquire(className)) {
+                continue;
+              }
+
+              byte[] bytes;
+              try {
+                bytes = classLoader.getTransformedBytes(className);
+              } catch (ClassNotFoundException e) {
+                Logger.error("Couldn't instrument %s: %s", className, e);
+                continue;
+              }
+              out.putNextEntry(new JarEntry(entryName));
+              out.write(bytes);
+              out.closeEntry();
+            }
+          }
+        }
+      }
+
+      try {
+        Files.move(tempFile, outputFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tempFile, outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+      tempFile = null;
+    } finally {
+      if (tempFile != null) {
+        try {
+          Files.deleteIfExists(tempFile);
+        } catch (IOException ignored) {
+        }
+      }
+    }
+  }
+
+  /**
+   * @param className The fully-qualified class name.
+   * @return The instrumented bytecode for the class, or null if this jar doesn't contain it.
+   */
+  public byte[] getClassBytes(String className) {
+    JarEntry entry = jarFile.getJarEntry(className.replace('.', '/') + ".class");
+    if (entry == null) {
+      return null;
+    }
+
+    try (InputStream inputStream = jarFile.getInputStream(entry)) {
+      return readBytes(inputStream);
+    } catch (IOException e) {
+      Logger.error("Couldn't read %s from instrumented jar %s: %s", className, jarFile.getName(), e);
+      return null;
+    }
+  }
+
+  /**
+   * @param sdkConfig The SDK.
+   * @return The name of the instrumented jar for the given SDK.
+   */
+  public static String fileName(SdkConfig sdkConfig) {
+    return "android-all-instrumented-" + sdkConfig.getApiLevel() + ".jar";
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      System.err.println("usage: InstrumentedJar <output dir> [api level...]");
+      System.exit(1);
+    }
+
+    File outputDir = new File(args[0]);
+    if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+      throw new IOException("couldn't create " + outputDir);
+    }
+
+    Set<Integer> apiLevels = new HashSet<>();
+    for (int i = 1; i < args.length; i++) {
+      apiLevels.add(Integer.parseInt(args[i]));
+    }
+    if (apiLevels.isEmpty()) {
+      apiLevels.addAll(SdkConfig.getSupportedApis());
+    }
+
+    DependencyResolver dependencyResolver;
+    if (Boolean.getBoolean("robolectric.offline")) {
+      dependencyResolver = new LocalDependencyResolver(new File(System.getProperty("robolectric.dependency.dir", ".")));
+    } else {
+      dependencyResolver = new MavenDependencyResolver();
+    }
+
+    InstrumentationConfiguration config = InstrumentationConfiguration.newBuilder().build();
+    for (int apiLevel : apiLevels) {
+      SdkConfig sdkConfig = new SdkConfig(apiLevel);
+      File outputFile = new File(outputDir, fileName(sdkConfig));
+      System.out.println("Instrumenting " + sdkConfig + " into " + outputFile);
+      build(config, SdkConfig.getRobolectricVersion(), dependencyResolver.getLocalArtifactUrls(sdkConfig.getSdkClasspathDependencies()), outputFile);
+    }
+  }
+
+  private static String configurationDigest(InstrumentationConfiguration config) {
+    return InstrumentedClassCache.sha1(config.cacheKey().getBytes(InstrumentedClassCache.UTF_8));
+  }
+
+  private static File toFile(URL url) throws IOException {
+    try {
+      return new File(url.toURI());
+    } catch (URISyntaxException e) {
+      throw new IOException(e);
+    }
+  }
+}
@@ -1,8 +1,10 @@
 package org.robolectric.internal.bytecode;
 
 import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Handle;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
@@ -12,14 +14,9 @@ import org.objectweb.asm.commons.JSRInlinerAdapter;
 import org.objectweb.asm.commons.Method;
 import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.ClassNode;
-import org.objectweb.asm.tree.FieldInsnNode;
-import org.objectweb.asm.tree.FieldNode;
 import org.objectweb.asm.tree.InsnList;
-import org.objectweb.asm.tree.InsnNode;
-import org.objectweb.asm.tree.LdcInsnNode;
 import org.objectweb.asm.tree.MethodInsnNode;
 import org.objectweb.asm.tree.MethodNode;
-import org.objectweb.asm.tree.TypeInsnNode;
 import org.robolectric.internal.ShadowedObject;
 import org.robolectric.internal.Shadow;
 import org.robolectric.internal.ShadowConstants;
@@ -28,16 +25,21 @@ import org.robolectric.util.Logger;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Modifier;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static org.objectweb.asm.Type.ARRAY;
 import static org.objectweb.asm.Type.OBJECT;
@@ -61,16 +63,41 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
   private static final String DIRECT_OBJECT_MARKER_TYPE_DESC = Type.getObjectType(DirectObjectMarker.class.getName().replace('.', '/')).getDescriptor();
   private static final String ROBO_INIT_METHOD_NAME = "$$robo$init";
   private static final String GET_ROBO_DATA_SIGNATURE = "()Ljava/lang/Object;";
+  private static final Handle METHOD_INVOKED_BOOTSTRAP = new Handle(H_INVOKESTATIC,
+      Type.getInternalName(InvokeDynamicSupport.class), "bootstrapMethodInvoked",
+      Type.getMethodDescriptor(Type.getType(CallSite.class), Type.getType(MethodHandles.Lookup.class),
+          Type.getType(String.class), Type.getType(MethodType.class), Type.getType(String.class), Type.INT_TYPE));
+
+  static {
+    // lock per class name rather than on the whole loader
+    registerAsParallelCapable();
+  }
 
   private final URLClassLoader urls;
   private final InstrumentationConfiguration config;
-  private final Map<String, Class> classes = new HashMap<>();
+  private final ConcurrentMap<String, Class> classes = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, TypeInfo> typeInfos = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Boolean> acquireDecisions = new ConcurrentHashMap<>();
   private final Map<String, String> classesToRemap;
   private final Set<InstrumentationConfiguration.MethodRef> methodsToIntercept;
+  private final InstrumentedClassCache instrumentedClassCache;
+  private final InstrumentedJar instrumentedJar;
 
   public InstrumentingClassLoader(InstrumentationConfiguration config, URL... urls) {
+    this(config, null, null, urls);
+  }
+
+  /**
+   * @param config Rules for which classes to acquire and instrument.
+   * @param instrumentedClassCache Persistent cache of instrumented bytecode, or null to always instrument.
+   * @param instrumentedJar Ahead-of-time instrumented classes, or null if there are none.
+   * @param urls Classpath from which to load acquired classes.
+   */
+  public InstrumentingClassLoader(InstrumentationConfiguration config, InstrumentedClassCache instrumentedClassCache, InstrumentedJar instrumentedJar, URL... urls) {
     super(InstrumentingClassLoader.class.getClassLoader());
     this.config = config;
+    this.instrumentedClassCache = instrumentedClassCache;
+    this.instrumentedJar = instrumentedJar;
     this.urls = new URLClassLoader(urls, null);
     classesToRemap = convertToSlashes(config.classNameTranslations());
     methodsToIntercept = convertToSlashes(config.methodsToIntercept());
@@ -80,34 +107,45 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
   }
 
   @Override
-  synchronized public Class loadClass(String name) throws ClassNotFoundException {
+  public Class loadClass(String name) throws ClassNotFoundException {
     Class<?> theClass = classes.get(name);
-    if (theClass != null) {
-      if (theClass == MissingClassMarker.class) {
-        throw new ClassNotFoundException(name);
-      } else {
-        return theClass;
+    if (theClass == null) {
+      synchronized (getClassLoadingLock(name)) {
+        theClass = classes.get(name);
+        if (theClass == null) {
+          try {
+            if (shouldAcquire(name)) {
+              theClass = findClass(name);
+            } else {
+              theClass = getParent().loadClass(name);
+            }
+          } catch (ClassNotFoundException e) {
+            classes.put(name, MissingClassMarker.class);
+            throw e;
+          }
+          classes.put(name, theClass);
+        }
       }
     }
 
-    try {
-      if (config.shouldAcquire(name)) {
-        theClass = findClass(name);
-      } else {
-        theClass = getParent().loadClass(name);
-      }
-    } catch (ClassNotFoundException e) {
-      classes.put(name, MissingClassMarker.class);
-      throw e;
+    if (theClass == MissingClassMarker.class) {
+      throw new ClassNotFoundException(name);
     }
-
-    classes.put(name, theClass);
     return theClass;
   }
 
   private static class MissingClassMarker {
   }
 
+  private boolean shouldAcquire(String name) {
+    Boolean shouldAcquire = acquireDecisions.get(name);
+    if (shouldAcquire == null) {
+      shouldAcquire = config.shouldAcquire(name);
+      acquireDecisions.put(name, shouldAcquire);
+    }
+    return shouldAcquire;
+  }
+
   @Override
   public InputStream getResourceAsStream(String resName) {
     InputStream fromUrlsClassLoader = urls.getResourceAsStream(resName);
@@ -119,49 +157,92 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
 
   @Override
   protected Class<?> findClass(final String className) throws ClassNotFoundException {
-    if (config.shouldAcquire(className)) {
-      final byte[] origClassBytes = getByteCode(className);
-
-      ClassNode classNode = new ClassNode(Opcodes.ASM4) {
-        @Override
-        public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
-          desc = remapParamType(desc);
-          return super.visitField(access, name, desc, signature, value);
-        }
+    if (shouldAcquire(className)) {
+      byte[] bytes = instrumentedJar == null ? null : instrumentedJar.getClassBytes(className);
+      if (bytes == null) {
+        bytes = getTransformedBytes(className);
+      }
+      ensurePackage(className);
+      return defineClass(className, bytes, 0, bytes.length);
+    } else {
+      throw new IllegalStateException("how did we get here? " + className);
+    }
+  }
 
-        @Override
-        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
-          MethodVisitor methodVisitor = super.visitMethod(access, name, remapParams(desc), signature, exceptions);
-          return new JSRInlinerAdapter(methodVisitor, access, name, desc, signature, exceptions);
-        }
-      };
+  /**
+   * Produce the bytecode which this class loader would define for an acquired class, instrumenting it if needed.
+   *
+   * @param className The fully-qualified class name.
+   * @return The bytecode to define.
+   * @throws ClassNotFoundException If the class can't be found or instrumented.
+   */
+  byte[] getTransformedBytes(final String className) throws ClassNotFoundException {
+    final byte[] origClassBytes = getByteCode(className);
+    final ClassReader classReader = new ClassReader(origClassBytes);
+    typeInfos.putIfAbsent(classReader.getClassName(), new TypeInfo(classReader));
 
-      final ClassReader classReader = new ClassReader(origClassBytes);
-      classReader.accept(classNode, 0);
+    try {
+      ClassInfo classInfo = new ClassInfo(className, readClassHeader(classReader));
+      if (!config.shouldInstrument(classInfo)) {
+        return origClassBytes;
+      }
 
-      classNode.interfaces.add(Type.getInternalName(ShadowedObject.class));
+      // whether a class may have a shadow depends on the classpath, not just the configuration
+      boolean mayBeShadowed = mayBeShadowed(className);
+      String cacheVariant = mayBeShadowed ? "" : "unshadowed";
+      byte[] cachedBytes = instrumentedClassCache == null ? null : instrumentedClassCache.get(origClassBytes, cacheVariant);
+      if (cachedBytes != null) {
+        return cachedBytes;
+      }
 
-      try {
-        byte[] bytes;
-        ClassInfo classInfo = new ClassInfo(className, classNode);
-        if (config.shouldInstrument(classInfo)) {
-          bytes = getInstrumentedBytes(classNode, config.containsStubs(classInfo));
-        } else {
-          bytes = origClassBytes;
-        }
-        ensurePackage(className);
-        return defineClass(className, bytes, 0, bytes.length);
-      } catch (Exception e) {
-        throw new ClassNotFoundException("couldn't load " + className, e);
-      } catch (OutOfMemoryError e) {
-        System.err.println("[ERROR] couldn't load " + className + " in " + this);
-        throw e;
+      byte[] bytes = getInstrumentedBytes(classReader, config.containsStubs(classInfo), mayBeShadowed);
+      if (instrumentedClassCache != null) {
+        instrumentedClassCache.put(origClassBytes, cacheVariant, bytes);
       }
-    } else {
-      throw new IllegalStateException("how did we get here? " + className);
+      return bytes;
+    } catch (Exception e) {
+      throw new ClassNotFoundException("couldn't load " + className, e);
+    } catch (OutOfMemoryError e) {
+      System.err.println("[ERROR] couldn't load " + className + " in " + this);
+      throw e;
     }
   }
 
+  /**
+   * Read only what's needed to decide whether to instrument a class: its access flags, names and annotations.
+   * Fields and methods are skipped, so classes which aren't instrumented are never fully parsed.
+   */
+  private static ClassNode readClassHeader(ClassReader classReader) {
+    ClassNode header = new ClassNode(Opcodes.ASM4) {
+      @Override
+      public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+        return null;
+      }
+
+      @Override
+      public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+        return null;
+      }
+    };
+    classReader.accept(header, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+    return header;
+  }
+
+  /**
+   * Determine if calls to methods of a class are routed through the {@link ClassHandler}, so a shadow can apply.
+   * Without {@link InstrumentationConfiguration#useMinimalInstrumentation() minimal instrumentation} they all are.
+   *
+   * @param className The fully-qualified class name.
+   * @return True if a shadow of the class would be called.
+   */
+  public boolean mayBeShadowed(String className) {
+    if (!config.useMinimalInstrumentation() || config.isShadowedClass(className)) {
+      return true;
+    }
+    String shadowFilename = ShadowMap.convertToShadowName(className).replace('.', '/') + ".class";
+    return urls.getResource(shadowFilename) != null || getParent().getResource(shadowFilename) != null;
+  }
+
   protected byte[] getByteCode(String className) throws ClassNotFoundException {
     String classFilename = className.replace('.', '/') + ".class";
     try (InputStream classBytesStream = getResourceAsStream(classFilename)) {
@@ -179,7 +260,11 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
       String pckgName = className.substring(0, lastDotIndex);
       Package pckg = getPackage(pckgName);
       if (pckg == null) {
-        definePackage(pckgName, null, null, null, null, null, null, null);
+        try {
+          definePackage(pckgName, null, null, null, null, null, null, null);
+        } catch (IllegalArgumentException e) {
+          // another thread defined the package first
+        }
       }
     }
   }
@@ -239,13 +324,20 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
     return value;
   }
 
-  private byte[] getInstrumentedBytes(ClassNode classNode, boolean containsStubs) throws ClassNotFoundException {
-    new ClassInstrumentor(classNode, containsStubs).instrument();
-    ClassWriter writer = new InstrumentingClassWriter(classNode);
-    classNode.accept(writer);
+  private byte[] getInstrumentedBytes(ClassReader classReader, boolean containsStubs, boolean mayBeShadowed) {
+    int version = classReader.readShort(6); // major version
+    ClassWriter writer = new InstrumentingClassWriter(instrumentedVersion(version));
+    classReader.accept(new ClassInstrumentor(writer, containsStubs, mayBeShadowed), 0);
     return writer.toByteArray();
   }
 
+  private int instrumentedVersion(int version) {
+    if (config.useInvokeDynamic() && version < V1_7) {
+      return V1_7; // invokedynamic requires Java 7 bytecode (and thus stack map frames)
+    }
+    return version;
+  }
+
   private static class MyGenerator extends GeneratorAdapter {
     private final boolean isStatic;
     private final String desc;
@@ -358,54 +450,124 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
     return className.replace('.', '/');
   }
 
-  private class ClassInstrumentor {
-    private final ClassNode classNode;
+  /**
+   * Rewrites a class as it's read. Methods are renamed and made private as they stream through, and the
+   * methods which call them are generated once the whole class has been seen.
+   *
+   * Only constructors are collected into {@link MethodNode} trees, since the call to the super constructor has to
+   * be found and moved out of them; native methods are too, as they have no code to stream.
+   */
+  private class ClassInstrumentor extends ClassVisitor {
     private final boolean containsStubs;
-    private final String internalClassName;
-    private final String className;
-    private final Type classType;
-
-    public ClassInstrumentor(ClassNode classNode, boolean containsStubs) {
-      this.classNode = classNode;
+    private final boolean mayBeShadowed;
+    private String internalClassName;
+    private String className;
+    private Type classType;
+    private String superName;
+    private int classAccess;
+    private int originalVersion;
+    private boolean addedClassHandlerDataField;
+    private boolean hasStaticInitializer;
+    private final Set<String> foundMethods = new HashSet<>();
+    private final List<MethodNode> constructors = new ArrayList<>();
+    private final List<MethodNode> nativeMethods = new ArrayList<>();
+    // methods built in tree form, written out when the class ends
+    private final List<MethodNode> methods = new ArrayList<>();
+
+    public ClassInstrumentor(ClassVisitor classVisitor, boolean containsStubs, boolean mayBeShadowed) {
+      super(Opcodes.ASM5, classVisitor);
       this.containsStubs = containsStubs;
+      this.mayBeShadowed = mayBeShadowed;
+    }
 
-      this.internalClassName = classNode.name;
-      this.className = classNode.name.replace('/', '.');
-      this.classType = Type.getObjectType(internalClassName);
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+      this.internalClassName = name;
+      this.className = name.replace('/', '.');
+      this.classType = Type.getObjectType(name);
+      this.superName = superName;
+      this.classAccess = access;
+      this.originalVersion = version;
+
+      access = (access | ACC_PUBLIC) & ~(ACC_PROTECTED | ACC_PRIVATE | ACC_FINAL);
+      String[] shadowedInterfaces = Arrays.copyOf(interfaces, interfaces.length + 1);
+      shadowedInterfaces[interfaces.length] = Type.getInternalName(ShadowedObject.class);
+      super.visit(instrumentedVersion(version), access, name, signature, superName, shadowedInterfaces);
     }
 
-    public void instrument() {
-      makePublic(classNode);
-      classNode.access = classNode.access & ~ACC_FINAL;
+    @Override
+    public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+      addClassHandlerDataField();
+      if (className.equals("android.os.Build$VERSION")) {
+        access &= ~ACC_FINAL;
+      }
+      return super.visitField(access, name, remapParamType(desc), signature, value);
+    }
 
-      Set<String> foundMethods = new HashSet<>();
-      List<MethodNode> methods = new ArrayList<>(classNode.methods);
-      for (MethodNode method : methods) {
-        foundMethods.add(method.name + method.desc);
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+      addClassHandlerDataField();
+      String originalDesc = desc;
+      desc = remapParams(desc);
+      foundMethods.add(name + desc);
+
+      MethodVisitor methodVisitor;
+      if (name.equals("<init>")) {
+        MethodNode constructor = new MethodNode(Opcodes.ASM5, access, name, desc, signature, exceptions);
+        constructors.add(constructor);
+        methodVisitor = constructor;
+      } else if (name.equals("<clinit>")) {
+        hasStaticInitializer = true;
+        methodVisitor = super.visitMethod(access, ShadowConstants.STATIC_INITIALIZER_METHOD_NAME, desc, signature, exceptions);
+      } else if ((access & ACC_SYNTHETIC) != 0 || (access & ACC_ABSTRACT) != 0) {
+        methodVisitor = super.visitMethod(access, name, desc, signature, exceptions);
+      } else if ((access & ACC_NATIVE) != 0) {
+        MethodNode nativeMethod = new MethodNode(Opcodes.ASM5, access, name, desc, signature, exceptions);
+        nativeMethods.add(nativeMethod);
+        methodVisitor = nativeMethod;
+      } else {
+        MethodNode directMethod = new MethodNode(Opcodes.ASM5, access, name, desc, signature, exceptions);
+        makePrivate(directMethod);
+        directMethod.access |= ACC_FINAL;
+        directMethod.name = Shadow.directMethodName(name);
+        methods.add(delegatorMethod(directMethod, name));
+        methodVisitor = super.visitMethod(directMethod.access, directMethod.name, desc, signature, exceptions);
+      }
 
-        filterNasties(method);
+      methodVisitor = new NastyFilter(methodVisitor);
+      if (originalVersion < V1_7) {
+        // JSR and RET are only allowed in older class files
+        methodVisitor = new JSRInlinerAdapter(methodVisitor, access, name, originalDesc, signature, exceptions);
+      }
+      return methodVisitor;
+    }
 
-        if (method.name.equals("<clinit>")) {
-          method.name = ShadowConstants.STATIC_INITIALIZER_METHOD_NAME;
-          classNode.methods.add(generateStaticInitializerNotifierMethod());
-        } else if (method.name.equals("<init>")) {
-          instrumentConstructor(method);
-        } else if (!isSyntheticAccessorMethod(method) && !Modifier.isAbstract(method.access)) {
-          instrumentNormalMethod(method);
-        }
+    @Override
+    public void visitEnd() {
+      addClassHandlerDataField();
+
+      if (hasStaticInitializer) {
+        methods.add(generateStaticInitializerNotifierMethod());
       }
 
-      classNode.fields.add(0, new FieldNode(ACC_PUBLIC, ShadowConstants.CLASS_HANDLER_DATA_FIELD_NAME, OBJECT_DESC, OBJECT_DESC, null));
+      for (MethodNode constructor : constructors) {
+        instrumentConstructor(constructor);
+      }
+
+      for (MethodNode nativeMethod : nativeMethods) {
+        methods.add(nativeMethod);
+        instrumentNormalMethod(nativeMethod);
+      }
 
       if (!foundMethods.contains("<init>()V")) {
         MethodNode defaultConstructor = new MethodNode(ACC_PUBLIC, "<init>", "()V", "()V", null);
         MyGenerator m = new MyGenerator(defaultConstructor);
         m.loadThis();
-        m.visitMethodInsn(INVOKESPECIAL, classNode.superName, "<init>", "()V");
+        m.visitMethodInsn(INVOKESPECIAL, superName, "<init>", "()V");
         m.loadThis();
         m.invokeVirtual(classType, new Method(ROBO_INIT_METHOD_NAME, "()V"));
         m.returnValue();
-        classNode.methods.add(defaultConstructor);
+        methods.add(defaultConstructor);
       }
 
       {
@@ -413,25 +575,25 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
             "<init>", "(" + DIRECT_OBJECT_MARKER_TYPE_DESC + classType.getDescriptor() + ")V", null, null);
         MyGenerator m = new MyGenerator(directCallConstructor);
         m.loadThis();
-        if (classNode.superName.equals("java/lang/Object")) {
-          m.visitMethodInsn(INVOKESPECIAL, classNode.superName, "<init>", "()V");
+        if (superName.equals("java/lang/Object")) {
+          m.visitMethodInsn(INVOKESPECIAL, superName, "<init>", "()V");
         } else {
           m.loadArgs();
-          m.visitMethodInsn(INVOKESPECIAL, classNode.superName,
-              "<init>", "(" + DIRECT_OBJECT_MARKER_TYPE_DESC + "L" + classNode.superName + ";)V");
+          m.visitMethodInsn(INVOKESPECIAL, superName,
+              "<init>", "(" + DIRECT_OBJECT_MARKER_TYPE_DESC + "L" + superName + ";)V");
         }
         m.loadThis();
         m.loadArg(1);
         m.putField(classType, ShadowConstants.CLASS_HANDLER_DATA_FIELD_NAME, OBJECT_TYPE);
         m.returnValue();
-        classNode.methods.add(directCallConstructor);
+        methods.add(directCallConstructor);
       }
 
       if (!isEnum()) {
-        instrumentSpecial(foundMethods, "equals", "(Ljava/lang/Object;)Z");
-        instrumentSpecial(foundMethods, "hashCode", "()I");
+        instrumentSpecial("equals", "(Ljava/lang/Object;)Z");
+        instrumentSpecial("hashCode", "()I");
       }
-      instrumentSpecial(foundMethods, "toString", "()Ljava/lang/String;");
+      instrumentSpecial("toString", "()Ljava/lang/String;");
 
       {
         MethodNode initMethodNode = new MethodNode(ACC_PROTECTED, ROBO_INIT_METHOD_NAME, "()V", null, null);
@@ -446,7 +608,7 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
         m.putField(classType, ShadowConstants.CLASS_HANDLER_DATA_FIELD_NAME, OBJECT_TYPE);
         m.mark(alreadyInitialized);
         m.returnValue();
-        classNode.methods.add(initMethodNode);
+        methods.add(initMethodNode);
       }
 
       {
@@ -456,29 +618,33 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
         m.getField(classType, ShadowConstants.CLASS_HANDLER_DATA_FIELD_NAME, OBJECT_TYPE);  // contents of __robo_data__
         m.returnValue();
         m.endMethod();
-        classNode.methods.add(initMethodNode);
+        methods.add(initMethodNode);
       }
 
-      if (className.equals("android.os.Build$VERSION")) {
-        for (Object field : classNode.fields) {
-          FieldNode fieldNode = (FieldNode) field;
-          fieldNode.access &= ~(Modifier.FINAL);
-        }
+      for (MethodNode method : methods) {
+        method.accept(cv);
       }
+      super.visitEnd();
     }
 
-    private boolean isSyntheticAccessorMethod(MethodNode method) {
-      return (method.access & ACC_SYNTHETIC) != 0;
+    /**
+     * Write the field holding the class handler's data before any of the class's own fields.
+     */
+    private void addClassHandlerDataField() {
+      if (!addedClassHandlerDataField) {
+        addedClassHandlerDataField = true;
+        super.visitField(ACC_PUBLIC, ShadowConstants.CLASS_HANDLER_DATA_FIELD_NAME, OBJECT_DESC, OBJECT_DESC, null).visitEnd();
+      }
     }
 
-    private void instrumentSpecial(Set<String> foundMethods, final String methodName, String methodDesc) {
+    private void instrumentSpecial(final String methodName, String methodDesc) {
       if (!foundMethods.contains(methodName + methodDesc)) {
         MethodNode methodNode = new MethodNode(ACC_PUBLIC, methodName, methodDesc, null, null);
         MyGenerator m = new MyGenerator(methodNode);
         m.invokeMethod("java/lang/Object", methodNode);
         m.returnValue();
         m.endMethod();
-        classNode.methods.add(methodNode);
+        methods.add(methodNode);
         instrumentNormalMethod(methodNode);
       }
     }
@@ -491,14 +657,15 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
 
         MyGenerator m = new MyGenerator(method);
         m.loadThis();
-        m.visitMethodInsn(INVOKESPECIAL, classNode.superName, "<init>", "()V");
+        m.visitMethodInsn(INVOKESPECIAL, superName, "<init>", "()V");
         m.returnValue();
         m.endMethod();
       }
 
       InsnList removedInstructions = extractCallToSuperConstructor(method);
       method.name = Shadow.directMethodName(ShadowConstants.CONSTRUCTOR_METHOD_NAME);
-      classNode.methods.add(redirectorMethod(method, ShadowConstants.CONSTRUCTOR_METHOD_NAME));
+      methods.add(method);
+      methods.add(redirectorMethod(method, ShadowConstants.CONSTRUCTOR_METHOD_NAME));
 
       String[] exceptions = exceptionArray(method);
       MethodNode methodNode = new MethodNode(method.access, "<init>", method.desc, method.signature, exceptions);
@@ -509,10 +676,10 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
 
       m.loadThis();
       m.invokeVirtual(classType, new Method(ROBO_INIT_METHOD_NAME, "()V"));
-      generateCallToClassHandler(method, ShadowConstants.CONSTRUCTOR_METHOD_NAME, m);
+      generateCall(method, ShadowConstants.CONSTRUCTOR_METHOD_NAME, m);
 
       m.endMethod();
-      classNode.methods.add(methodNode);
+      methods.add(methodNode);
     }
 
     private InsnList extractCallToSuperConstructor(MethodNode ctor) {
@@ -533,7 +700,7 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
 
           case INVOKESPECIAL:
             MethodInsnNode mnode = (MethodInsnNode) node;
-            if (mnode.owner.equals(internalClassName) || mnode.owner.equals(classNode.superName)) {
+            if (mnode.owner.equals(internalClassName) || mnode.owner.equals(superName)) {
               assert mnode.name.equals("<init>");
 
               // remove all instructions in the range startIndex..i, from aload_0 to invokespecial <init>
@@ -571,18 +738,25 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
 
       String originalName = method.name;
       method.name = Shadow.directMethodName(originalName);
+      methods.add(delegatorMethod(method, originalName));
+    }
 
+    /**
+     * @param method The renamed original method.
+     * @param originalName The name callers use, which the generated method takes over.
+     * @return A method which asks the class handler what to do, or calls the original method.
+     */
+    private MethodNode delegatorMethod(MethodNode method, String originalName) {
       MethodNode delegatorMethodNode = new MethodNode(method.access, originalName, method.desc, method.signature, exceptionArray(method));
       delegatorMethodNode.access &= ~(ACC_NATIVE | ACC_ABSTRACT | ACC_FINAL);
       makePublic(delegatorMethodNode);
 
       MyGenerator m = new MyGenerator(delegatorMethodNode);
 
-      generateCallToClassHandler(method, originalName, m);
+      generateCall(method, originalName, m);
 
       m.endMethod();
-
-      classNode.methods.add(delegatorMethodNode);
+      return delegatorMethodNode;
     }
 
     private MethodNode redirectorMethod(MethodNode method, String newName) {
@@ -599,160 +773,143 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
       return ((List<String>) method.exceptions).toArray(new String[method.exceptions.size()]);
     }
 
-    private void filterNasties(MethodNode callingMethod) {
-      ListIterator<AbstractInsnNode> instructions = callingMethod.instructions.iterator();
-      while (instructions.hasNext()) {
-        AbstractInsnNode node = instructions.next();
-
-        switch (node.getOpcode()) {
-          case NEW:
-            TypeInsnNode newInsnNode = (TypeInsnNode) node;
-            newInsnNode.desc = remapType(newInsnNode.desc);
-            break;
+    /**
+     * Remaps types and replaces calls which can't work on the JVM as a method's instructions stream through.
+     */
+    private class NastyFilter extends MethodVisitor {
+      NastyFilter(MethodVisitor methodVisitor) {
+        super(Opcodes.ASM5, methodVisitor);
+      }
 
-          case GETFIELD:
-          case PUTFIELD:
-          case GETSTATIC:
-          case PUTSTATIC:
-            FieldInsnNode fieldInsnNode = (FieldInsnNode) node;
-            fieldInsnNode.desc = remapType(fieldInsnNode.desc); // todo test
-            break;
+      @Override
+      public void visitTypeInsn(int opcode, String type) {
+        super.visitTypeInsn(opcode, opcode == NEW ? remapType(type) : type);
+      }
 
-          case INVOKESTATIC:
-          case INVOKEDYNAMIC:
-          case INVOKEINTERFACE:
-          case INVOKESPECIAL:
-          case INVOKEVIRTUAL:
-            MethodInsnNode targetMethod = (MethodInsnNode) node;
-            targetMethod.desc = remapParams(targetMethod.desc);
-            if (isGregorianCalendar(targetMethod)) {
-              replaceNastyGregorianCalendarConstructor(instructions, targetMethod);
-            } else if (shouldIntercept(targetMethod)) {
-              interceptNastyMethod(instructions, targetMethod);
-            }
-            break;
+      @Override
+      public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+        super.visitFieldInsn(opcode, owner, name, remapType(desc)); // todo test
+      }
 
-          default:
-            break;
+      @Override
+      public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+        desc = remapParams(desc);
+        if (isGregorianCalendar(owner, name, desc)) {
+          replaceNastyGregorianCalendarConstructor(owner, name, itf);
+        } else if (shouldIntercept(owner, name)) {
+          interceptNastyMethod(opcode, owner, name, desc);
+        } else {
+          super.visitMethodInsn(opcode, owner, name, desc, itf);
         }
       }
-    }
-
-    private boolean isGregorianCalendar(MethodInsnNode targetMethod) {
-      return targetMethod.owner.equals("java/util/GregorianCalendar") && targetMethod.name.equals("<init>") && targetMethod.desc.equals("(Z)V");
-    }
 
-    private void replaceNastyGregorianCalendarConstructor(ListIterator<AbstractInsnNode> instructions, MethodInsnNode targetMethod) {
-      // Remove the call to GregorianCalendar(boolean)
-      instructions.remove();
-
-      // Discard the already-pushed parameter for GregorianCalendar(boolean)
-      instructions.add(new InsnNode(POP));
+      private boolean isGregorianCalendar(String owner, String name, String desc) {
+        return owner.equals("java/util/GregorianCalendar") && name.equals("<init>") && desc.equals("(Z)V");
+      }
 
-      // Add parameters values for calling GregorianCalendar(int, int, int)
-      instructions.add(new InsnNode(ICONST_0));
-      instructions.add(new InsnNode(ICONST_0));
-      instructions.add(new InsnNode(ICONST_0));
+      private void replaceNastyGregorianCalendarConstructor(String owner, String name, boolean itf) {
+        // Discard the already-pushed parameter for GregorianCalendar(boolean)
+        super.visitInsn(POP);
 
-      // Call GregorianCalendar(int, int, int)
-      instructions.add(new MethodInsnNode(INVOKESPECIAL, targetMethod.owner, targetMethod.name, "(III)V", targetMethod.itf));
-    }
+        // Add parameters values for calling GregorianCalendar(int, int, int)
+        super.visitInsn(ICONST_0);
+        super.visitInsn(ICONST_0);
+        super.visitInsn(ICONST_0);
 
-    private void interceptNastyMethod(ListIterator<AbstractInsnNode> instructions, MethodInsnNode targetMethod) {
-      boolean isStatic = targetMethod.getOpcode() == INVOKESTATIC;
-
-      instructions.remove(); // remove the method invocation
-
-      Type[] argumentTypes = Type.getArgumentTypes(targetMethod.desc);
-
-      instructions.add(new LdcInsnNode(argumentTypes.length));
-      instructions.add(new TypeInsnNode(ANEWARRAY, "java/lang/Object"));
-
-      // first, move any arguments into an Object[]
-      for (int i = argumentTypes.length - 1; i >= 0 ; i--) {
-        Type type = argumentTypes[i];
-        int argWidth = type.getSize();
-
-        if (argWidth == 1) {                       // A B C []
-          instructions.add(new InsnNode(DUP_X1));  // A B [] C []
-          instructions.add(new InsnNode(SWAP));    // A B [] [] C
-          instructions.add(new LdcInsnNode(i));    // A B [] [] C 2
-          instructions.add(new InsnNode(SWAP));    // A B [] [] 2 C
-          box(type, instructions);                 // A B [] [] 2 (C)
-          instructions.add(new InsnNode(AASTORE)); // A B [(C)]
-        } else if (argWidth == 2) {                // A B _C_ []
-          instructions.add(new InsnNode(DUP_X2));  // A B [] _C_ []
-          instructions.add(new InsnNode(DUP_X2));  // A B [] [] _C_ []
-          instructions.add(new InsnNode(POP));     // A B [] [] _C_
-          box(type, instructions);                 // A B [] [] (C)
-          instructions.add(new LdcInsnNode(i));    // A B [] [] (C) 2
-          instructions.add(new InsnNode(SWAP));    // A B [] [] 2 (C)
-          instructions.add(new InsnNode(AASTORE)); // A B [(C)]
-        }
+        // Call GregorianCalendar(int, int, int)
+        super.visitMethodInsn(INVOKESPECIAL, owner, name, "(III)V", itf);
       }
 
-      if (isStatic) { // []
-        instructions.add(new InsnNode(Opcodes.ACONST_NULL)); // [] null
-        instructions.add(new InsnNode(Opcodes.SWAP));        // null []
-      }
-
-      // instance []
-      instructions.add(new LdcInsnNode(targetMethod.owner + "/" + targetMethod.name + targetMethod.desc)); // target method signature
-      // instance [] signature
-      instructions.add(new InsnNode(DUP_X2));       // signature instance [] signature
-      instructions.add(new InsnNode(POP));          // signature instance []
+      private void interceptNastyMethod(int opcode, String owner, String name, String desc) {
+        boolean isStatic = opcode == INVOKESTATIC;
+
+        Type[] argumentTypes = Type.getArgumentTypes(desc);
+
+        super.visitLdcInsn(argumentTypes.length);
+        super.visitTypeInsn(ANEWARRAY, "java/lang/Object");
+
+        // first, move any arguments into an Object[]
+        for (int i = argumentTypes.length - 1; i >= 0 ; i--) {
+          Type type = argumentTypes[i];
+          int argWidth = type.getSize();
+
+          if (argWidth == 1) {                       // A B C []
+            super.visitInsn(DUP_X1);                 // A B [] C []
+            super.visitInsn(SWAP);                   // A B [] [] C
+            super.visitLdcInsn(i);                   // A B [] [] C 2
+            super.visitInsn(SWAP);                   // A B [] [] 2 C
+            box(type, mv);                           // A B [] [] 2 (C)
+            super.visitInsn(AASTORE);                // A B [(C)]
+          } else if (argWidth == 2) {                // A B _C_ []
+            super.visitInsn(DUP_X2);                 // A B [] _C_ []
+            super.visitInsn(DUP_X2);                 // A B [] [] _C_ []
+            super.visitInsn(POP);                    // A B [] [] _C_
+            box(type, mv);                           // A B [] [] (C)
+            super.visitLdcInsn(i);                   // A B [] [] (C) 2
+            super.visitInsn(SWAP);                   // A B [] [] 2 (C)
+            super.visitInsn(AASTORE);                // A B [(C)]
+          }
+        }
 
-      instructions.add(new LdcInsnNode(classType)); // signature instance [] class
-      instructions.add(new MethodInsnNode(INVOKESTATIC,
-          Type.getType(RobolectricInternals.class).getInternalName(), "intercept",
-          "(Ljava/lang/String;Ljava/lang/Object;[Ljava/lang/Object;Ljava/lang/Class;)Ljava/lang/Object;"));
+        if (isStatic) { // []
+          super.visitInsn(Opcodes.ACONST_NULL); // [] null
+          super.visitInsn(Opcodes.SWAP);        // null []
+        }
 
-      final Type returnType = Type.getReturnType(targetMethod.desc);
-      switch (returnType.getSort()) {
-        case ARRAY:
-        case OBJECT:
-          instructions.add(new TypeInsnNode(CHECKCAST, remapType(returnType.getInternalName())));
-          break;
-        case VOID:
-          instructions.add(new InsnNode(POP));
-          break;
-        case Type.LONG:
-          instructions.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Long.class)));
-          instructions.add(new MethodInsnNode(INVOKEVIRTUAL, Type.getInternalName(Long.class), "longValue", Type.getMethodDescriptor(Type.LONG_TYPE), false));
-          break;
-        case Type.FLOAT:
-          instructions.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Float.class)));
-          instructions.add(new MethodInsnNode(INVOKEVIRTUAL, Type.getInternalName(Float.class), "floatValue", Type.getMethodDescriptor(Type.FLOAT_TYPE), false));
-          break;
-        case Type.DOUBLE:
-          instructions.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Double.class)));
-          instructions.add(new MethodInsnNode(INVOKEVIRTUAL, Type.getInternalName(Double.class), "doubleValue", Type.getMethodDescriptor(Type.DOUBLE_TYPE), false));
-          break;
-        case Type.BOOLEAN:
-          instructions.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Boolean.class)));
-          instructions.add(new MethodInsnNode(INVOKEVIRTUAL, Type.getInternalName(Boolean.class), "booleanValue", Type.getMethodDescriptor(Type.BOOLEAN_TYPE), false));
-          break;
-        case Type.INT:
-          instructions.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Integer.class)));
-          instructions.add(new MethodInsnNode(INVOKEVIRTUAL, Type.getInternalName(Integer.class), "intValue", Type.getMethodDescriptor(Type.INT_TYPE), false));
-          break;
-        case Type.SHORT:
-          instructions.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Short.class)));
-          instructions.add(new MethodInsnNode(INVOKEVIRTUAL, Type.getInternalName(Short.class), "shortValue", Type.getMethodDescriptor(Type.SHORT_TYPE), false));
-          break;
-        case Type.BYTE:
-          instructions.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Byte.class)));
-          instructions.add(new MethodInsnNode(INVOKEVIRTUAL, Type.getInternalName(Byte.class), "byteValue", Type.getMethodDescriptor(Type.BYTE_TYPE), false));
-          break;
-        default:
-          throw new RuntimeException("Not implemented: " + getClass().getName() + " cannot intercept methods with return type " + returnType.getClassName());
+        // instance []
+        super.visitLdcInsn(owner + "/" + name + desc); // target method signature
+        // instance [] signature
+        super.visitInsn(DUP_X2);       // signature instance [] signature
+        super.visitInsn(POP);          // signature instance []
+
+        super.visitLdcInsn(classType); // signature instance [] class
+        super.visitMethodInsn(INVOKESTATIC,
+            Type.getType(RobolectricInternals.class).getInternalName(), "intercept",
+            "(Ljava/lang/String;Ljava/lang/Object;[Ljava/lang/Object;Ljava/lang/Class;)Ljava/lang/Object;", false);
+
+        final Type returnType = Type.getReturnType(desc);
+        switch (returnType.getSort()) {
+          case ARRAY:
+          case OBJECT:
+            super.visitTypeInsn(CHECKCAST, remapType(returnType.getInternalName()));
+            break;
+          case VOID:
+            super.visitInsn(POP);
+            break;
+          case Type.LONG:
+            super.visitTypeInsn(CHECKCAST, Type.getInternalName(Long.class));
+            super.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(Long.class), "longValue", Type.getMethodDescriptor(Type.LONG_TYPE), false);
+            break;
+          case Type.FLOAT:
+            super.visitTypeInsn(CHECKCAST, Type.getInternalName(Float.class));
+            super.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(Float.class), "floatValue", Type.getMethodDescriptor(Type.FLOAT_TYPE), false);
+            break;
+          case Type.DOUBLE:
+            super.visitTypeInsn(CHECKCAST, Type.getInternalName(Double.class));
+            super.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(Double.class), "doubleValue", Type.getMethodDescriptor(Type.DOUBLE_TYPE), false);
+            break;
+          case Type.BOOLEAN:
+            super.visitTypeInsn(CHECKCAST, Type.getInternalName(Boolean.class));
+            super.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(Boolean.class), "booleanValue", Type.getMethodDescriptor(Type.BOOLEAN_TYPE), false);
+            break;
+          case Type.INT:
+            super.visitTypeInsn(CHECKCAST, Type.getInternalName(Integer.class));
+            super.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(Integer.class), "intValue", Type.getMethodDescriptor(Type.INT_TYPE), false);
+            break;
+          case Type.SHORT:
+            super.visitTypeInsn(CHECKCAST, Type.getInternalName(Short.class));
+            super.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(Short.class), "shortValue", Type.getMethodDescriptor(Type.SHORT_TYPE), false);
+            break;
+          case Type.BYTE:
+            super.visitTypeInsn(CHECKCAST, Type.getInternalName(Byte.class));
+            super.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(Byte.class), "byteValue", Type.getMethodDescriptor(Type.BYTE_TYPE), false);
+            break;
+          default:
+            throw new RuntimeException("Not implemented: " + getClass().getName() + " cannot intercept methods with return type " + returnType.getClassName());
+        }
       }
     }
 
-    private void makePublic(ClassNode clazz) {
-      clazz.access = (clazz.access | ACC_PUBLIC) & ~(ACC_PROTECTED | ACC_PRIVATE);
-    }
-
     private void makePublic(MethodNode method) {
       method.access = (method.access | ACC_PUBLIC) & ~(ACC_PROTECTED | ACC_PRIVATE);
     }
@@ -771,6 +928,38 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
       return methodNode;
     }
 
+    private void generateCall(MethodNode originalMethod, String originalMethodName, MyGenerator m) {
+      if (mayBeShadowed) {
+        generateCallToClassHandler(originalMethod, originalMethodName, m);
+      } else {
+        generateDirectCall(originalMethod, originalMethodName, m);
+      }
+    }
+
+    /**
+     * Call the original method without asking the class handler, for classes which have no shadow.
+     */
+    private void generateDirectCall(MethodNode originalMethod, String originalMethodName, MyGenerator m) {
+      int exceptionLocalVar = m.newLocal(THROWABLE_TYPE);
+
+      boolean isNormalInstanceMethod = !m.isStatic && !originalMethodName.equals(ShadowConstants.CONSTRUCTOR_METHOD_NAME);
+      if (isNormalInstanceMethod) {
+        generateProxyCall(originalMethod, m, exceptionLocalVar);
+      }
+
+      TryCatch tryCatchForDirect = m.tryStart(THROWABLE_TYPE);
+      m.invokeMethod(internalClassName, originalMethod.name, originalMethod.desc);
+      tryCatchForDirect.end();
+      m.returnValue();
+
+      // catch(Throwable)
+      tryCatchForDirect.handler();
+      m.storeLocal(exceptionLocalVar);
+      m.loadLocal(exceptionLocalVar);
+      m.invokeStatic(ROBOLECTRIC_INTERNALS_TYPE, HANDLE_EXCEPTION_METHOD);
+      m.throwException();
+    }
+
     private void generateCallToClassHandler(MethodNode originalMethod, String originalMethodName, MyGenerator m) {
       int planLocalVar = m.newLocal(PLAN_TYPE);
       int exceptionLocalVar = m.newLocal(THROWABLE_TYPE);
@@ -781,40 +970,20 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
 
       // maybe perform proxy call...
       if (isNormalInstanceMethod) {
-        Label notInstanceOfThis = new Label();
-
-        m.loadThis();                                         // this
-        m.getField(classType, ShadowConstants.CLASS_HANDLER_DATA_FIELD_NAME, OBJECT_TYPE);  // contents of __robo_data__
-        m.instanceOf(classType);                              // __robo_data__, is instance of same class?
-        m.visitJumpInsn(IFEQ, notInstanceOfThis);             // jump if no (is not instance)
-
-        TryCatch tryCatchForProxyCall = m.tryStart(THROWABLE_TYPE);
-        m.loadThis();                                         // this
-        m.getField(classType, ShadowConstants.CLASS_HANDLER_DATA_FIELD_NAME, OBJECT_TYPE);  // contents of __robo_data__
-        m.checkCast(classType);                               // __robo_data__ but cast to my class
-        m.loadArgs();                                         // __robo_data__ instance, [args]
-
-        m.visitMethodInsn(INVOKESPECIAL, internalClassName, originalMethod.name, originalMethod.desc);
-        tryCatchForProxyCall.end();
-
-        m.returnValue();
-
-        // catch(Throwable)
-        tryCatchForProxyCall.handler();
-        m.storeLocal(exceptionLocalVar);
-        m.loadLocal(exceptionLocalVar);
-        m.invokeStatic(ROBOLECTRIC_INTERNALS_TYPE, HANDLE_EXCEPTION_METHOD);
-        m.throwException();
-
-        // callClassHandler...
-        m.mark(notInstanceOfThis);
+        generateProxyCall(originalMethod, m, exceptionLocalVar);
       }
 
-      // prepare for call to classHandler.methodInvoked(String signature, boolean isStatic)
-      m.push(classType.getInternalName() + "/" + originalMethodName + originalMethod.desc);
-      m.push(m.isStatic());
-      m.push(classType);                                         // my class
-      m.invokeStatic(ROBOLECTRIC_INTERNALS_TYPE, METHOD_INVOKED_METHOD);
+      String signature = classType.getInternalName() + "/" + originalMethodName + originalMethod.desc;
+      if (config.useInvokeDynamic()) {
+        // call site is linked to the plan for the current classHandler
+        m.invokeDynamic(originalMethodName, "()" + PLAN_TYPE.getDescriptor(), METHOD_INVOKED_BOOTSTRAP, signature, m.isStatic() ? 1 : 0);
+      } else {
+        // prepare for call to classHandler.methodInvoked(String signature, boolean isStatic)
+        m.push(signature);
+        m.push(m.isStatic());
+        m.push(classType);                                         // my class
+        m.invokeStatic(ROBOLECTRIC_INTERNALS_TYPE, METHOD_INVOKED_METHOD);
+      }
       m.storeLocal(planLocalVar);
 
       m.loadLocal(planLocalVar); // plan
@@ -889,32 +1058,66 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
       m.returnValue();
     }
 
+    /**
+     * If this object is a proxy made by {@code Shadow.directlyOn(Object, Class)}, call the original method on
+     * the real object it stands in for.
+     */
+    private void generateProxyCall(MethodNode originalMethod, MyGenerator m, int exceptionLocalVar) {
+      Label notInstanceOfThis = new Label();
+
+      m.loadThis();                                         // this
+      m.getField(classType, ShadowConstants.CLASS_HANDLER_DATA_FIELD_NAME, OBJECT_TYPE);  // contents of __robo_data__
+      m.instanceOf(classType);                              // __robo_data__, is instance of same class?
+      m.visitJumpInsn(IFEQ, notInstanceOfThis);             // jump if no (is not instance)
+
+      TryCatch tryCatchForProxyCall = m.tryStart(THROWABLE_TYPE);
+      m.loadThis();                                         // this
+      m.getField(classType, ShadowConstants.CLASS_HANDLER_DATA_FIELD_NAME, OBJECT_TYPE);  // contents of __robo_data__
+      m.checkCast(classType);                               // __robo_data__ but cast to my class
+      m.loadArgs();                                         // __robo_data__ instance, [args]
+
+      m.visitMethodInsn(INVOKESPECIAL, internalClassName, originalMethod.name, originalMethod.desc);
+      tryCatchForProxyCall.end();
+
+      m.returnValue();
+
+      // catch(Throwable)
+      tryCatchForProxyCall.handler();
+      m.storeLocal(exceptionLocalVar);
+      m.loadLocal(exceptionLocalVar);
+      m.invokeStatic(ROBOLECTRIC_INTERNALS_TYPE, HANDLE_EXCEPTION_METHOD);
+      m.throwException();
+
+      // not a proxy, carry on...
+      m.mark(notInstanceOfThis);
+    }
+
     private boolean isEnum() {
-      return (classNode.access & ACC_ENUM) != 0;
+      return (classAccess & ACC_ENUM) != 0;
     }
   }
 
-  public static void box(final Type type, ListIterator<AbstractInsnNode> instructions) {
+  public static void box(final Type type, MethodVisitor methodVisitor) {
     if (type.getSort() == Type.OBJECT || type.getSort() == Type.ARRAY) {
       return;
     }
 
     if (type == Type.VOID_TYPE) {
-      instructions.add(new InsnNode(ACONST_NULL));
+      methodVisitor.visitInsn(ACONST_NULL);
     } else {
       Type boxed = getBoxedType(type);
-      instructions.add(new TypeInsnNode(NEW, boxed.getInternalName()));
+      methodVisitor.visitTypeInsn(NEW, boxed.getInternalName());
       if (type.getSize() == 2) {
         // Pp -> Ppo -> oPpo -> ooPpo -> ooPp -> o
-        instructions.add(new InsnNode(DUP_X2));
-        instructions.add(new InsnNode(DUP_X2));
-        instructions.add(new InsnNode(POP));
+        methodVisitor.visitInsn(DUP_X2);
+        methodVisitor.visitInsn(DUP_X2);
+        methodVisitor.visitInsn(POP);
       } else {
         // p -> po -> opo -> oop -> o
-        instructions.add(new InsnNode(DUP_X1));
-        instructions.add(new InsnNode(SWAP));
+        methodVisitor.visitInsn(DUP_X1);
+        methodVisitor.visitInsn(SWAP);
       }
-      instructions.add(new MethodInsnNode(INVOKESPECIAL, boxed.getInternalName(), "<init>", "(" + type.getDescriptor() + ")V"));
+      methodVisitor.visitMethodInsn(INVOKESPECIAL, boxed.getInternalName(), "<init>", "(" + type.getDescriptor() + ")V", false);
     }
   }
 
@@ -940,10 +1143,10 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
     return type;
   }
 
-  private boolean shouldIntercept(MethodInsnNode targetMethod) {
-    if (targetMethod.name.equals("<init>")) return false; // sorry, can't strip out calls to super() in constructor
-    return methodsToIntercept.contains(new InstrumentationConfiguration.MethodRef(targetMethod.owner, targetMethod.name))
-        || methodsToIntercept.contains(new InstrumentationConfiguration.MethodRef(targetMethod.owner, "*"));
+  private boolean shouldIntercept(String owner, String name) {
+    if (name.equals("<init>")) return false; // sorry, can't strip out calls to super() in constructor
+    return methodsToIntercept.contains(new InstrumentationConfiguration.MethodRef(owner, name))
+        || methodsToIntercept.contains(new InstrumentationConfiguration.MethodRef(owner, "*"));
   }
 
   /**
@@ -960,8 +1163,8 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
      * also because ASM's stack map frame handling doesn't support the JSR and RET instructions
      * present in legacy bytecode.
      */
-    public InstrumentingClassWriter(ClassNode classNode) {
-      super(classNode.version >= 51 ? ClassWriter.COMPUTE_FRAMES : ClassWriter.COMPUTE_MAXS);
+    public InstrumentingClassWriter(int version) {
+      super(version >= 51 ? ClassWriter.COMPUTE_FRAMES : ClassWriter.COMPUTE_MAXS);
     }
 
     @Override
@@ -978,20 +1181,20 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
     @Override
     protected String getCommonSuperClass(final String type1, final String type2) {
       try {
-        ClassReader info1 = typeInfo(type1);
-        ClassReader info2 = typeInfo(type2);
-        if ((info1.getAccess() & Opcodes.ACC_INTERFACE) != 0) {
+        TypeInfo info1 = typeInfo(type1);
+        TypeInfo info2 = typeInfo(type2);
+        if (info1.isInterface()) {
           if (typeImplements(type2, info2, type1)) {
             return type1;
           }
-          if ((info2.getAccess() & Opcodes.ACC_INTERFACE) != 0) {
+          if (info2.isInterface()) {
             if (typeImplements(type1, info1, type2)) {
               return type2;
             }
           }
           return "java/lang/Object";
         }
-        if ((info2.getAccess() & Opcodes.ACC_INTERFACE) != 0) {
+        if (info2.isInterface()) {
           if (typeImplements(type1, info1, type2)) {
             return type2;
           } else {
@@ -1026,19 +1229,19 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
       }
     }
 
-    private StringBuilder typeAncestors(String type, ClassReader info) throws IOException {
+    private StringBuilder typeAncestors(String type, TypeInfo info) throws IOException {
       StringBuilder b = new StringBuilder();
       while (!"java/lang/Object".equals(type)) {
         b.append(';').append(type);
-        type = info.getSuperName();
+        type = info.superName;
         info = typeInfo(type);
       }
       return b;
     }
 
-    private boolean typeImplements(String type, ClassReader info, String itf) throws IOException {
+    private boolean typeImplements(String type, TypeInfo info, String itf) throws IOException {
       while (!"java/lang/Object".equals(type)) {
-        String[] itfs = info.getInterfaces();
+        String[] itfs = info.interfaces;
         for (String itf2 : itfs) {
           if (itf2.equals(itf)) {
             return true;
@@ -1049,16 +1252,50 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
             return true;
           }
         }
-        type = info.getSuperName();
+        type = info.superName;
         info = typeInfo(type);
       }
       return false;
     }
+  }
 
-    private ClassReader typeInfo(final String type) throws IOException {
+  /**
+   * Look up the superclass and interfaces of a type, reading its class file only the first time it's asked for.
+   * Classes this loader has already read are recorded as they're instrumented.
+   */
+  TypeInfo typeInfo(final String type) throws IOException {
+    TypeInfo typeInfo = typeInfos.get(type);
+    if (typeInfo == null) {
       try (InputStream is = getResourceAsStream(type + ".class")) {
-        return new ClassReader(is);
+        if (is == null) {
+          throw new IOException("Class not found: " + type);
+        }
+        typeInfo = new TypeInfo(new ClassReader(is));
+      }
+      TypeInfo existing = typeInfos.putIfAbsent(type, typeInfo);
+      if (existing != null) {
+        typeInfo = existing;
       }
     }
+    return typeInfo;
+  }
+
+  /**
+   * The parts of a class file needed to compute stack map frames.
+   */
+  static class TypeInfo {
+    final int access;
+    final String superName;
+    final String[] interfaces;
+
+    TypeInfo(ClassReader classReader) {
+      this.access = classReader.getAccess();
+      this.superName = classReader.getSuperName();
+      this.interfaces = classReader.getInterfaces();
+    }
+
+    boolean isInterface() {
+      return (access & Opcodes.ACC_INTERFACE) != 0;
+    }
   }
 }
@@ -0,0 +1,72 @@
+package org.robolectric.internal.bytecode;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.lang.invoke.SwitchPoint;
+
+/**
+ * Bootstrap for the {@code invokedynamic} call sites emitted by {@link InstrumentingClassLoader} when
+ * {@link InstrumentationConfiguration#useInvokeDynamic()} is enabled.
+ *
+ * Each call site resolves its {@link ClassHandler.Plan} once and links to it as a constant, guarded by a
+ * {@link SwitchPoint} which is invalidated whenever {@link RobolectricInternals#setClassHandler(ClassHandler)}
+ * installs a different class handler.
+ */
+public class InvokeDynamicSupport {
+  private static final MethodHandle RELINK;
+  private static SwitchPoint classHandlerSwitchPoint = new SwitchPoint();
+
+  static {
+    try {
+      RELINK = MethodHandles.lookup().findVirtual(PlanCallSite.class, "relink", MethodType.methodType(ClassHandler.Plan.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @SuppressWarnings("UnusedDeclaration")
+  public static CallSite bootstrapMethodInvoked(MethodHandles.Lookup caller, String name, MethodType type, String signature, int isStatic) {
+    PlanCallSite callSite = new PlanCallSite(type, signature, isStatic != 0, caller.lookupClass());
+    callSite.setTarget(RELINK.bindTo(callSite));
+    return callSite;
+  }
+
+  static void classHandlerChanged() {
+    SwitchPoint oldSwitchPoint;
+    synchronized (InvokeDynamicSupport.class) {
+      oldSwitchPoint = classHandlerSwitchPoint;
+      classHandlerSwitchPoint = new SwitchPoint();
+    }
+    SwitchPoint.invalidateAll(new SwitchPoint[] { oldSwitchPoint });
+  }
+
+  private static synchronized SwitchPoint currentSwitchPoint() {
+    return classHandlerSwitchPoint;
+  }
+
+  static class PlanCallSite extends MutableCallSite {
+    private final String signature;
+    private final boolean isStatic;
+    private final Class<?> theClass;
+
+    PlanCallSite(MethodType type, String signature, boolean isStatic, Class<?> theClass) {
+      super(type);
+      this.signature = signature;
+      this.isStatic = isStatic;
+      this.theClass = theClass;
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    ClassHandler.Plan relink() {
+      // read the switch point first, so a class handler change during plan calculation forces another relink
+      SwitchPoint switchPoint = currentSwitchPoint();
+      ClassHandler.Plan plan = RobolectricInternals.methodInvoked(signature, isStatic, theClass);
+      MethodHandle planConstant = MethodHandles.constant(ClassHandler.Plan.class, plan);
+      setTarget(switchPoint.guardWithTest(planConstant, RELINK.bindTo(this)));
+      return plan;
+    }
+  }
+}
@@ -8,6 +8,14 @@ public class RobolectricInternals {
   @SuppressWarnings("UnusedDeclaration")
   private static ClassHandler classHandler; // initialized via magic by SdkEnvironment
 
+  @SuppressWarnings("UnusedDeclaration")
+  public static void setClassHandler(ClassHandler newClassHandler) {
+    if (classHandler != newClassHandler) {
+      classHandler = newClassHandler;
+      InvokeDynamicSupport.classHandlerChanged();
+    }
+  }
+
   @SuppressWarnings("UnusedDeclaration")
   public static void classInitializing(Class clazz) throws Exception {
     classHandler.classInitializing(clazz);
@@ -1,6 +1,8 @@
 package org.robolectric.internal.bytecode;
 
 import org.robolectric.annotation.Implements;
+import org.robolectric.internal.IndexedShadowProvider;
+import org.robolectric.internal.ShadowProvider;
 
 import java.util.Collection;
 import java.util.Collections;
@@ -10,13 +12,19 @@ import java.util.Map;
 import java.util.Set;
 
 public class ShadowMap {
-  public static final ShadowMap EMPTY = new ShadowMap(Collections.<String, ShadowConfig>emptyMap());
+  public static final ShadowMap EMPTY = new ShadowMap(Collections.<String, ShadowConfig>emptyMap(),
+      Collections.<String, ShadowConfig>emptyMap(), Collections.<String>emptySet());
   private static final Set<String> unloadableClassNames = new HashSet<>();
 
   private final Map<String, ShadowConfig> map;
+  // shadows indexed by shadow providers, shared between maps since they're never modified
+  private final Map<String, ShadowConfig> providedShadows;
+  private final Set<String> providedShadowClassNames;
 
-  ShadowMap(Map<String, ShadowConfig> map) {
+  ShadowMap(Map<String, ShadowConfig> map, Map<String, ShadowConfig> providedShadows, Set<String> providedShadowClassNames) {
     this.map = new HashMap<>(map);
+    this.providedShadows = providedShadows;
+    this.providedShadowClassNames = providedShadowClassNames;
   }
 
   private static void warnAbout(String unloadableClassName) {
@@ -82,6 +90,15 @@ public class ShadowMap {
     ClassLoader classLoader = clazz.getClassLoader();
     if (shadowConfig == null && classLoader != null) {
       String shadowClassName = convertToShadowName(className);
+      ShadowConfig providedShadowConfig = providedShadows.get(className);
+      if (providedShadowConfig != null && providedShadowConfig.shadowClassName.equals(shadowClassName)) {
+        return providedShadowConfig;
+      }
+      if (providedShadowClassNames.contains(shadowClassName)) {
+        // the shadow found by naming convention is indexed as shadowing some other class
+        return null;
+      }
+
       Class<?> shadowClass;
       try {
         shadowClass = classLoader.loadClass(shadowClassName);
@@ -96,6 +113,13 @@ public class ShadowMap {
     return shadowConfig;
   }
 
+  /**
+   * @return The names of the classes whose shadows were added explicitly rather than found by naming convention.
+   */
+  public Set<String> getShadowedClassNames() {
+    return Collections.unmodifiableSet(map.keySet());
+  }
+
   public static String convertToShadowName(String className) {
     String shadowClassName =
         "org.robolectric.shadows.Shadow" + className.substring(className.lastIndexOf(".") + 1);
@@ -114,6 +138,7 @@ public class ShadowMap {
 
     ShadowMap shadowMap = (ShadowMap) o;
 
+    // provided shadows only save looking up shadows by naming convention, they don't change which ones apply
     if (!map.equals(shadowMap.map)) return false;
 
     return true;
@@ -126,13 +151,43 @@ public class ShadowMap {
 
   public static class Builder {
     private final Map<String, ShadowConfig> map;
+    private Map<String, ShadowConfig> providedShadows;
+    private Set<String> providedShadowClassNames;
 
     public Builder() {
       map = new HashMap<>();
+      providedShadows = Collections.emptyMap();
+      providedShadowClassNames = Collections.emptySet();
     }
 
     public Builder(ShadowMap shadowMap) {
       this.map = new HashMap<>(shadowMap.map);
+      this.providedShadows = shadowMap.providedShadows;
+      this.providedShadowClassNames = shadowMap.providedShadowClassNames;
+    }
+
+    /**
+     * Use the shadows indexed by those of the given providers which are {@link IndexedShadowProvider}s to find
+     * shadows by naming convention without loading classes to look for them. Indexed shadows which don't follow the
+     * naming convention aren't applied.
+     *
+     * @param shadowProviders Providers of indexed shadows.
+     * @return This builder.
+     */
+    public Builder addShadowProviders(Iterable<ShadowProvider> shadowProviders) {
+      Map<String, ShadowConfig> providedShadows = new HashMap<>(this.providedShadows);
+      for (ShadowProvider shadowProvider : shadowProviders) {
+        if (shadowProvider instanceof IndexedShadowProvider) {
+          providedShadows.putAll(((IndexedShadowProvider) shadowProvider).getShadowMap());
+        }
+      }
+      Set<String> providedShadowClassNames = new HashSet<>();
+      for (ShadowConfig shadowConfig : providedShadows.values()) {
+        providedShadowClassNames.add(shadowConfig.shadowClassName);
+      }
+      this.providedShadows = providedShadows;
+      this.providedShadowClassNames = providedShadowClassNames;
+      return this;
     }
 
     public Builder addShadowClasses(Class<?>... shadowClasses) {
@@ -177,7 +232,7 @@ public class ShadowMap {
     }
 
     public ShadowMap build() {
-      return new ShadowMap(map);
+      return new ShadowMap(map, providedShadows, providedShadowClassNames);
     }
 
   }
@@ -9,8 +9,15 @@ import org.robolectric.internal.ShadowConstants;
 import org.robolectric.internal.Shadow;
 import org.robolectric.util.ReflectionHelpers.ClassParameter;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ShadowWrangler implements ClassHandler {
   public static final Function<Object, Object> DO_NOTHING_HANDLER = new Function<Object, Object>() {
@@ -29,15 +36,29 @@ public class ShadowWrangler implements ClassHandler {
   private static final boolean STRIP_SHADOW_STACK_TRACES = true;
   private static final ShadowConfig NO_SHADOW_CONFIG = new ShadowConfig(Object.class.getName(), true, false, false);
   private static final Object NO_SHADOW = new Object();
+  private static final Plan NO_PLAN = new Plan() {
+    @Override
+    public Object run(Object instance, Object roboData, Object[] params) throws Exception {
+      throw new IllegalStateException("placeholder for cached CALL_REAL_CODE_PLAN");
+    }
+  };
+  private static final String PLAN_CACHE_SIZE = "robolectric.planCacheSize";
   private final ShadowMap shadowMap;
   private final Map<Class, MetaShadow> metaShadowMap = new HashMap<>();
-  private final Map<String, Plan> planCache = new LinkedHashMap<String, Plan>() {
+  private final int maxPlanCacheSize;
+  private final ConcurrentMap<String, Plan> planCache = new ConcurrentHashMap<>();
+  // hits are counted per thread, so calls answered from the cache never contend on a shared counter
+  private final List<AtomicLong> planCacheHitCounters = new CopyOnWriteArrayList<>();
+  private final ThreadLocal<AtomicLong> planCacheHits = new ThreadLocal<AtomicLong>() {
     @Override
-    protected boolean removeEldestEntry(Map.Entry<String, Plan> eldest) {
-      return size() > 500;
+    protected AtomicLong initialValue() {
+      AtomicLong planCacheHitCounter = new AtomicLong();
+      planCacheHitCounters.add(planCacheHitCounter);
+      return planCacheHitCounter;
     }
   };
-  private final Map<Class, ShadowConfig> shadowConfigCache = new HashMap<>();
+  private final AtomicLong planCacheMisses = new AtomicLong();
+  private final Map<Class, ShadowConfig> shadowConfigCache = new ConcurrentHashMap<>();
   public static final HashMap<String, Object> PRIMITIVE_RETURN_VALUES = new HashMap<>();
 
   static {
@@ -51,7 +72,17 @@ public class ShadowWrangler implements ClassHandler {
   }
 
   public ShadowWrangler(ShadowMap shadowMap) {
+    this(shadowMap, Integer.getInteger(PLAN_CACHE_SIZE, 0));
+  }
+
+  /**
+   * @param shadowMap Shadows to apply.
+   * @param maxPlanCacheSize Maximum number of method plans to cache, or 0 to cache every plan.
+   *                         Defaults to the value of the {@code robolectric.planCacheSize} system property.
+   */
+  public ShadowWrangler(ShadowMap shadowMap, int maxPlanCacheSize) {
     this.shadowMap = shadowMap;
+    this.maxPlanCacheSize = maxPlanCacheSize;
   }
 
   public static Class<?> loadClass(String paramType, ClassLoader classLoader) {
@@ -108,12 +139,56 @@ public class ShadowWrangler implements ClassHandler {
 
   @Override
   public Plan methodInvoked(String signature, boolean isStatic, Class<?> theClass) {
-    if (planCache.containsKey(signature)) return planCache.get(signature);
-    Plan plan = calculatePlan(signature, isStatic, theClass);
-    planCache.put(signature, plan);
+    Plan plan = planCache.get(signature);
+    if (plan != null) {
+      AtomicLong planCacheHitCounter = planCacheHits.get();
+      planCacheHitCounter.lazySet(planCacheHitCounter.get() + 1); // only this thread writes it
+      return plan == NO_PLAN ? CALL_REAL_CODE_PLAN : plan;
+    }
+
+    planCacheMisses.incrementAndGet();
+    plan = calculatePlan(signature, isStatic, theClass);
+    planCache.put(signature, plan == null ? NO_PLAN : plan);
+    if (maxPlanCacheSize > 0 && planCache.size() > maxPlanCacheSize) {
+      evictPlans();
+    }
     return plan;
   }
 
+  private void evictPlans() {
+    Iterator<String> signatures = planCache.keySet().iterator();
+    while (planCache.size() > maxPlanCacheSize && signatures.hasNext()) {
+      signatures.next();
+      signatures.remove();
+    }
+  }
+
+  /**
+   * @return Number of {@link #methodInvoked(String, boolean, Class)} calls answered from the plan cache.
+   *     Calls still running on other threads may not be counted yet.
+   */
+  public long getPlanCacheHits() {
+    long hits = 0;
+    for (AtomicLong planCacheHitCounter : planCacheHitCounters) {
+      hits += planCacheHitCounter.get();
+    }
+    return hits;
+  }
+
+  /**
+   * @return Number of {@link #methodInvoked(String, boolean, Class)} calls which had to calculate a plan.
+   */
+  public long getPlanCacheMisses() {
+    return planCacheMisses.get();
+  }
+
+  /**
+   * @return Number of plans currently cached.
+   */
+  public int getPlanCacheSize() {
+    return planCache.size();
+  }
+
   private Plan calculatePlan(String signature, boolean isStatic, Class<?> theClass) {
     final InvocationProfile invocationProfile = new InvocationProfile(signature, isStatic, theClass.getClassLoader());
     ShadowConfig shadowConfig = getShadowConfig(invocationProfile.clazz);
@@ -347,7 +422,7 @@ public class ShadowWrangler implements ClassHandler {
               stackTraceElement.getFileName(), stackTraceElement.getLineNumber());
         }
 
-        if (className.startsWith("sun.reflect.") || className.startsWith("java.lang.reflect.")) {
+        if (className.startsWith("sun.reflect.") || className.startsWith("java.lang.reflect.") || className.startsWith("java.lang.invoke.")) {
           continue;
         }
 
@@ -422,11 +497,17 @@ public class ShadowWrangler implements ClassHandler {
     }
   }
 
+  /**
+   * Invokes a shadow method through a {@link MethodHandle} adapted once to {@code (Object shadow, Object[] params)},
+   * which avoids the access checks and argument copying of {@link Method#invoke(Object, Object...)} on every call.
+   */
   private static class ShadowMethodPlan implements Plan {
     private final Method shadowMethod;
+    private final MethodHandle methodHandle;
 
     public ShadowMethodPlan(Method shadowMethod) {
       this.shadowMethod = shadowMethod;
+      this.methodHandle = spreadingMethodHandle(shadowMethod);
     }
 
     @Override
@@ -434,13 +515,32 @@ public class ShadowWrangler implements ClassHandler {
       //noinspection UnnecessaryLocalVariable
       Object shadow = roboData;
       try {
-        return shadowMethod.invoke(shadow, params);
-      } catch (IllegalArgumentException e) {
-        throw new IllegalArgumentException("attempted to invoke " + shadowMethod
-            + (shadow == null ? "" : " on instance of " + shadow.getClass() + ", but " + shadow.getClass().getSimpleName() + " doesn't extend " + shadowMethod.getDeclaringClass().getSimpleName()));
-      } catch (InvocationTargetException e) {
-        throw e.getCause();
+        return (Object) methodHandle.invokeExact(shadow, params);
+      } catch (ClassCastException | NullPointerException e) {
+        if (!Modifier.isStatic(shadowMethod.getModifiers()) && !shadowMethod.getDeclaringClass().isInstance(shadow)) {
+          throw new IllegalArgumentException("attempted to invoke " + shadowMethod
+              + (shadow == null ? "" : " on instance of " + shadow.getClass() + ", but " + shadow.getClass().getSimpleName() + " doesn't extend " + shadowMethod.getDeclaringClass().getSimpleName()));
+        }
+        throw e;
+      }
+    }
+
+    private static MethodHandle spreadingMethodHandle(Method shadowMethod) {
+      shadowMethod.setAccessible(true);
+      MethodHandle methodHandle;
+      try {
+        methodHandle = MethodHandles.lookup().unreflect(shadowMethod).asFixedArity();
+      } catch (IllegalAccessException e) {
+        throw new RuntimeException(e);
+      }
+
+      if (Modifier.isStatic(shadowMethod.getModifiers())) {
+        methodHandle = MethodHandles.dropArguments(methodHandle, 0, Object.class);
       }
+      int paramCount = shadowMethod.getParameterTypes().length;
+      return methodHandle
+          .asType(MethodType.genericMethodType(paramCount + 1))
+          .asSpreader(Object[].class, paramCount);
     }
   }
 
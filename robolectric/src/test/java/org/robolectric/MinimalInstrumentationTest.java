@@ -0,0 +1,69 @@
+package org.robolectric;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.model.InitializationError;
+import org.robolectric.annotation.Config;
+import org.robolectric.internal.bytecode.InstrumentationConfiguration;
+import org.robolectric.internal.bytecode.testing.Pony;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class MinimalInstrumentationTest {
+  private static final String MINIMAL_INSTRUMENTATION = "robolectric.minimalInstrumentation";
+
+  @Before
+  public void setUp() throws Exception {
+    System.setProperty(MINIMAL_INSTRUMENTATION, "true");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    System.clearProperty(MINIMAL_INSTRUMENTATION);
+  }
+
+  @Test
+  public void shouldCallConfiguredShadowsWithoutConventionalNames() throws Exception {
+    Result result = run(new TestRunners.WithDefaults(TestWithNonConventionalShadow.class));
+
+    for (Failure failure : result.getFailures()) {
+      fail(failure.getMessage(), failure.getException());
+    }
+    assertThat(result.getRunCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldFailTestsWhoseConfiguredShadowsWouldNotBeCalled() throws Exception {
+    Result result = run(new TestRunners.WithDefaults(TestWithNonConventionalShadow.class) {
+      @Override public InstrumentationConfiguration createClassLoaderConfig() {
+        return InstrumentationConfiguration.newBuilder().build();
+      }
+    });
+
+    assertThat(result.getFailureCount()).isEqualTo(1);
+    assertThat(result.getFailures().get(0).getMessage())
+        .contains(Pony.class.getName())
+        .contains("won't be called with minimal instrumentation");
+  }
+
+  public static class TestWithNonConventionalShadow {
+    @Test
+    @Config(shadows = Pony.ShadowPony.class)
+    public void shouldUseShadow() throws Exception {
+      assertThat(new Pony().ride("lawn")).isEqualTo("Fake whinny! You're on my lawn!");
+    }
+  }
+
+  private Result run(RobolectricTestRunner runner) throws InitializationError {
+    RunNotifier notifier = new RunNotifier();
+    Result result = new Result();
+    notifier.addListener(result.createListener());
+    runner.run(notifier);
+    return result;
+  }
+}
@@ -0,0 +1,206 @@
+package org.robolectric;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.model.InitializationError;
+import org.robolectric.annotation.Config;
+import org.robolectric.internal.bytecode.InstrumentationConfiguration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class ParallelTestRunnerTest {
+  private static final String PARALLEL_THREADS = "robolectric.parallelThreads";
+
+  public static class StateHolder {
+    public static final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+    public static final Map<ClassLoader, String> threadsBySandbox = new ConcurrentHashMap<>();
+    public static final List<String> sharedSandboxes = Collections.synchronizedList(new ArrayList<String>());
+    public static CountDownLatch bothThreadsRunning;
+
+    public static void record(String event, Class<?> testClass) {
+      ClassLoader sandbox = testClass.getClassLoader();
+      events.add(event + " " + testClass.getSimpleName() + " " + System.identityHashCode(sandbox));
+    }
+
+    public static void recordOnPoolThread(String event, Class<?> testClass) {
+      record(event, testClass);
+      String thread = Thread.currentThread().getName();
+      String sandboxThread = threadsBySandbox.put(testClass.getClassLoader(), thread);
+      if (sandboxThread != null && !sandboxThread.equals(thread)) {
+        sharedSandboxes.add(sandboxThread + " and " + thread);
+      }
+    }
+
+    public static void awaitBothThreads() throws InterruptedException {
+      bothThreadsRunning.countDown();
+      bothThreadsRunning.await(5, TimeUnit.SECONDS);
+    }
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    System.setProperty(PARALLEL_THREADS, "2");
+    StateHolder.events.clear();
+    StateHolder.threadsBySandbox.clear();
+    StateHolder.sharedSandboxes.clear();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    System.clearProperty(PARALLEL_THREADS);
+  }
+
+  @Test
+  public void shouldRunEachThreadInItsOwnSandbox() throws Exception {
+    Result first = run(FirstTest.class);
+    Result second = run(SecondTest.class);
+
+    assertThat(first.getRunCount()).isEqualTo(3);
+    for (Failure failure : first.getFailures()) {
+      fail(failure.getMessage(), failure.getException());
+    }
+    assertThat(second.getRunCount()).isEqualTo(3);
+    assertThat(second.getFailureCount()).isEqualTo(1);
+    assertThat(second.getFailures().get(0).getDescription().getMethodName()).isEqualTo("shouldFail");
+    assertThat(second.getFailures().get(0).getMessage()).isEqualTo("expected failure");
+
+    assertThat(StateHolder.sharedSandboxes).isEmpty();
+    for (String testClass : new String[] {"FirstTest", "SecondTest"}) {
+      Set<String> sandboxes = sandboxes("test", testClass);
+      assertThat(sandboxes).hasSize(2);
+      assertThat(sandboxes("beforeClass", testClass)).isEqualTo(sandboxes);
+      assertThat(sandboxes("afterClass", testClass)).isEqualTo(sandboxes);
+    }
+  }
+
+  @Config(manifest = Config.NONE)
+  public static class FirstTest {
+    private static String owner;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+      StateHolder.recordOnPoolThread("beforeClass", FirstTest.class);
+    }
+
+    @AfterClass
+    public static void afterClass() throws Exception {
+      StateHolder.record("afterClass", FirstTest.class);
+    }
+
+    @Test
+    public void first() throws Exception {
+      useStaticState();
+    }
+
+    @Test
+    public void second() throws Exception {
+      useStaticState();
+    }
+
+    @Test
+    public void third() throws Exception {
+      useStaticState();
+    }
+
+    private void useStaticState() throws Exception {
+      StateHolder.recordOnPoolThread("test", FirstTest.class);
+      String thread = Thread.currentThread().getName();
+      assertThat(owner == null ? thread : owner).isEqualTo(thread);
+      owner = thread;
+      StateHolder.awaitBothThreads();
+      assertThat(owner).isEqualTo(thread);
+    }
+  }
+
+  @Config(manifest = Config.NONE)
+  public static class SecondTest {
+    private static final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+      StateHolder.recordOnPoolThread("beforeClass", SecondTest.class);
+    }
+
+    @AfterClass
+    public static void afterClass() throws Exception {
+      StateHolder.record("afterClass", SecondTest.class);
+    }
+
+    @Test
+    public void first() throws Exception {
+      useStaticState();
+    }
+
+    @Test
+    public void second() throws Exception {
+      useStaticState();
+    }
+
+    @Test
+    public void shouldFail() throws Exception {
+      useStaticState();
+      fail("expected failure");
+    }
+
+    private void useStaticState() throws Exception {
+      StateHolder.recordOnPoolThread("test", SecondTest.class);
+      threads.add(Thread.currentThread().getName());
+      StateHolder.awaitBothThreads();
+      assertThat(new HashSet<>(threads)).containsOnly(Thread.currentThread().getName());
+    }
+  }
+
+  private Set<String> sandboxes(String event, String testClass) {
+    Set<String> sandboxes = new HashSet<>();
+    synchronized (StateHolder.events) {
+      for (String recorded : StateHolder.events) {
+        String[] parts = recorded.split(" ");
+        if (parts[0].equals(event) && parts[1].equals(testClass)) {
+          if (!event.equals("test")) {
+            assertThat(sandboxes).doesNotContain(parts[2]);
+          }
+          sandboxes.add(parts[2]);
+        }
+      }
+    }
+    return sandboxes;
+  }
+
+  private Result run(Class<?> testClass) throws InitializationError {
+    StateHolder.bothThreadsRunning = new CountDownLatch(2);
+    RunNotifier notifier = new RunNotifier();
+    Result result = new Result();
+    notifier.addListener(result.createListener());
+    new Runner(testClass).run(notifier);
+    return result;
+  }
+
+  public static class Runner extends RobolectricTestRunner {
+    public Runner(Class<?> testClass) throws InitializationError {
+      super(testClass);
+    }
+
+    @Override public InstrumentationConfiguration createClassLoaderConfig() {
+      return InstrumentationConfiguration.newBuilder()
+          .doNotAquireClass(StateHolder.class.getName())
+          .build();
+    }
+  }
+}
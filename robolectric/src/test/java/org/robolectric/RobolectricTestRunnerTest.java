@@ -113,6 +113,29 @@ public class RobolectricTestRunnerTest {
     assertConfig(configFor(Test7.class, "withoutAnnotation", properties), new int[0],  "--default", "", "res", "assets", new Class[] {}, BuildConfigConstants3.class);
   }
 
+  @Test
+  public void getConfig_shouldMergeClassConfigOncePerDeclaringClass() throws Exception {
+    final Properties properties = properties("qualifiers: from-properties-file");
+    final int[] propertiesLoads = new int[1];
+    RobolectricTestRunner runner = new RobolectricTestRunner(Test5.class) {
+      @Override protected Properties getConfigProperties() {
+        propertiesLoads[0]++;
+        return properties;
+      }
+    };
+
+    assertConfig(runner.getConfig(Test5.class.getMethod("withoutAnnotation")),
+        new int[] {1}, "foo", "from-test", "test/res", "test/assets", new Class[]{Test1.class}, BuildConfigConstants.class);
+    assertConfig(runner.getConfig(Test5.class.getMethod("withOverrideAnnotation")),
+        new int[] {9}, "foo", "from-method5", "test/res", "method5/assets", new Class[]{Test1.class, Test5.class}, BuildConfigConstants5.class);
+    assertConfig(runner.getConfig(Test1.class.getMethod("withoutAnnotation")),
+        new int[] {1}, "foo", "from-test", "test/res", "test/assets", new Class[]{Test1.class}, BuildConfigConstants.class);
+
+    assertThat(propertiesLoads[0]).isEqualTo(1);
+    assertThat(runner.getConfigStats().getHits()).isEqualTo(1);
+    assertThat(runner.getConfigStats().getMisses()).isEqualTo(2);
+  }
+
   @Test
   public void rememberThatSomeTestRunnerMethodsShouldBeOverridable() throws Exception {
     @SuppressWarnings("unused")
@@ -0,0 +1,88 @@
+package org.robolectric.internal;
+
+import org.junit.Test;
+import org.robolectric.manifest.AndroidManifest;
+import org.robolectric.res.EmptyResourceLoader;
+import org.robolectric.res.ResourceLoader;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.robolectric.util.TestUtil.resourceFile;
+
+public class AppResourceLoaderRegistryTest {
+  private final AppResourceLoaderRegistry registry = new AppResourceLoaderRegistry(1);
+
+  @Test
+  public void shouldShareLoadersForTheSameResources() throws Exception {
+    ResourceLoader resourceLoader = get(newManifest(), 18, Object.class);
+
+    assertThat(get(newManifest(), 18, Object.class)).isSameAs(resourceLoader);
+    assertThat(registry.getStats().getHits()).isEqualTo(1);
+    assertThat(registry.getStats().getMisses()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldNotShareLoadersBetweenSdksOrFactories() throws Exception {
+    ResourceLoader resourceLoader = get(newManifest(), 18, Object.class);
+
+    assertThat(get(newManifest(), 19, Object.class)).isNotSameAs(resourceLoader);
+    assertThat(get(newManifest(), 18, String.class)).isNotSameAs(resourceLoader);
+  }
+
+  @Test
+  public void shouldEvictLeastRecentlyUsedLoaders() throws Exception {
+    ResourceLoader resourceLoader = get(newManifest(), 18, Object.class);
+    get(newManifest(), 19, Object.class);
+
+    assertThat(get(newManifest(), 18, Object.class)).isNotSameAs(resourceLoader);
+    assertThat(registry.getStats().getEvictions()).isEqualTo(2);
+    assertThat(registry.getStats().getMisses()).isEqualTo(3);
+  }
+
+  @Test
+  public void shouldNotWaitForLoadersOfOtherResourcesToBeCreated() throws Exception {
+    final CountDownLatch creating = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicReference<ResourceLoader> slowLoader = new AtomicReference<>();
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        slowLoader.set(registry.getResourceLoader(newManifest(), new SdkConfig(18), Object.class, new AppResourceLoaderRegistry.Factory() {
+          @Override public ResourceLoader create() {
+            creating.countDown();
+            try {
+              release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+              throw new RuntimeException(e);
+            }
+            return new EmptyResourceLoader();
+          }
+        }));
+      }
+    };
+    thread.start();
+    assertThat(creating.await(5, TimeUnit.SECONDS)).isTrue();
+
+    assertThat(get(newManifest(), 19, Object.class)).isNotNull();
+    assertThat(release.getCount()).isEqualTo(1);
+
+    release.countDown();
+    thread.join();
+    assertThat(get(newManifest(), 18, Object.class)).isSameAs(slowLoader.get());
+  }
+
+  private ResourceLoader get(AndroidManifest appManifest, int apiLevel, Class<?> factoryType) {
+    return registry.getResourceLoader(appManifest, new SdkConfig(apiLevel), factoryType, new AppResourceLoaderRegistry.Factory() {
+      @Override public ResourceLoader create() {
+        return new EmptyResourceLoader();
+      }
+    });
+  }
+
+  private static AndroidManifest newManifest() {
+    return new AndroidManifest(resourceFile("TestAndroidManifest.xml"), resourceFile("res"), resourceFile("assets"));
+  }
+}
@@ -0,0 +1,33 @@
+package org.robolectric.internal;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ParallelSchedulerTest {
+  @Test
+  public void shouldRunEveryChildBeforeFinishing() throws Exception {
+    final Set<String> threadNames = Collections.synchronizedSet(new HashSet<String>());
+    final Set<Integer> ran = Collections.synchronizedSet(new HashSet<Integer>());
+
+    ParallelScheduler scheduler = new ParallelScheduler(2);
+    for (int i = 0; i < 10; i++) {
+      final int child = i;
+      scheduler.schedule(new Runnable() {
+        @Override
+        public void run() {
+          threadNames.add(Thread.currentThread().getName());
+          ran.add(child);
+        }
+      });
+    }
+    scheduler.finished();
+
+    assertThat(ran).hasSize(10);
+    assertThat(threadNames).doesNotContain(Thread.currentThread().getName());
+  }
+}
@@ -53,6 +53,74 @@ public class InstrumentationConfigurationTest {
     assertThat(config.shouldAcquire("com.almworks.sqlite4java.whatever.Cls$anything$else")).isFalse();
   }
   
+  @Test
+  public void shouldNotAcquireRClassesOfAnyPackage() throws Exception {
+    assertThat(config.shouldAcquire("com.whatever.R$Anything")).isTrue();
+    assertThat(config.shouldAcquire("com.whatever.R$")).isTrue();
+    assertThat(config.shouldAcquire("com.whatever.FooR$string")).isTrue();
+    assertThat(config.shouldAcquire("com.what$ever.R")).isFalse();
+    assertThat(config.shouldAcquire("R$string")).isTrue();
+  }
+
+  @Test
+  public void shouldAcquireInternalRClasses() throws Exception {
+    assertThat(config.shouldAcquire("com.android.internal.R")).isTrue();
+    assertThat(config.shouldAcquire("com.android.internal.R$styleable")).isTrue();
+    assertThat(config.shouldAcquire("android.R$styleable")).isTrue();
+    assertThat(config.shouldAcquire("android.R$string")).isFalse();
+  }
+
+  @Test
+  public void shouldOnlyAcquireTestsFromBaseClassLoaderPackages() throws Exception {
+    assertThat(config.shouldAcquire("org.robolectric.res.ResName")).isFalse();
+    assertThat(config.shouldAcquire("org.robolectric.res.ResNameTest")).isTrue();
+    assertThat(config.shouldAcquire("org.robolectric.manifest.AndroidManifest")).isFalse();
+    assertThat(config.shouldAcquire("org.robolectric.res.builder.XmlBlock")).isFalse();
+    assertThat(config.shouldAcquire("org.robolectric.res.builder.Other")).isTrue();
+  }
+
+  @Test
+  public void shouldMatchPackagesCoveredByShorterOnes() throws Exception {
+    InstrumentationConfiguration customConfig = InstrumentationConfiguration.newBuilder()
+        .doNotAquirePackage("com.foo.")
+        .doNotAquirePackage("com.foo.bar.")
+        .doNotAquirePackage("com.fooz")
+        .addInstrumentedPackage("com.baz.")
+        .addInstrumentedPackage("com.baz.qux.")
+        .build();
+    assertThat(customConfig.shouldAcquire("com.foo.bar.Thing")).isFalse();
+    assertThat(customConfig.shouldAcquire("com.foo.Thing")).isFalse();
+    assertThat(customConfig.shouldAcquire("com.foozle.Thing")).isFalse();
+    assertThat(customConfig.shouldAcquire("com.fo.Thing")).isTrue();
+    assertThat(customConfig.shouldAcquire("com.foo")).isTrue();
+    assertThat(customConfig.shouldInstrument(wrap("com.baz.qux.Thing"))).isTrue();
+    assertThat(customConfig.shouldInstrument(wrap("com.baz.Thing"))).isTrue();
+    assertThat(customConfig.shouldInstrument(wrap("com.bazz.Thing"))).isFalse();
+  }
+
+  @Test
+  public void shouldDistinguishConfigurationsWithMinimalInstrumentation() throws Exception {
+    InstrumentationConfiguration minimalConfig = InstrumentationConfiguration.newBuilder()
+        .useMinimalInstrumentation(true)
+        .addShadowedClass("com.whatever.Shadowed")
+        .build();
+    assertThat(minimalConfig.useMinimalInstrumentation()).isTrue();
+    assertThat(minimalConfig.isShadowedClass("com.whatever.Shadowed")).isTrue();
+    assertThat(minimalConfig.isShadowedClass("com.whatever.NotShadowed")).isFalse();
+    assertThat(minimalConfig).isNotEqualTo(config);
+    assertThat(minimalConfig.cacheKey()).isNotEqualTo(config.cacheKey());
+  }
+
+  @Test
+  public void shouldIgnoreShadowedClassesWithoutMinimalInstrumentation() throws Exception {
+    InstrumentationConfiguration fullConfig = InstrumentationConfiguration.newBuilder()
+        .useMinimalInstrumentation(false)
+        .addShadowedClass("com.whatever.Shadowed")
+        .build();
+    assertThat(fullConfig.isShadowedClass("com.whatever.Shadowed")).isFalse();
+    assertThat(fullConfig).isEqualTo(InstrumentationConfiguration.newBuilder().useMinimalInstrumentation(false).build());
+  }
+
   @Test
   public void shouldInstrumentCustomClasses() throws Exception {
     String instrumentName = "com.whatever.SomeClassNameToInstrument";
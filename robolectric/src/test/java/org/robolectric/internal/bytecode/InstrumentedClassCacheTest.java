@@ -0,0 +1,84 @@
+package org.robolectric.internal.bytecode;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.robolectric.internal.ShadowConstants;
+import org.robolectric.internal.bytecode.testing.AnExampleClass;
+import org.robolectric.test.TemporaryFolder;
+
+import java.lang.reflect.Method;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InstrumentedClassCacheTest {
+  private static final byte[] ORIGINAL = new byte[] {1, 2, 3};
+  private static final byte[] INSTRUMENTED = new byte[] {4, 5, 6, 7};
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final InstrumentationConfiguration config = InstrumentationConfiguration.newBuilder().build();
+
+  @Test
+  public void shouldReturnNullWhenEmpty() throws Exception {
+    InstrumentedClassCache cache = new InstrumentedClassCache(temporaryFolder.getRoot(), config, "1.0");
+    assertThat(cache.get(ORIGINAL)).isNull();
+  }
+
+  @Test
+  public void shouldReturnStoredBytes() throws Exception {
+    InstrumentedClassCache cache = new InstrumentedClassCache(temporaryFolder.getRoot(), config, "1.0");
+    cache.put(ORIGINAL, INSTRUMENTED);
+    assertThat(cache.get(ORIGINAL)).isEqualTo(INSTRUMENTED);
+    assertThat(new InstrumentedClassCache(temporaryFolder.getRoot(), config, "1.0").get(ORIGINAL)).isEqualTo(INSTRUMENTED);
+  }
+
+  @Test
+  public void whenKeptInMemory_shouldReturnStoredBytesWithoutCacheDir() throws Exception {
+    InstrumentedClassCache cache = new InstrumentedClassCache(null, config, "1.0", true);
+    assertThat(cache.get(ORIGINAL)).isNull();
+    cache.put(ORIGINAL, INSTRUMENTED);
+    assertThat(cache.get(ORIGINAL)).isEqualTo(INSTRUMENTED);
+  }
+
+  @Test
+  public void whenKeptInMemory_shouldDropEntriesOverTheSizeLimit() throws Exception {
+    InstrumentedClassCache cache = new InstrumentedClassCache(null, config, "1.0", 2L * INSTRUMENTED.length);
+    byte[][] originals = {{1}, {2}, {3}, {4}};
+    for (byte[] original : originals) {
+      cache.put(original, INSTRUMENTED);
+    }
+
+    int kept = 0;
+    for (byte[] original : originals) {
+      if (cache.get(original) != null) kept++;
+    }
+    assertThat(kept).isEqualTo(2);
+    assertThat(cache.get(originals[3])).isEqualTo(INSTRUMENTED);
+  }
+
+  @Test
+  public void shouldNotShareEntriesAcrossVersionsOrConfigurations() throws Exception {
+    new InstrumentedClassCache(temporaryFolder.getRoot(), config, "1.0").put(ORIGINAL, INSTRUMENTED);
+
+    InstrumentationConfiguration otherConfig = InstrumentationConfiguration.newBuilder().addInstrumentedPackage("com.example.").build();
+    assertThat(new InstrumentedClassCache(temporaryFolder.getRoot(), config, "1.1").get(ORIGINAL)).isNull();
+    assertThat(new InstrumentedClassCache(temporaryFolder.getRoot(), otherConfig, "1.0").get(ORIGINAL)).isNull();
+  }
+
+  @Test
+  public void shouldLoadInstrumentedClassesFromCache() throws Exception {
+    InstrumentationConfiguration instrumentingConfig = InstrumentationConfiguration.newBuilder().addInstrumentedClass(AnExampleClass.class.getName()).build();
+    InstrumentedClassCache cache = new InstrumentedClassCache(temporaryFolder.getRoot(), instrumentingConfig, "1.0");
+
+    Class<?> firstClass = new InstrumentingClassLoader(instrumentingConfig, cache, null).loadClass(AnExampleClass.class.getName());
+    assertThat(temporaryFolder.getRoot().list()).isNotEmpty();
+
+    Class<?> secondClass = new InstrumentingClassLoader(instrumentingConfig, cache, null).loadClass(AnExampleClass.class.getName());
+    assertThat(secondClass).isNotSameAs(firstClass);
+    Method directMethod = null;
+    for (Method method : secondClass.getDeclaredMethods()) {
+      if (method.getName().startsWith(ShadowConstants.ROBO_PREFIX)) directMethod = method;
+    }
+    assertThat(directMethod).isNotNull();
+  }
+}
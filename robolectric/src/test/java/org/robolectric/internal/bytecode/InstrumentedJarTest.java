@@ -0,0 +1,65 @@
+package org.robolectric.internal.bytecode;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.robolectric.internal.ShadowConstants;
+import org.robolectric.internal.bytecode.testing.AnExampleClass;
+import org.robolectric.test.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.robolectric.util.Util.readBytes;
+
+public class InstrumentedJarTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final InstrumentationConfiguration config = InstrumentationConfiguration.newBuilder().addInstrumentedClass(AnExampleClass.class.getName()).build();
+
+  @Test
+  public void shouldContainInstrumentedClasses() throws Exception {
+    File instrumentedJarFile = buildInstrumentedJar();
+
+    InstrumentedJar instrumentedJar = InstrumentedJar.open(instrumentedJarFile, config, "1.0");
+    assertThat(instrumentedJar).isNotNull();
+    assertThat(instrumentedJar.getClassBytes(AnExampleClass.class.getName())).isNotNull();
+    assertThat(instrumentedJar.getClassBytes("com.example.Missing")).isNull();
+
+    Class<?> clazz = new InstrumentingClassLoader(config, null, instrumentedJar).loadClass(AnExampleClass.class.getName());
+    boolean hasDirectMethod = false;
+    for (Method method : clazz.getDeclaredMethods()) {
+      if (method.getName().startsWith(ShadowConstants.ROBO_PREFIX)) hasDirectMethod = true;
+    }
+    assertThat(hasDirectMethod).isTrue();
+  }
+
+  @Test
+  public void shouldIgnoreJarsBuiltWithOtherVersionsOrConfigurations() throws Exception {
+    File instrumentedJarFile = buildInstrumentedJar();
+
+    assertThat(InstrumentedJar.open(instrumentedJarFile, config, "1.1")).isNull();
+    assertThat(InstrumentedJar.open(instrumentedJarFile, InstrumentationConfiguration.newBuilder().build(), "1.0")).isNull();
+    assertThat(InstrumentedJar.open(new File(temporaryFolder.getRoot(), "missing.jar"), config, "1.0")).isNull();
+  }
+
+  private File buildInstrumentedJar() throws Exception {
+    String entryName = AnExampleClass.class.getName().replace('.', '/') + ".class";
+    File inputJar = new File(temporaryFolder.getRoot(), "input.jar");
+    try (JarOutputStream out = new JarOutputStream(new FileOutputStream(inputJar));
+         InputStream in = getClass().getClassLoader().getResourceAsStream(entryName)) {
+      out.putNextEntry(new JarEntry(entryName));
+      out.write(readBytes(in));
+      out.closeEntry();
+    }
+
+    File outputJar = new File(temporaryFolder.getRoot(), "output.jar");
+    InstrumentedJar.build(config, "1.0", new URL[] { inputJar.toURI().toURL() }, outputJar);
+    return outputJar;
+  }
+}
@@ -3,6 +3,7 @@ package org.robolectric.internal.bytecode;
 import android.os.Build;
 
 import org.junit.Test;
+import org.objectweb.asm.Type;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.internal.Shadow;
 import org.robolectric.internal.ShadowConstants;
@@ -116,6 +117,13 @@ public class InstrumentingClassLoaderTest {
     }
   }
 
+  @Test
+  public void shouldDefineUninstrumentedClassesFromTheirOriginalBytes() throws Exception {
+    InstrumentingClassLoader classLoader = new InstrumentingClassLoader(InstrumentationConfiguration.newBuilder().build());
+    String className = AnUninstrumentedClass.class.getName();
+    assertArrayEquals(classLoader.getByteCode(className), classLoader.getTransformedBytes(className));
+  }
+
   @Test
   public void shouldPerformClassLoadAndInstrumentLoadForInstrumentedClasses() throws Exception {
     ClassLoader classLoader = new InstrumentingClassLoader(InstrumentationConfiguration.newBuilder().build());
@@ -166,6 +174,70 @@ public class InstrumentingClassLoaderTest {
     transcript.assertEventsSoFar("methodInvoked: AClassWithStaticMethod.staticMethod(java.lang.String value1)");
   }
 
+  @Test
+  public void withInvokeDynamic_callingStaticMethodShouldInvokeClassHandler() throws Exception {
+    setClassLoader(new InstrumentingClassLoader(InstrumentationConfiguration.newBuilder().useInvokeDynamic(true).build()));
+    Class<?> exampleClass = loadClass(AClassWithStaticMethod.class);
+    Method normalMethod = exampleClass.getMethod("staticMethod", String.class);
+
+    assertEquals("response from methodInvoked: AClassWithStaticMethod.staticMethod(java.lang.String value1)",
+        normalMethod.invoke(null, "value1"));
+    transcript.assertEventsSoFar("methodInvoked: AClassWithStaticMethod.staticMethod(java.lang.String value1)");
+  }
+
+  @Test
+  public void withMinimalInstrumentation_callingMethodsOfUnshadowedClassesShouldNotInvokeClassHandler() throws Exception {
+    setClassLoader(new InstrumentingClassLoader(InstrumentationConfiguration.newBuilder().useMinimalInstrumentation(true).build()));
+    Class<?> exampleClass = loadClass(AnExampleClass.class);
+    Method normalMethod = exampleClass.getMethod("normalMethod", String.class, int.class);
+
+    Object exampleInstance = exampleClass.newInstance();
+    assertEquals("normalMethod(value1, 123)", normalMethod.invoke(exampleInstance, "value1", 123));
+    assertEquals("normalMethod(value2, 456)", normalMethod.invoke(Shadow.directlyOn(exampleInstance, (Class<Object>) exampleClass), "value2", 456));
+    transcript.assertNoEventsSoFar();
+  }
+
+  @Test
+  public void withMinimalInstrumentation_nativeMethodsOfUnshadowedClassesShouldBeNoOps() throws Exception {
+    setClassLoader(new InstrumentingClassLoader(InstrumentationConfiguration.newBuilder().useMinimalInstrumentation(true).build()));
+    Class<?> exampleClass = loadClass(AClassWithNativeMethod.class);
+    Method nativeMethod = exampleClass.getDeclaredMethod("nativeMethod", String.class, int.class);
+
+    assertThat(nativeMethod.invoke(exampleClass.newInstance(), "value1", 123)).isNull();
+    transcript.assertNoEventsSoFar();
+  }
+
+  @Test
+  public void withMinimalInstrumentation_callingMethodsOfShadowedClassesShouldInvokeClassHandler() throws Exception {
+    setClassLoader(new InstrumentingClassLoader(InstrumentationConfiguration.newBuilder()
+        .useMinimalInstrumentation(true)
+        .addShadowedClass(AnExampleClass.class.getName())
+        .build()));
+    Class<?> exampleClass = loadClass(AnExampleClass.class);
+    Method normalMethod = exampleClass.getMethod("normalMethod", String.class, int.class);
+
+    Object exampleInstance = exampleClass.newInstance();
+    assertEquals("response from methodInvoked: AnExampleClass.normalMethod(java.lang.String value1, int 123)",
+        normalMethod.invoke(exampleInstance, "value1", 123));
+    transcript.assertEventsSoFar("methodInvoked: AnExampleClass.__constructor__()",
+        "methodInvoked: AnExampleClass.normalMethod(java.lang.String value1, int 123)");
+  }
+
+  @Test
+  public void withInvokeDynamic_changingClassHandlerShouldRelinkCallSites() throws Exception {
+    setClassLoader(new InstrumentingClassLoader(InstrumentationConfiguration.newBuilder().useInvokeDynamic(true).build()));
+    Class<?> exampleClass = loadClass(AClassWithStaticMethod.class);
+    Method normalMethod = exampleClass.getMethod("staticMethod", String.class);
+    normalMethod.invoke(null, "value1");
+    transcript.assertEventsSoFar("methodInvoked: AClassWithStaticMethod.staticMethod(java.lang.String value1)");
+
+    Transcript otherTranscript = new Transcript();
+    RobolectricTestRunner.injectClassHandler(classLoader, new MyClassHandler(otherTranscript));
+    normalMethod.invoke(null, "value2");
+    otherTranscript.assertEventsSoFar("methodInvoked: AClassWithStaticMethod.staticMethod(java.lang.String value2)");
+    transcript.assertNoEventsSoFar();
+  }
+
   @Test
   public void callingStaticDirectAccessMethodShouldWork() throws Exception {
     Class<?> exampleClass = loadClass(AClassWithStaticMethod.class);
@@ -689,4 +761,42 @@ public class InstrumentingClassLoaderTest {
 
     transcript.assertEventsSoFar("find foo.AClass");
   }
+
+  @Test public void shouldDefineEachClassOnceWhenLoadedConcurrently() throws Exception {
+    final InstrumentingClassLoader classLoader = new InstrumentingClassLoader(InstrumentationConfiguration.newBuilder().build());
+    final Class<?>[] loaded = new Class<?>[8];
+    Thread[] threads = new Thread[loaded.length];
+    for (int i = 0; i < threads.length; i++) {
+      final int index = i;
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            loaded[index] = classLoader.loadClass(AnExampleClass.class.getName());
+          } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    for (Class<?> clazz : loaded) {
+      assertSame(loaded[0], clazz);
+    }
+    assertSame(classLoader, loaded[0].getClassLoader());
+  }
+
+  @Test public void shouldCacheTypeHierarchy() throws Exception {
+    InstrumentingClassLoader classLoader = new InstrumentingClassLoader(InstrumentationConfiguration.newBuilder().build());
+    String childName = Type.getInternalName(AnInstrumentedChild.class);
+
+    InstrumentingClassLoader.TypeInfo childInfo = classLoader.typeInfo(childName);
+    assertEquals(Type.getInternalName(AnInstrumentedChild.class.getSuperclass()), childInfo.superName);
+    assertFalse(childInfo.isInterface());
+    assertSame(childInfo, classLoader.typeInfo(childName));
+  }
 }
@@ -1,8 +1,13 @@
 package org.robolectric.internal.bytecode;
 
 import org.junit.Test;
+import org.robolectric.internal.IndexedShadowProvider;
+import org.robolectric.internal.ShadowProvider;
 import org.robolectric.shadows.ShadowCursorAdapter;
 
+import java.util.Collections;
+import java.util.Map;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class ShadowMapTest {
@@ -16,6 +21,50 @@ public class ShadowMapTest {
     assertThat(map.get(android.widget.CursorAdapter.class).shadowClassName).isEqualTo(ShadowCursorAdapter.class.getName());
   }
 
+  @Test public void shouldUseProvidedShadowsFollowingTheNamingConvention() throws Exception {
+    ShadowConfig shadowConfig = new ShadowConfig(ShadowCursorAdapter.class.getName(), false, false, false);
+    ShadowMap map = new ShadowMap.Builder()
+        .addShadowProviders(providing(android.widget.CursorAdapter.class.getName(), shadowConfig))
+        .build();
+    assertThat(map.get(android.widget.CursorAdapter.class)).isSameAs(shadowConfig);
+  }
+
+  @Test public void shouldNotUseProvidedShadowsNotFollowingTheNamingConvention() throws Exception {
+    ShadowMap map = new ShadowMap.Builder()
+        .addShadowProviders(providing(CursorAdapter.class.getName(), new ShadowConfig("com.example.ShadowSomething", true, false, false)))
+        .build();
+    assertThat(map.get(CursorAdapter.class)).isNull();
+  }
+
+  @Test public void shouldNotLookUpShadowsProvidedForOtherClasses() throws Exception {
+    ShadowMap map = new ShadowMap.Builder()
+        .addShadowProviders(providing("com.example.CursorAdapter", new ShadowConfig(ShadowCursorAdapter.class.getName(), true, false, false)))
+        .build();
+    assertThat(map.get(android.widget.CursorAdapter.class)).isNull();
+  }
+
+  @Test public void shouldKeepProvidedShadowsInNewBuilders() throws Exception {
+    ShadowConfig shadowConfig = new ShadowConfig(ShadowCursorAdapter.class.getName(), false, false, false);
+    ShadowMap map = new ShadowMap.Builder()
+        .addShadowProviders(providing(android.widget.CursorAdapter.class.getName(), shadowConfig))
+        .build()
+        .newBuilder().addShadowClass("a", "b", true, false, false).build();
+    assertThat(map.get(android.widget.CursorAdapter.class)).isSameAs(shadowConfig);
+  }
+
+  @Test public void shouldLookUpShadowsOfProvidersWithoutAnIndexByNamingConvention() throws Exception {
+    ShadowProvider shadowProvider = new ShadowProvider() {
+      @Override public void reset() {
+      }
+
+      @Override public String[] getProvidedPackageNames() {
+        return new String[0];
+      }
+    };
+    ShadowMap map = new ShadowMap.Builder().addShadowProviders(Collections.singletonList(shadowProvider)).build();
+    assertThat(map.get(android.widget.CursorAdapter.class).shadowClassName).isEqualTo(ShadowCursorAdapter.class.getName());
+  }
+
   @Test public void equalsHashCode() throws Exception {
     ShadowMap a = new ShadowMap.Builder().addShadowClass("a", "b", true, false, false).build();
     ShadowMap b = new ShadowMap.Builder().addShadowClass("a", "b", true, false, false).build();
@@ -29,6 +78,25 @@ public class ShadowMapTest {
     ShadowMap d = new ShadowMap.Builder().addShadowClass("a", "x", true, false, false).build();
     assertThat(d).isNotEqualTo(a);
     assertThat(d.hashCode()).isNotEqualTo(b.hashCode());
+
+    ShadowMap e = a.newBuilder().addShadowProviders(providing("a", new ShadowConfig("c", true, false, false))).build();
+    assertThat(e).isEqualTo(a);
+    assertThat(e.hashCode()).isEqualTo(a.hashCode());
+  }
+
+  private static Iterable<ShadowProvider> providing(final String className, final ShadowConfig shadowConfig) {
+    return Collections.<ShadowProvider>singletonList(new IndexedShadowProvider() {
+      @Override public void reset() {
+      }
+
+      @Override public String[] getProvidedPackageNames() {
+        return new String[0];
+      }
+
+      @Override public Map<String, ShadowConfig> getShadowMap() {
+        return Collections.singletonMap(className, shadowConfig);
+      }
+    });
   }
 }
 
@@ -2,6 +2,9 @@ package org.robolectric.internal.bytecode;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.objectweb.asm.Type;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
 import org.robolectric.internal.SdkConfig;
 import org.robolectric.util.Function;
 
@@ -59,4 +62,114 @@ public class ShadowWranglerUnitTest {
 
     assertThat(result).isNull();
   }
+
+  @Test
+  public void shadowMethodPlan_shouldInvokeInstanceShadowMethodsWithPrimitives() throws Throwable {
+    ShadowWrangler wrangler = new ShadowWrangler(new ShadowMap.Builder().addShadowClass(ShadowThing.class).build());
+    ClassHandler.Plan plan = wrangler.methodInvoked(Type.getInternalName(Thing.class) + "/add(II)I", false, Thing.class);
+
+    assertThat(plan.run(new Thing(), new ShadowThing(), new Object[] {2, 3})).isEqualTo(105);
+  }
+
+  @Test
+  public void shadowMethodPlan_shouldInvokeStaticAndVoidShadowMethods() throws Throwable {
+    ShadowWrangler wrangler = new ShadowWrangler(new ShadowMap.Builder().addShadowClass(ShadowThing.class).build());
+
+    ClassHandler.Plan staticPlan = wrangler.methodInvoked(Type.getInternalName(Thing.class) + "/name(Ljava/lang/String;)Ljava/lang/String;", true, Thing.class);
+    assertThat(staticPlan.run(null, null, new Object[] {"thing"})).isEqualTo("shadow thing");
+
+    ClassHandler.Plan voidPlan = wrangler.methodInvoked(Type.getInternalName(Thing.class) + "/touch()V", false, Thing.class);
+    ShadowThing shadowThing = new ShadowThing();
+    assertThat(voidPlan.run(new Thing(), shadowThing, new Object[0])).isNull();
+    assertThat(shadowThing.touched).isTrue();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shadowMethodPlan_shouldComplainWhenShadowIsOfWrongType() throws Throwable {
+    ShadowWrangler wrangler = new ShadowWrangler(new ShadowMap.Builder().addShadowClass(ShadowThing.class).build());
+    ClassHandler.Plan plan = wrangler.methodInvoked(Type.getInternalName(Thing.class) + "/touch()V", false, Thing.class);
+
+    plan.run(new Thing(), new Object(), new Object[0]);
+  }
+
+  @Test
+  public void methodInvoked_shouldCachePlansAndCountHitsAndMisses() throws Exception {
+    ShadowWrangler wrangler = new ShadowWrangler(new ShadowMap.Builder().addShadowClass(ShadowThing.class).build());
+    String signature = Type.getInternalName(Thing.class) + "/add(II)I";
+
+    ClassHandler.Plan plan = wrangler.methodInvoked(signature, false, Thing.class);
+    assertThat(wrangler.methodInvoked(signature, false, Thing.class)).isSameAs(plan);
+    assertThat(wrangler.getPlanCacheMisses()).isEqualTo(1);
+    assertThat(wrangler.getPlanCacheHits()).isEqualTo(1);
+  }
+
+  @Test
+  public void methodInvoked_shouldCacheCallRealCodePlans() throws Exception {
+    String signature = Type.getInternalName(Thing.class) + "/add(II)I";
+
+    assertThat(shadowWrangler.methodInvoked(signature, false, Thing.class)).isSameAs(ShadowWrangler.CALL_REAL_CODE_PLAN);
+    assertThat(shadowWrangler.methodInvoked(signature, false, Thing.class)).isSameAs(ShadowWrangler.CALL_REAL_CODE_PLAN);
+    assertThat(shadowWrangler.getPlanCacheMisses()).isEqualTo(1);
+    assertThat(shadowWrangler.getPlanCacheHits()).isEqualTo(1);
+  }
+
+  @Test
+  public void methodInvoked_shouldCountHitsFromEveryThread() throws Exception {
+    final String signature = Type.getInternalName(Thing.class) + "/add(II)I";
+    shadowWrangler.methodInvoked(signature, false, Thing.class);
+
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        shadowWrangler.methodInvoked(signature, false, Thing.class);
+      }
+    };
+    thread.start();
+    thread.join();
+    shadowWrangler.methodInvoked(signature, false, Thing.class);
+
+    assertThat(shadowWrangler.getPlanCacheHits()).isEqualTo(2);
+  }
+
+  @Test
+  public void methodInvoked_shouldEvictPlansBeyondMaxPlanCacheSize() throws Exception {
+    ShadowWrangler wrangler = new ShadowWrangler(new ShadowMap.Builder().addShadowClass(ShadowThing.class).build(), 1);
+
+    wrangler.methodInvoked(Type.getInternalName(Thing.class) + "/add(II)I", false, Thing.class);
+    wrangler.methodInvoked(Type.getInternalName(Thing.class) + "/touch()V", false, Thing.class);
+    assertThat(wrangler.getPlanCacheSize()).isEqualTo(1);
+  }
+
+  public static class Thing {
+    public int add(int a, int b) {
+      return a + b;
+    }
+
+    public static String name(String name) {
+      return name;
+    }
+
+    public void touch() {
+    }
+  }
+
+  @Implements(Thing.class)
+  public static class ShadowThing {
+    boolean touched;
+
+    @Implementation
+    public int add(int a, int b) {
+      return 100 + a + b;
+    }
+
+    @Implementation
+    public static String name(String name) {
+      return "shadow " + name;
+    }
+
+    @Implementation
+    public void touch() {
+      touched = true;
+    }
+  }
 }
@@ -17,6 +17,13 @@ public class AttributeTest {
     assertEquals("contents", attribute.value);
   }
 
+  @Test public void internShouldReturnTheSameInstanceForEqualAttributes() throws Exception {
+    Attribute attribute = new Attribute("some.package:attr/interned", "value", "some.package").intern();
+    assertThat(new Attribute("some.package:attr/interned", "value", "some.package").intern()).isSameAs(attribute);
+    assertThat(attribute.resName).isSameAs(new ResName("some.package:attr/interned").intern());
+    assertThat(new Attribute("some.package:attr/interned", "other", "some.package").intern()).isNotSameAs(attribute);
+  }
+
   @Test public void withResAutoNamespace_shouldConstructFromW3cNode() throws Exception {
     Node node = mockNode("http://schemas.android.com/apk/res-auto", "tagName", "contents");
     Attribute attribute = new Attribute(node, new XmlLoader.XmlContext("package.name", null));
@@ -5,7 +5,7 @@ public class EmptyResourceLoader extends XResourceLoader {
     super(new ResourceExtractor());
   }
 
-  void doInitialize() {
+  @Override void loadGroup(String group) {
   }
 
   @Override public boolean providesFor(String namespace) {
@@ -0,0 +1,90 @@
+package org.robolectric.res;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.robolectric.test.TemporaryFolder;
+import org.robolectric.util.Util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MappedJarFileTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void shouldReadStoredAndDeflatedEntries() throws Exception {
+    File jar = createJar();
+    Fs.JarFs.JarFsFile deflated = (Fs.JarFs.JarFsFile) new Fs.JarFs(jar).join("res/values/strings.xml");
+    Fs.JarFs.JarFsFile stored = (Fs.JarFs.JarFsFile) new Fs.JarFs(jar).join("res/raw/stored.txt");
+
+    assertThat(new String(deflated.getBytes(), "UTF-8")).isEqualTo(contents("strings"));
+    assertThat(new String(Util.readBytes(deflated.getInputStream()), "UTF-8")).isEqualTo(contents("strings"));
+    assertThat(new String(stored.getBytes(), "UTF-8")).isEqualTo(contents("stored"));
+
+    ByteBuffer buffer = stored.getByteBuffer();
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    assertThat(new String(bytes, "UTF-8")).isEqualTo(contents("stored"));
+  }
+
+  @Test
+  public void shouldNotShareInflatedBytesWithCallers() throws Exception {
+    FsFile file = new Fs.JarFs(createJar()).join("res/values/strings.xml");
+    file.getBytes()[0] = 'x';
+    assertThat(new String(file.getBytes(), "UTF-8")).isEqualTo(contents("strings"));
+  }
+
+  @Test
+  public void shouldListDirectories() throws Exception {
+    Fs fs = new Fs.JarFs(createJar());
+
+    FsFile res = fs.join("res");
+    assertThat(res.isDirectory()).isTrue();
+    assertThat(res.listFileNames()).containsExactly("raw", "values");
+    assertThat(fs.join("res/values").listFileNames()).containsExactly("strings.xml");
+    assertThat(fs.join("res/values/strings.xml").isFile()).isTrue();
+    assertThat(fs.join("res/values/missing.xml").exists()).isFalse();
+  }
+
+  private File createJar() throws Exception {
+    File file = temporaryFolder.newFile("test.jar");
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+      for (String directory : new String[] {"res/", "res/raw/", "res/values/"}) {
+        out.putNextEntry(new ZipEntry(directory));
+        out.closeEntry();
+      }
+
+      out.putNextEntry(new ZipEntry("res/values/strings.xml"));
+      out.write(contents("strings").getBytes("UTF-8"));
+      out.closeEntry();
+
+      byte[] stored = contents("stored").getBytes("UTF-8");
+      ZipEntry storedEntry = new ZipEntry("res/raw/stored.txt");
+      storedEntry.setMethod(ZipEntry.STORED);
+      storedEntry.setSize(stored.length);
+      CRC32 crc = new CRC32();
+      crc.update(stored);
+      storedEntry.setCrc(crc.getValue());
+      out.putNextEntry(storedEntry);
+      out.write(stored);
+      out.closeEntry();
+    }
+    return file;
+  }
+
+  private static String contents(String name) {
+    List<String> lines = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      lines.add(name + " line " + i);
+    }
+    return lines.toString();
+  }
+}
@@ -1,6 +1,7 @@
 package org.robolectric.res;
 
 import org.junit.Test;
+import static org.junit.Assume.assumeTrue;
 import static org.robolectric.util.TestUtil.*;
 import static org.assertj.core.api.Assertions.*;
 
@@ -53,4 +54,21 @@ public class PackageResourceLoaderTest {
     assertThat(value).describedAs("Item color from gradle output is not loaded").isNotNull();
     assertThat(value.asString()).isEqualTo("1.0");
   }
+
+  @Test
+  public void shouldOnlyLoadResourcesOfTheTypeAskedFor() {
+    assumeTrue(XResourceLoader.LAZY);
+
+    PackageResourceLoader loader = new PackageResourceLoader(testResources());
+    assertThat(loader.getValue(new ResName(TEST_PACKAGE, "string", "hello"), "")).isNotNull();
+    assertThat(loader.xmlDocuments.get("layout").size()).isEqualTo(0);
+    assertThat(loader.drawableData.size()).isEqualTo(0);
+    assertThat(loader.rawResources.size()).isEqualTo(0);
+
+    assertThat(loader.getXml(new ResName(TEST_PACKAGE, "layout", "activity_main"), "")).isNotNull();
+    assertThat(loader.getValue(new ResName(TEST_PACKAGE, "layout", "activity_main"), "")).isNotNull();
+    assertThat(loader.xmlDocuments.get("layout").size()).isGreaterThan(0);
+    assertThat(loader.xmlDocuments.get("menu").size()).isEqualTo(0);
+    assertThat(loader.drawableData.size()).isEqualTo(0);
+  }
 }
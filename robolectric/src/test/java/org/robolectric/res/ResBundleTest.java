@@ -1,11 +1,13 @@
 package org.robolectric.res;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import org.junit.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 import static org.robolectric.res.ResBundle.Value;
 
@@ -23,6 +25,17 @@ public class ResBundleTest {
     assertThat(v).isEqualTo(val2);
   }
 
+  @Test
+  public void valuesWithSameQualifiersAreOrderedBySource() {
+    Value<TypedResource<String>> fromB = new Value<>("en", createStringTypedResource(), "res/values-en/b.xml");
+    Value<TypedResource<String>> fromA = new Value<>("en", createStringTypedResource(), "res/values-en/a.xml");
+    vals.add(fromB);
+    vals.add(fromA);
+    Collections.sort(vals);
+
+    assertThat(vals).containsExactly(fromA, fromB);
+  }
+
   @Test
   public void firstValIsPickedWhenNoMatch() {
     Value<TypedResource<String>> val1 = new Value<>("en", createStringTypedResource());
@@ -114,6 +127,66 @@ public class ResBundleTest {
         "port-notouch-12key"), "en-GB-port-hdpi-notouch-12key").getValue());
   }
 
+  @Test
+  public void shouldPickForManyCandidates() throws Exception {
+    List<Value<String>> values = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      values.add(new Value<>("mcc" + i, "mcc" + i));
+    }
+    values.add(new Value<>("en-port", "en-port"));
+
+    assertEquals("en-port", ResBundle.pick(values, "en-port").getValue());
+    assertEquals("mcc70", ResBundle.pick(values, "mcc70").getValue());
+  }
+
+  @Test
+  public void whenImmutable_shouldPickAgainWhenQualifiersChange() throws Exception {
+    ResBundle<String> resBundle = new ResBundle<>();
+    ResName resName = new ResName("com.example", "string", "greeting");
+    resBundle.put(resName, new Value<>("", "hello"));
+    resBundle.put(resName, new Value<>("fr", "bonjour"));
+    resBundle.makeImmutable();
+
+    assertEquals("hello", resBundle.get(resName, ""));
+    assertEquals("bonjour", resBundle.get(resName, "fr"));
+    assertEquals("bonjour", resBundle.get(resName, "fr"));
+    assertEquals("hello", resBundle.get(resName, "de"));
+    assertNull(resBundle.get(new ResName("com.example", "string", "missing"), "de"));
+  }
+
+  @Test
+  public void whenImmutable_shouldPickForManyAlternatingQualifiers() throws Exception {
+    ResBundle<String> resBundle = new ResBundle<>();
+    ResName resName = new ResName("com.example", "string", "greeting");
+    resBundle.put(resName, new Value<>("", "hello"));
+    resBundle.put(resName, new Value<>("fr", "bonjour"));
+    resBundle.makeImmutable();
+
+    for (int i = 0; i < 3; i++) {
+      for (int apiLevel = 10; apiLevel < 30; apiLevel++) {
+        assertEquals("bonjour", resBundle.get(resName, "fr-v" + apiLevel));
+        assertEquals("hello", resBundle.get(resName, "v" + apiLevel));
+      }
+    }
+  }
+
+  @Test
+  public void shouldSortValuesAddedInAnyOrderBeforePicking() throws Exception {
+    ResBundle<String> resBundle = new ResBundle<>();
+    ResName resName = new ResName("com.example", "string", "greeting");
+    resBundle.put(resName, new Value<>("v17", "v17"));
+    resBundle.put(resName, new Value<>("", "default"));
+    resBundle.put(resName, new Value<>("v14", "v14"));
+
+    assertEquals("v14", resBundle.get(resName, "v16"));
+    resBundle.put(resName, new Value<>("v16", "v16"));
+    assertEquals("v16", resBundle.get(resName, "v16"));
+
+    resBundle.makeImmutable();
+    assertEquals("v17", resBundle.get(resName, "v18"));
+    assertEquals("default", resBundle.get(resName, "v10"));
+  }
+
   private List<Value<String>> asValues(String... qualifierses) {
     List<Value<String>> values = new ArrayList<>();
     for (String qualifiers : qualifierses) {
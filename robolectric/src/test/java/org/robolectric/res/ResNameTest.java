@@ -57,4 +57,42 @@ public class ResNameTest {
     assertThat(resName.type).isEqualTo("style");
     assertThat(resName.packageName).isEqualTo("android");
   }
+
+  @Test
+  public void fullyQualifiedNameMayContainSlashesInName() {
+    ResName resName = new ResName("some.package:type/name/with.slash");
+    assertThat(resName).isEqualTo(new ResName("some.package", "type", "name/with_slash"));
+    assertThat(new ResName(":type/name").packageName).isEqualTo("");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldRejectNamesWithoutType() {
+    new ResName("some.package:/name");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldRejectNamesWithoutName() {
+    new ResName("some.package:type/");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldRejectUnqualifiedNames() {
+    new ResName("type/name");
+  }
+
+  @Test
+  public void internShouldReturnTheSameInstanceForEqualNames() {
+    ResName resName = new ResName("some.package", "type", "interned").intern();
+    assertThat(new ResName("some.package:type/interned").intern()).isSameAs(resName);
+    assertThat(new ResName("some.package", "type", "other").intern()).isNotSameAs(resName);
+  }
+
+  @Test
+  public void withPackageNameShouldReuseInstances() {
+    ResName resName = new ResName("some.package", "type", "name");
+    ResName other = resName.withPackageName("other.package");
+    assertThat(other).isEqualTo(new ResName("other.package", "type", "name"));
+    assertThat(resName.withPackageName("other.package")).isSameAs(other);
+    assertThat(resName.withPackageName("some.package")).isSameAs(resName);
+  }
 }
@@ -0,0 +1,48 @@
+package org.robolectric.res;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResourceIdTableTest {
+  @Test
+  public void shouldLookUpIdsAndNamesBothWays() throws Exception {
+    Map<ResName, Integer> resourceNameToId = new HashMap<>();
+    Map<Integer, ResName> resourceIdToResName = new HashMap<>();
+    for (int i = 0; i < 1000; i++) {
+      ResName resName = new ResName("some.package", i % 2 == 0 ? "string" : "id", "item" + i);
+      int id = 0x7f000000 | ((i % 2 + 1) << 16) | i;
+      resourceNameToId.put(resName, id);
+      resourceIdToResName.put(id, resName);
+    }
+    resourceIdToResName.put(0x10a00, new ResName("android", "attr", "low"));
+
+    ResourceIdTable resourceIdTable = new ResourceIdTable(resourceNameToId, resourceIdToResName);
+
+    for (Map.Entry<ResName, Integer> entry : resourceNameToId.entrySet()) {
+      assertThat(resourceIdTable.getResourceId(new ResName(entry.getKey().packageName, entry.getKey().type, entry.getKey().name)))
+          .isSameAs(entry.getValue());
+      assertThat(resourceIdTable.getResName(entry.getValue())).isEqualTo(entry.getKey());
+    }
+    assertThat(resourceIdTable.getResName(0x10a00)).isEqualTo(new ResName("android", "attr", "low"));
+  }
+
+  @Test
+  public void shouldReturnNullForUnknownIdsAndNames() throws Exception {
+    Map<ResName, Integer> resourceNameToId = new HashMap<>();
+    Map<Integer, ResName> resourceIdToResName = new HashMap<>();
+    resourceNameToId.put(new ResName("some.package", "string", "known"), 0x7f010003);
+    resourceIdToResName.put(0x7f010003, new ResName("some.package", "string", "known"));
+
+    ResourceIdTable resourceIdTable = new ResourceIdTable(resourceNameToId, resourceIdToResName);
+
+    assertThat(resourceIdTable.getResourceId(new ResName("some.package", "string", "unknown"))).isNull();
+    assertThat(resourceIdTable.getResName(0x7f010004)).isNull();
+    assertThat(resourceIdTable.getResName(0x7f020003)).isNull();
+    assertThat(resourceIdTable.getResName(0x01010003)).isNull();
+    assertThat(resourceIdTable.getResName(0x7f01ffff)).isNull();
+  }
+}
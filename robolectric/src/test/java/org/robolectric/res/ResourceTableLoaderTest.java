@@ -0,0 +1,63 @@
+package org.robolectric.res;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.robolectric.test.TemporaryFolder;
+import org.robolectric.util.TestUtil;
+
+import java.io.File;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.robolectric.util.TestUtil.testResources;
+
+public class ResourceTableLoaderTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void shouldWriteTableOnFirstLoad() throws Exception {
+    File tableDir = temporaryFolder.newFolder("tables");
+    new ResourceTableLoader(testResources(), tableDir).getValue(new ResName(TestUtil.TEST_PACKAGE, "string", "hello"), "");
+    assertThat(tableDir.list()).hasSize(1);
+  }
+
+  @Test
+  public void shouldLoadSameValuesFromTable() throws Exception {
+    File tableDir = temporaryFolder.newFolder("tables");
+    new ResourceTableLoader(testResources(), tableDir).getValue(new ResName(TestUtil.TEST_PACKAGE, "string", "hello"), "");
+
+    ResourceTableLoader loader = new ResourceTableLoader(testResources(), tableDir);
+    PackageResourceLoader parsingLoader = new PackageResourceLoader(testResources());
+
+    assertThat(loader.getValue(new ResName(TestUtil.TEST_PACKAGE, "string", "hello"), "").asString()).isEqualTo("Hello");
+    assertThat(loader.getValue(new ResName(TestUtil.TEST_PACKAGE, "string", "hello"), "fr").asString())
+        .isEqualTo(parsingLoader.getValue(new ResName(TestUtil.TEST_PACKAGE, "string", "hello"), "fr").asString());
+
+    TypedResource[] greetings = (TypedResource[]) loader.getValue(new ResName(TestUtil.TEST_PACKAGE, "array", "greetings"), "").getData();
+    assertThat(greetings).hasSize(2);
+    assertThat(greetings[1].asString()).isEqualTo("@string/hello");
+
+    AttrData itemType = (AttrData) loader.getValue(new ResName(TestUtil.TEST_PACKAGE, "attr", "itemType"), "").getData();
+    assertThat(itemType.getFormat()).isEqualTo("enum");
+    assertThat(itemType.getValueFor("ungulate")).isEqualTo("1");
+
+    StyleData style = (StyleData) loader.getValue(new ResName(TestUtil.TEST_PACKAGE, "style", "Theme_AnotherTheme"), "").getData();
+    assertThat(style.getParent()).isEqualTo("@style/Theme_Robolectric");
+    assertThat(style.getAttrValue(new ResName(TestUtil.TEST_PACKAGE, "attr", "averageSheepWidth")).value).isEqualTo("42px");
+
+    assertThat(loader.getPlural(new ResName(TestUtil.TEST_PACKAGE, "plurals", "beer"), 1, "").getString()).isEqualTo("One beer");
+
+    assertThat(loader.getXml(new ResName(TestUtil.TEST_PACKAGE, "layout", "main"), "")).isNotNull();
+  }
+
+  @Test
+  public void shouldParseValuesWhenTableIsCorrupt() throws Exception {
+    File tableDir = temporaryFolder.newFolder("tables");
+    new ResourceTableLoader(testResources(), tableDir).getValue(new ResName(TestUtil.TEST_PACKAGE, "string", "hello"), "");
+    File tableFile = tableDir.listFiles()[0];
+    assertThat(tableFile.delete()).isTrue();
+    assertThat(tableFile.createNewFile()).isTrue();
+
+    ResourceTableLoader loader = new ResourceTableLoader(testResources(), tableDir);
+    assertThat(loader.getValue(new ResName(TestUtil.TEST_PACKAGE, "string", "hello"), "").asString()).isEqualTo("Hello");
+  }
+}
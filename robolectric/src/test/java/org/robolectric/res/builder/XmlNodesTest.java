@@ -0,0 +1,50 @@
+package org.robolectric.res.builder;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class XmlNodesTest {
+  @Test
+  public void shouldCopyTheShapeOfTheDocument() throws Exception {
+    XmlNodes nodes = XmlNodes.from(parse("<a xmlns:x=\"urn:x\" x:b=\"1\" c=\"2\">\n  <d>text</d>\n  <e/>\n</a>"));
+
+    assertThat(nodes.getNodeName(0)).isEqualTo("a");
+    assertThat(nodes.getAttributeCount(0)).isEqualTo(3);
+    assertThat(nodes.getAttributeValue(nodes.findAttribute(0, "urn:x", "b"))).isEqualTo("1");
+    assertThat(nodes.getAttributeValue(nodes.findAttribute(0, null, "c"))).isEqualTo("2");
+    assertThat(nodes.findAttribute(0, null, "b")).isEqualTo(XmlNodes.NONE);
+
+    int whitespace = nodes.getFirstChild(0);
+    assertThat(nodes.getNodeType(whitespace)).isEqualTo(Node.TEXT_NODE);
+    assertThat(nodes.isWhitespace(whitespace)).isTrue();
+
+    int d = nodes.getNextSibling(whitespace);
+    assertThat(nodes.getNodeName(d)).isEqualTo("d");
+    assertThat(nodes.getParent(d)).isEqualTo(0);
+    assertThat(nodes.getTextContent(d)).isEqualTo("text");
+    assertThat(nodes.isWhitespace(nodes.getFirstChild(d))).isFalse();
+
+    int e = nodes.getNextSibling(nodes.getNextSibling(d));
+    assertThat(nodes.getNodeName(e)).isEqualTo("e");
+    assertThat(nodes.getFirstChild(e)).isEqualTo(XmlNodes.NONE);
+    assertThat(nodes.getTextContent(0)).isEqualTo("\n  text\n  \n");
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void getAttribute_shouldThrowForMissingAttributes() throws Exception {
+    XmlNodes nodes = XmlNodes.from(parse("<a b=\"1\"/>"));
+    nodes.getAttribute(0, 1);
+  }
+
+  private static Document parse(String xml) throws Exception {
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    return factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+  }
+}
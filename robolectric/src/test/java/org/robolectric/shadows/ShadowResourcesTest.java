@@ -14,6 +14,8 @@ import org.robolectric.RuntimeEnvironment;
 import org.robolectric.Shadows;
 import org.robolectric.TestRunners;
 import org.robolectric.annotation.Config;
+import org.robolectric.res.Attribute;
+import org.robolectric.res.ResourceLoader;
 import org.robolectric.util.ReflectionHelpers;
 import org.robolectric.util.TestUtil;
 import org.xmlpull.v1.XmlPullParser;
@@ -21,6 +23,7 @@ import org.xmlpull.v1.XmlPullParser;
 import java.io.File;
 import java.io.InputStream;
 
+import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.robolectric.Shadows.shadowOf;
 
@@ -439,6 +442,24 @@ public class ShadowResourcesTest {
     assertThat(out.resourceId).isEqualTo(android.R.color.black);
   }
 
+  @Test
+  public void obtainAttributes_shouldReflectEachAttributeSetWhenCalledRepeatedly() {
+    int[] attrs = {R.attr.isSugary};
+    ResourceLoader resourceLoader = shadowOf(resources).getResourceLoader();
+
+    TypedArray sugary = resources.obtainAttributes(new RoboAttributeSet(asList(
+        new Attribute(TestUtil.TEST_PACKAGE + ":attr/isSugary", "true", TestUtil.TEST_PACKAGE)), resourceLoader), attrs);
+    TypedArray notSugary = resources.obtainAttributes(new RoboAttributeSet(asList(
+        new Attribute(TestUtil.TEST_PACKAGE + ":attr/isSugary", "false", TestUtil.TEST_PACKAGE)), resourceLoader), attrs);
+    TypedArray sugaryAgain = resources.obtainAttributes(new RoboAttributeSet(asList(
+        new Attribute(TestUtil.TEST_PACKAGE + ":attr/isSugary", "true", TestUtil.TEST_PACKAGE)), resourceLoader), attrs);
+
+    assertThat(sugary.getBoolean(0, false)).isTrue();
+    assertThat(notSugary.getBoolean(0, true)).isFalse();
+    assertThat(sugaryAgain).isNotSameAs(sugary);
+    assertThat(sugaryAgain.getBoolean(0, false)).isTrue();
+  }
+
   @Test
   public void obtainStyledAttributesShouldDereferenceValues() {
     Resources.Theme theme = resources.newTheme();
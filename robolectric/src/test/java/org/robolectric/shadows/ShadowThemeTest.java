@@ -131,6 +131,23 @@ public class ShadowThemeTest {
         .isEqualTo("#ffff0000");
   }
 
+  @Test public void shouldReuseResolvedStyles() throws Exception {
+    TestActivity activity = buildActivity(TestActivityWithAnotherTheme.class).create().get();
+    ResourceLoader resourceLoader = Shadows.shadowOf(activity.getResources()).getResourceLoader();
+    Style theme = ShadowAssetManager.resolveStyle(resourceLoader, null,
+        new ResName(TestUtil.TEST_PACKAGE, "style", "Theme.AnotherTheme"), "");
+    Style style = ShadowAssetManager.resolveStyle(resourceLoader, theme,
+        new ResName(TestUtil.TEST_PACKAGE, "style", "IndirectButtonStyle"), "");
+    Style sameTheme = ShadowAssetManager.resolveStyle(resourceLoader, null,
+        new ResName(TestUtil.TEST_PACKAGE, "style", "Theme.AnotherTheme"), "");
+
+    assertThat(sameTheme).isSameAs(theme);
+    assertThat(ShadowAssetManager.resolveStyle(resourceLoader, sameTheme,
+        new ResName(TestUtil.TEST_PACKAGE, "style", "IndirectButtonStyle"), "")).isSameAs(style);
+    assertThat(style.getAttrValue(new ResName("android", "attr", "background")))
+        .isSameAs(style.getAttrValue(new ResName("android", "attr", "background")));
+  }
+
   public static class TestActivity extends Activity {
     @Override protected void onCreate(Bundle savedInstanceState) {
       super.onCreate(savedInstanceState);